@@ -24,10 +24,16 @@
 package opendial;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 
@@ -48,10 +54,12 @@ import opendial.datastructs.Assignment;
 import opendial.datastructs.ValueRange;
 import opendial.domains.rules.Rule;
 import opendial.domains.rules.distribs.AnchoredRule;
+import opendial.domains.rules.distribs.AnchoringCache;
 import opendial.domains.rules.distribs.EquivalenceDistribution;
 import opendial.domains.rules.distribs.OutputDistribution;
 import opendial.inference.SwitchingAlgorithm;
 import opendial.inference.approximate.SamplingAlgorithm;
+import opendial.inference.exact.JunctionTree;
 import opendial.modules.StatePruner;
 import opendial.templates.Template;
 
@@ -86,6 +94,27 @@ public class DialogueState extends BNetwork {
 	/** Subset of variables that are currently incrementally constructed */
 	Set<String> incrementalVars;
 
+	// junction tree reused across the queries on the dialogue state
+	final JunctionTree jtree = new JunctionTree();
+
+	// maximum number of query results stored in the cache
+	public static int QUERY_CACHE_SIZE = 200;
+
+	// cache of query results, indexed by the version of the state, the query
+	// variables and the evidence (least recently used results are removed first)
+	final Map<List<Object>, Object> queryCache =
+			new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<List<Object>, Object> eldest) {
+					return size() > QUERY_CACHE_SIZE;
+				}
+			};
+
+	// number of cache hits and misses for the queries
+	long cacheHits = 0;
+	long cacheMisses = 0;
+
 	// ===================================
 	// DIALOGUE STATE CONSTRUCTION
 	// ===================================
@@ -155,6 +184,7 @@ public class DialogueState extends BNetwork {
 		if (network instanceof DialogueState) {
 			evidence.addAssignment(((DialogueState) network).getEvidence());
 		}
+		incrementVersion();
 	}
 
 	/**
@@ -164,6 +194,7 @@ public class DialogueState extends BNetwork {
 	 */
 	public void clearEvidence(Collection<String> variables) {
 		evidence.removePairs(variables);
+		incrementVersion();
 	}
 
 	/**
@@ -173,6 +204,7 @@ public class DialogueState extends BNetwork {
 	 */
 	public void addEvidence(Assignment assignment) {
 		evidence.addAssignment(assignment);
+		incrementVersion();
 	}
 
 	/**
@@ -283,6 +315,7 @@ public class DialogueState extends BNetwork {
 	public synchronized void addToState(DialogueState newState) {
 		addToState((BNetwork) newState);
 		evidence.addAssignment(newState.getEvidence().addPrimes());
+		incrementVersion();
 	}
 
 	/**
@@ -327,21 +360,70 @@ public class DialogueState extends BNetwork {
 	 * @param r the rule to apply.
 	 */
 	public void applyRule(Rule r) {
+		applyRule(r, null);
+	}
+
+	/**
+	 * Applies a (probability or utility) rule to the dialogue state, reusing the
+	 * anchorings of the rule stored in the cache when the values of its input
+	 * variables have not changed (see {@link #applyRule(Rule)}).
+	 * 
+	 * @param r the rule to apply.
+	 * @param anchorings the cache of rule anchorings (can be null)
+	 * @return the anchored rules added to the dialogue state
+	 */
+	public List<AnchoredRule> applyRule(Rule r, AnchoringCache anchorings) {
 
+		List<AnchoredRule> added = new ArrayList<AnchoredRule>();
 		Set<Assignment> slots = getMatchingSlots(r.getInputVariables()).linearise();
 		for (Assignment filledSlot : slots) {
-			AnchoredRule arule = new AnchoredRule(r, this, filledSlot);
+			AnchoredRule arule = new AnchoredRule(r, this, filledSlot, anchorings);
 			if (arule.isRelevant()) {
-				switch (r.getRuleType()) {
-				case PROB:
-					addProbabilityRule(arule);
-					break;
-				case UTIL:
-					addUtilityRule(arule);
-					break;
-				}
+				addAnchoredRule(arule);
+				added.add(arule);
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Anchors the rule in the dialogue state, without modifying the state, and
+	 * returns the relevant anchored rules (one for each possible filling of the
+	 * rule slots). The anchored rules can then be added to the state with
+	 * {@link #addAnchoredRule(AnchoredRule)}. This method only reads the dialogue
+	 * state, and can therefore be called concurrently for several rules.
+	 * 
+	 * @param r the rule to anchor
+	 * @param anchorings the cache of rule anchorings (can be null)
+	 * @return the relevant anchored rules
+	 */
+	public List<AnchoredRule> anchorRule(Rule r, AnchoringCache anchorings) {
+		List<AnchoredRule> anchored = new ArrayList<AnchoredRule>();
+		Set<Assignment> slots = getMatchingSlots(r.getInputVariables()).linearise();
+		for (Assignment filledSlot : slots) {
+			AnchoredRule arule = new AnchoredRule(r, this, filledSlot, anchorings);
+			if (arule.isRelevant()) {
+				anchored.add(arule);
 			}
 		}
+		return anchored;
+	}
+
+	/**
+	 * Adds the anchored rule to the dialogue state, in the form of a rule node
+	 * connected to its input and output (or action) nodes.
+	 * 
+	 * @param arule the anchored rule
+	 */
+	public void addAnchoredRule(AnchoredRule arule) {
+		switch (arule.getRule().getRuleType()) {
+		case PROB:
+			addProbabilityRule(arule);
+			break;
+		case UTIL:
+			addUtilityRule(arule);
+			break;
+		}
 	}
 
 	/**
@@ -404,8 +486,10 @@ public class DialogueState extends BNetwork {
 				try {
 					Assignment queryEvidence =
 							(includeEvidence) ? evidence : new Assignment();
-					return new SwitchingAlgorithm().queryProb(this, variable,
-							queryEvidence);
+					return queryCached(Arrays.asList(variable), queryEvidence,
+							() -> new SwitchingAlgorithm(jtree).queryProb(this,
+									variable, queryEvidence),
+							IndependentDistribution::copy);
 				}
 				catch (RuntimeException e) {
 					log.warning("Error querying variable " + variable + " : " + e);
@@ -435,7 +519,10 @@ public class DialogueState extends BNetwork {
 		}
 		// else, perform the inference operation
 		try {
-			return new SwitchingAlgorithm().queryProb(this, variables, evidence);
+			return queryCached(variables, evidence,
+					() -> new SwitchingAlgorithm(jtree).queryProb(this, variables,
+							evidence),
+					MultivariateDistribution::copy);
 		}
 
 		// if everything fails, returns an empty table
@@ -480,6 +567,26 @@ public class DialogueState extends BNetwork {
 
 	}
 
+	/**
+	 * Returns the number of probability queries that were answered from the cache
+	 * of query results.
+	 * 
+	 * @return the number of cache hits
+	 */
+	public synchronized long getQueryCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * Returns the number of probability queries that required inference (because
+	 * their result was not found in the cache).
+	 * 
+	 * @return the number of cache misses
+	 */
+	public synchronized long getQueryCacheMisses() {
+		return cacheMisses;
+	}
+
 	/**
 	 * Returns the possible filled values for the underspecified slots in the
 	 * templates, on the basis of the variables in the dialogue sate.
@@ -652,6 +759,39 @@ public class DialogueState extends BNetwork {
 	// PRIVATE METHODS
 	// ===================================
 
+	/**
+	 * Returns the cached result of the query for the current version of the
+	 * dialogue state, if one exists. Otherwise, performs the inference and stores
+	 * its result in the cache. Since the results can be modified by the callers,
+	 * the cache only returns copies of the stored results.
+	 * 
+	 * @param variables the query variables
+	 * @param queryEvidence the evidence for the query
+	 * @param inference the inference to perform if the result is not cached
+	 * @param copy the function copying a result
+	 * @return the result of the query
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T queryCached(Collection<String> variables,
+			Assignment queryEvidence, Supplier<T> inference,
+			UnaryOperator<T> copy) {
+		List<Object> key = Arrays.asList(getVersion(),
+				new HashSet<String>(variables), queryEvidence.copy());
+		synchronized (this) {
+			Object cached = queryCache.get(key);
+			if (cached != null) {
+				cacheHits++;
+				return copy.apply((T) cached);
+			}
+			cacheMisses++;
+		}
+		T result = inference.get();
+		synchronized (this) {
+			queryCache.put(key, copy.apply(result));
+		}
+		return result;
+	}
+
 	/**
 	 * Adds the probability rule to the dialogue state
 	 * 
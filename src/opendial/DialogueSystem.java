@@ -656,12 +656,10 @@ public class DialogueSystem {
 				curState.reduce();
 
 				// applying the domain models
-				for (Model model : domain.getModels()) {
-					if (model.isTriggered(curState, toProcess)) {
-						boolean change = model.trigger(curState);
-						if (change && model.isBlocking()) {
-							break;
-						}
+				for (Model model : domain.getTriggeredModels(toProcess)) {
+					boolean change = model.trigger(curState);
+					if (change && model.isBlocking()) {
+						break;
 					}
 				}
 
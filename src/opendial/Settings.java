@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
 import javax.sound.sampled.Mixer;
 
 import opendial.bn.values.Value;
+import opendial.inference.approximate.SamplingContext;
 import opendial.modules.Module;
 import opendial.utils.AudioUtils;
 import opendial.utils.StringUtils;
@@ -66,6 +67,12 @@ public class Settings {
 	/** maximum sampling time (in milliseconds) */
 	public static long maxSamplingTime = 250;
 
+	/**
+	 * tolerance on the change of the query marginals to stop sampling early (0 to
+	 * always collect nbSamples samples)
+	 */
+	public static double samplingTolerance = 0.0;
+
 	/** Number of discretisation buckets to convert continuous distributions */
 	public static int discretisationBuckets = 50;
 
@@ -211,9 +218,16 @@ public class Settings {
 			else if (key.equalsIgnoreCase("timeout")) {
 				maxSamplingTime = Integer.parseInt(mapping.getProperty(key));
 			}
+			else if (key.equalsIgnoreCase("tolerance")) {
+				samplingTolerance = Double.parseDouble(mapping.getProperty(key));
+			}
 			else if (key.equalsIgnoreCase("discretisation")) {
 				discretisationBuckets = Integer.parseInt(mapping.getProperty(key));
 			}
+			else if (key.equalsIgnoreCase("seed")) {
+				SamplingContext.setMasterSeed(
+						Long.parseLong(mapping.getProperty(key).trim()));
+			}
 
 			else if (key.equalsIgnoreCase("recording")) {
 				if (mapping.getProperty(key).trim().equalsIgnoreCase("last")) {
@@ -323,6 +337,7 @@ public class Settings {
 		mapping.setProperty("monitor", StringUtils.join(varsToMonitor, ","));
 		mapping.setProperty("samples", "" + nbSamples);
 		mapping.setProperty("timeout", "" + maxSamplingTime);
+		mapping.setProperty("tolerance", "" + samplingTolerance);
 		mapping.setProperty("discretisation", "" + discretisationBuckets);
 		mapping.setProperty("modules", "" + modules.stream()
 				.map(m -> m.getCanonicalName()).collect(Collectors.joining(",")));
@@ -25,12 +25,15 @@ package opendial.bn;
 import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
@@ -40,6 +43,7 @@ import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
+import opendial.utils.StringUtils;
 
 /**
  * Representation of a Bayesian Network augmented with value and action nodes. The
@@ -65,6 +69,17 @@ public class BNetwork {
 	// the action nodes
 	Map<String, ActionNode> actionNodes;
 
+	// version stamp, incremented at each modification of the network
+	long version = 0;
+
+	// counter incremented whenever nodes are added, removed or renamed, or
+	// whenever the relations between the nodes are modified
+	volatile long structureVersion = 0;
+
+	// structural index of the network (topological order, ancestors,
+	// descendants and cliques), recomputed after structural changes
+	volatile Structure structure;
+
 	// ===================================
 	// NETWORK CONSTRUCTION
 	// ===================================
@@ -112,6 +127,8 @@ public class BNetwork {
 		}
 		nodes.put(node.getId(), node);
 		node.setNetwork(this);
+		structureVersion++;
+		incrementVersion();
 
 		// adding the node in the type-specific collections
 		if (node instanceof ChanceNode) {
@@ -207,6 +224,8 @@ public class BNetwork {
 			else if (node instanceof ActionNode) {
 				actionNodes.remove(nodeId);
 			}
+			structureVersion++;
+			incrementVersion();
 		}
 
 		return nodes.remove(nodeId);
@@ -238,6 +257,8 @@ public class BNetwork {
 		chanceNodes.remove(oldNodeId);
 		utilityNodes.remove(oldNodeId);
 		actionNodes.remove(oldNodeId);
+		structureVersion++;
+		incrementVersion();
 		if (node != null) {
 			addNode(node);
 		}
@@ -259,6 +280,8 @@ public class BNetwork {
 			chanceNodes.clear();
 			utilityNodes.clear();
 			actionNodes.clear();
+			structureVersion++;
+			incrementVersion();
 			for (BNode node : network.getNodes()) {
 				addNode(node);
 			}
@@ -266,10 +289,39 @@ public class BNetwork {
 
 	}
 
+	/**
+	 * Increments the version stamp of the network. The method is called whenever
+	 * the nodes of the network (or their relations and distributions) are modified.
+	 */
+	public void incrementVersion() {
+		version++;
+	}
+
+	/**
+	 * Increments the structure version of the network. The method is called
+	 * whenever nodes are added, removed or renamed, or when the relations of one
+	 * of the nodes are modified. The structural index of the network is then
+	 * recomputed upon the next request.
+	 */
+	public void incrementStructureVersion() {
+		structureVersion++;
+	}
+
 	// ===================================
 	// GETTERS
 	// ===================================
 
+	/**
+	 * Returns the version stamp of the network. The version is incremented at each
+	 * modification of the network, and can therefore be used to detect whether the
+	 * network has changed since a previous call.
+	 * 
+	 * @return the version stamp
+	 */
+	public long getVersion() {
+		return version;
+	}
+
 	/**
 	 * Returns true if the network contains a node with the given identifier
 	 * 
@@ -545,9 +597,17 @@ public class BNetwork {
 	 * This ordering is used in particular for various inference algorithms relying
 	 * on a topological ordering of the nodes (e.g. variable elimination).
 	 * 
+	 * <p>
+	 * The ordering is cached in the structural index of the network, and is only
+	 * recomputed after a modification of the network structure.
+	 * 
 	 * @return the ordered list of nodes
 	 */
 	public List<BNode> getSortedNodes() {
+		Structure s = getStructure();
+		if (s.isComplete) {
+			return new ArrayList<BNode>(Arrays.asList(s.sortedNodes));
+		}
 		List<BNode> nodesList = new ArrayList<BNode>(nodes.values());
 		Collections.sort(nodesList);
 		return nodesList;
@@ -566,6 +626,117 @@ public class BNetwork {
 		return sorted;
 	}
 
+	/**
+	 * Returns true if the node is part of the network and the structural index of
+	 * the network covers all of its relations (which is the case if all the nodes
+	 * connected to the nodes of the network are also included in the network, and
+	 * the network does not contain any cycle). If this method returns true, the
+	 * ancestors, descendants and clique of the node can be read from the index.
+	 * 
+	 * @param node the node
+	 * @return true if the node is covered by the structural index, else false
+	 */
+	public boolean isIndexed(BNode node) {
+		return getIndex(node) != null;
+	}
+
+	/**
+	 * Returns the ancestors of the node, ordered such that each ancestor appears
+	 * before its own ancestors. If the node is not covered by the structural index,
+	 * the ancestors are computed by traversing the relations of the node.
+	 * 
+	 * @param nodeId the node identifier
+	 * @return the ordered list of ancestor identifiers
+	 */
+	public List<String> getAncestorIds(String nodeId) {
+		BNode node = getNode(nodeId);
+		Structure s = getIndex(node);
+		if (s == null) {
+			return node.getAncestorIds();
+		}
+		BitSet ancestors = s.ancestors[s.positions.get(nodeId)];
+		List<String> ids = new ArrayList<String>(ancestors.cardinality());
+		for (int i = ancestors.nextSetBit(0); i >= 0; i =
+				ancestors.nextSetBit(i + 1)) {
+			ids.add(s.sortedNodes[i].getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the descendants of the node, ordered such that each descendant
+	 * appears before its own descendants. If the node is not covered by the
+	 * structural index, the descendants are computed by traversing the relations of
+	 * the node.
+	 * 
+	 * @param nodeId the node identifier
+	 * @return the ordered list of descendant identifiers
+	 */
+	public List<String> getDescendantIds(String nodeId) {
+		BNode node = getNode(nodeId);
+		Structure s = getIndex(node);
+		if (s == null) {
+			return node.getDescendantIds();
+		}
+		BitSet descendants = s.descendants[s.positions.get(nodeId)];
+		List<String> ids = new ArrayList<String>(descendants.cardinality());
+		for (int i = descendants.previousSetBit(s.sortedNodes.length); i >= 0; i =
+				descendants.previousSetBit(i - 1)) {
+			ids.add(s.sortedNodes[i].getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns true if one of the variables is an ancestor of the node, and false
+	 * otherwise
+	 * 
+	 * @param nodeId the node identifier
+	 * @param variables the identifiers of potential ancestors
+	 * @return true if an ancestor is found, false otherwise
+	 */
+	public boolean hasAncestor(String nodeId, Collection<String> variables) {
+		BNode node = getNode(nodeId);
+		Structure s = getIndex(node);
+		if (s == null) {
+			return node.hasAncestor(new HashSet<String>(variables));
+		}
+		return intersects(s, s.ancestors[s.positions.get(nodeId)], variables);
+	}
+
+	/**
+	 * Returns true if one of the variables is a descendant of the node, and false
+	 * otherwise
+	 * 
+	 * @param nodeId the node identifier
+	 * @param variables the identifiers of potential descendants
+	 * @return true if a descendant is found, false otherwise
+	 */
+	public boolean hasDescendant(String nodeId, Collection<String> variables) {
+		BNode node = getNode(nodeId);
+		Structure s = getIndex(node);
+		if (s == null) {
+			return node.hasDescendant(new HashSet<String>(variables));
+		}
+		return intersects(s, s.descendants[s.positions.get(nodeId)], variables);
+	}
+
+	/**
+	 * Returns the (maximal) clique of the network that contains the node.
+	 * 
+	 * @param nodeId the node identifier
+	 * @return the maximal clique
+	 */
+	public Set<String> getClique(String nodeId) {
+		BNode node = getNode(nodeId);
+		Structure s = getIndex(node);
+		if (s == null) {
+			return node.getClique();
+		}
+		return new HashSet<String>(
+				s.cliques.get(s.cliqueIndices[s.positions.get(nodeId)]));
+	}
+
 	/**
 	 * Returns the subset of nodes that are referred to by the list of identifiers
 	 * 
@@ -592,6 +763,14 @@ public class BNetwork {
 	public List<Set<String>> getCliques() {
 
 		List<Set<String>> cliques = new ArrayList<Set<String>>();
+		Structure s = getStructure();
+		if (s.isComplete) {
+			for (Set<String> clique : s.cliques) {
+				cliques.add(new HashSet<String>(clique));
+			}
+			Collections.sort(cliques, (s1, s2) -> s1.hashCode() - s2.hashCode());
+			return cliques;
+		}
 
 		Stack<String> nodesToProcess = new Stack<String>();
 		nodesToProcess.addAll(nodes.keySet());
@@ -649,6 +828,269 @@ public class BNetwork {
 		return false;
 	}
 
+	// ===================================
+	// STRUCTURAL INDEX
+	// ===================================
+
+	/**
+	 * Returns the structural index of the network, recomputing it if the network
+	 * structure has been modified since its last computation.
+	 * 
+	 * @return the structural index
+	 */
+	private Structure getStructure() {
+		Structure s = structure;
+		if (s == null || s.structureVersion != structureVersion) {
+			synchronized (this) {
+				s = structure;
+				long current = structureVersion;
+				if (s == null || s.structureVersion != current) {
+					s = new Structure(this, current);
+					structure = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the structural index of the network if it covers the node, and null
+	 * otherwise.
+	 * 
+	 * @param node the node
+	 * @return the structural index covering the node, or null
+	 */
+	private Structure getIndex(BNode node) {
+		Structure s = getStructure();
+		return (s.isComplete && nodes.get(node.getId()) == node) ? s : null;
+	}
+
+	/**
+	 * Returns true if the bitset contains the position of one of the variables
+	 * 
+	 * @param s the structural index
+	 * @param bits the bitset (indexed by positions in the topological order)
+	 * @param variables the variables
+	 * @return true if one variable is contained in the bitset, false otherwise
+	 */
+	private static boolean intersects(Structure s, BitSet bits,
+			Collection<String> variables) {
+		for (String var : variables) {
+			Integer pos = s.positions.get(var);
+			if (pos != null && bits.get(pos)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Structural index of the network, made of the topological order of the nodes,
+	 * the ancestors and descendants of each node (as bitsets over the positions in
+	 * the topological order), and the maximal cliques of the network. The index
+	 * is only complete if all nodes connected to the nodes of the network are also
+	 * part of the network, and if the network is acyclic.
+	 */
+	private static final class Structure {
+
+		// the structure version of the network used to build the index
+		final long structureVersion;
+
+		// whether the index covers all relations of the nodes
+		boolean isComplete = true;
+
+		// the nodes in topological order (see getSortedNodes())
+		BNode[] sortedNodes;
+
+		// the positions of the nodes in the topological order
+		final Map<String, Integer> positions = new HashMap<String, Integer>();
+
+		// the ancestors and descendants of each node
+		BitSet[] ancestors;
+		BitSet[] descendants;
+
+		// the maximal cliques, and the index of the clique for each node
+		final List<Set<String>> cliques = new ArrayList<Set<String>>();
+		int[] cliqueIndices;
+
+		/**
+		 * Builds the structural index for the nodes of the network. The index is
+		 * only complete if all nodes refer back to the network (as they would
+		 * otherwise not signal their modifications to it).
+		 * 
+		 * @param network the network
+		 * @param structureVersion the version of the network structure
+		 */
+		Structure(BNetwork network, long structureVersion) {
+			this.structureVersion = structureVersion;
+			Map<String, BNode> nodes = network.nodes;
+			for (BNode node : nodes.values()) {
+				isComplete = isComplete && node.getNetwork() == network;
+				for (BNode n : node.getInputNodes()) {
+					isComplete = isComplete && nodes.get(n.getId()) == n;
+				}
+				for (BNode n : node.getOutputNodes()) {
+					isComplete = isComplete && nodes.get(n.getId()) == n;
+				}
+			}
+			if (!isComplete) {
+				return;
+			}
+
+			// the ancestors are first computed on an arbitrary topological order,
+			// in order to derive the number of ancestors for each node
+			List<BNode> order = getTopologicalOrder(nodes.values());
+			if (order.size() < nodes.size()) {
+				isComplete = false;
+				return;
+			}
+			sortedNodes = order.toArray(new BNode[order.size()]);
+			index(true);
+			int[] nbAncestors = new int[sortedNodes.length];
+			for (int i = 0; i < sortedNodes.length; i++) {
+				nbAncestors[i] = ancestors[i].cardinality();
+			}
+			Map<String, Integer> counts = new HashMap<String, Integer>();
+			for (int i = 0; i < sortedNodes.length; i++) {
+				counts.put(sortedNodes[i].getId(), nbAncestors[i]);
+			}
+
+			// the nodes are then sorted in the same way as BNode.compareTo
+			Arrays.sort(sortedNodes, (n1, n2) -> compare(n1, n2, counts));
+			index(false);
+		}
+
+		/**
+		 * Computes the positions of the nodes, their ancestors and descendants
+		 * according to the current order of sortedNodes, and the cliques. The order
+		 * must be topological (either from parents to children or the opposite).
+		 * 
+		 * @param parentsFirst whether the parents appear before their children
+		 */
+		private void index(boolean parentsFirst) {
+			int nbNodes = sortedNodes.length;
+			positions.clear();
+			for (int i = 0; i < nbNodes; i++) {
+				positions.put(sortedNodes[i].getId(), i);
+			}
+			ancestors = new BitSet[nbNodes];
+			descendants = new BitSet[nbNodes];
+			for (int k = 0; k < nbNodes; k++) {
+				int i = parentsFirst ? k : nbNodes - 1 - k;
+				ancestors[i] = new BitSet(nbNodes);
+				for (BNode input : sortedNodes[i].getInputNodes()) {
+					int j = positions.get(input.getId());
+					ancestors[i].or(ancestors[j]);
+					ancestors[i].set(j);
+				}
+			}
+			for (int k = 0; k < nbNodes; k++) {
+				int i = parentsFirst ? nbNodes - 1 - k : k;
+				descendants[i] = new BitSet(nbNodes);
+				for (BNode output : sortedNodes[i].getOutputNodes()) {
+					int j = positions.get(output.getId());
+					descendants[i].or(descendants[j]);
+					descendants[i].set(j);
+				}
+			}
+
+			// the cliques correspond to the connected components of the graph
+			cliques.clear();
+			cliqueIndices = new int[nbNodes];
+			Arrays.fill(cliqueIndices, -1);
+			for (int i = 0; i < nbNodes; i++) {
+				if (cliqueIndices[i] >= 0) {
+					continue;
+				}
+				Set<String> clique = new HashSet<String>();
+				Stack<Integer> toProcess = new Stack<Integer>();
+				toProcess.add(i);
+				cliqueIndices[i] = cliques.size();
+				while (!toProcess.isEmpty()) {
+					BNode node = sortedNodes[toProcess.pop()];
+					clique.add(node.getId());
+					List<BNode> neighbours = new ArrayList<BNode>();
+					neighbours.addAll(node.getInputNodes());
+					neighbours.addAll(node.getOutputNodes());
+					for (BNode neighbour : neighbours) {
+						int j = positions.get(neighbour.getId());
+						if (cliqueIndices[j] < 0) {
+							cliqueIndices[j] = cliques.size();
+							toProcess.add(j);
+						}
+					}
+				}
+				cliques.add(Collections.unmodifiableSet(clique));
+			}
+		}
+
+		/**
+		 * Returns a topological order of the nodes (from parents to children), using
+		 * Kahn's algorithm. If the nodes contain a cycle, the order only contains
+		 * the nodes that are not part of (or downstream of) the cycle.
+		 * 
+		 * @param nodes the nodes
+		 * @return the topological order
+		 */
+		private static List<BNode> getTopologicalOrder(Collection<BNode> nodes) {
+			List<BNode> order = new ArrayList<BNode>(nodes.size());
+			Map<String, Integer> nbInputs = new HashMap<String, Integer>();
+			Queue<BNode> roots = new LinkedList<BNode>();
+			for (BNode node : nodes) {
+				nbInputs.put(node.getId(), node.getInputNodeIds().size());
+				if (node.getInputNodeIds().isEmpty()) {
+					roots.add(node);
+				}
+			}
+			while (!roots.isEmpty()) {
+				BNode node = roots.poll();
+				order.add(node);
+				for (BNode output : node.getOutputNodes()) {
+					int remaining = nbInputs.merge(output.getId(), -1, Integer::sum);
+					if (remaining == 0) {
+						roots.add(output);
+					}
+				}
+			}
+			return order;
+		}
+
+		/**
+		 * Compares the two nodes in the same way as BNode.compareTo, but with
+		 * precomputed numbers of ancestors. Since the node with the largest number
+		 * of ancestors comes first, descendants always appear before their
+		 * ancestors.
+		 * 
+		 * @param n1 the first node
+		 * @param n2 the second node
+		 * @param nbAncestors the number of ancestors for each node
+		 * @return the comparison result
+		 */
+		private static int compare(BNode n1, BNode n2,
+				Map<String, Integer> nbAncestors) {
+			boolean isRoot1 = n1.getInputNodeIds().isEmpty();
+			boolean isRoot2 = n2.getInputNodeIds().isEmpty();
+			if (isRoot1 != isRoot2) {
+				return isRoot1 ? +100 : -100;
+			}
+			else if (isRoot1) {
+				boolean isAction1 = n1 instanceof ActionNode;
+				boolean isAction2 = n2 instanceof ActionNode;
+				if (isAction1 != isAction2) {
+					return isAction1 ? +10 : -10;
+				}
+			}
+			else {
+				int sizeDiff = nbAncestors.get(n2.getId())
+						- nbAncestors.get(n1.getId());
+				if (sizeDiff != 0) {
+					return sizeDiff;
+				}
+			}
+			return StringUtils.compare(n1.getId(), n2.getId());
+		}
+	}
+
 	// ===================================
 	// UTILITIES
 	// ===================================
@@ -24,9 +24,12 @@
 package opendial.bn.distribs;
 
 import java.util.logging.*;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -38,9 +41,9 @@ import opendial.bn.values.DoubleVal;
 import opendial.bn.values.NoneVal;
 import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
+import opendial.datastructs.PointIndex;
+import opendial.inference.approximate.AliasIntervals;
 import opendial.inference.approximate.Intervals;
-import opendial.utils.InferenceUtils;
-import opendial.utils.MathUtils;
 import opendial.utils.StringUtils;
 
 import org.w3c.dom.Attr;
@@ -66,12 +69,31 @@ public class CategoricalTable implements IndependentDistribution {
 	// the variable name
 	String variable;
 
-	// the probability table
-	Map<Value, Double> table;
+	// the values in the table, sorted by decreasing probability
+	Value[] values;
 
-	// probability intervals (used for binary search in sampling)
+	// the probability of each value
+	double[] probs;
+
+	// the number of rows in the table
+	int size;
+
+	// open-addressing index mapping each value to its position (+1) in the arrays
+	int[] index;
+
+	// probability intervals (alias table used for sampling)
 	Intervals<Value> intervals;
 
+	// nearest-neighbour index over the DoubleVal rows (created lazily)
+	PointIndex doubleIndex;
+
+	// nearest-neighbour index over the ArrayVal rows (created lazily)
+	PointIndex arrayIndex;
+
+	// whether the table can be converted to a continuous distribution (computed
+	// lazily)
+	Boolean continuous;
+
 	// ===================================
 	// TABLE CONSTRUCTION
 	// ===================================
@@ -86,7 +108,28 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	protected CategoricalTable(String variable, Map<Value, Double> headTable) {
 		this.variable = variable;
-		this.table = headTable;
+		Value[] vals = new Value[headTable.size()];
+		double[] ps = new double[headTable.size()];
+		int i = 0;
+		for (Entry<Value, Double> entry : headTable.entrySet()) {
+			vals[i] = entry.getKey();
+			ps[i++] = entry.getValue();
+		}
+		setRows(vals, ps, i);
+	}
+
+	/**
+	 * Constructs a new probability table from two parallel arrays of values and
+	 * probabilities. The arrays are owned by the table after the call.
+	 * 
+	 * @param variable the name of the random variable
+	 * @param values the values
+	 * @param probs the probability for each value
+	 * @param size the number of rows in the arrays
+	 */
+	CategoricalTable(String variable, Value[] values, double[] probs, int size) {
+		this.variable = variable;
+		setRows(values, probs, size);
 	}
 
 	/**
@@ -103,11 +146,11 @@ public class CategoricalTable implements IndependentDistribution {
 		}
 
 		CategoricalTable.Builder builder = new CategoricalTable.Builder(variable);
-		for (Value thisA : new HashSet<Value>(getValues())) {
-			for (Value otherA : other.getValues()) {
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < other.size; j++) {
 				try {
-					Value concat = thisA.concatenate(otherA);
-					builder.addRow(concat, getProb(thisA) * other.getProb(otherA));
+					Value concat = values[i].concatenate(other.values[j]);
+					builder.addRow(concat, probs[i] * other.probs[j]);
 				}
 				catch (RuntimeException e) {
 					log.warning("could not concatenated the tables " + this + " and "
@@ -135,26 +178,27 @@ public class CategoricalTable implements IndependentDistribution {
 
 	/**
 	 * Prunes all table values that have a probability lower than the threshold.
+	 * Since the rows are sorted by decreasing probability, the pruned values are
+	 * always at the end of the table, and the pruning is done in place.
 	 * 
 	 * @param threshold the threshold
 	 * @return true if at least one value has been pruned, false otherwise
 	 */
 	@Override
 	public boolean pruneValues(double threshold) {
-		Map<Value, Double> newTable = new HashMap<Value, Double>();
-		boolean changed = false;
-		for (Value row : table.keySet()) {
-			double prob = table.get(row);
-			if (prob >= threshold) {
-				newTable.put(row, prob);
-			}
-			else {
-				changed = true;
-			}
+		int newSize = size;
+		while (newSize > 0 && probs[newSize - 1] < threshold) {
+			newSize--;
 		}
-
+		boolean changed = (newSize < size);
 		if (changed) {
-			table = InferenceUtils.normalise(newTable);
+			Arrays.fill(values, newSize, size, null);
+			size = newSize;
+			normalise(probs, size);
+			index = createIndex(values, size);
+			doubleIndex = null;
+			arrayIndex = null;
+			continuous = null;
 		}
 		intervals = null;
 		return changed;
@@ -173,34 +217,29 @@ public class CategoricalTable implements IndependentDistribution {
 	@Override
 	public double getProb(Value val) {
 
-		if (table.containsKey(val)) {
-			return table.get(val);
+		int pos = find(index, values, val);
+		if (pos >= 0) {
+			return probs[pos];
 		}
 
 		// if the distribution has continuous values, search for the closest
 		// element
 		else if (val instanceof DoubleVal && isContinuous()) {
-			double toFind = ((DoubleVal) val).getDouble();
-			Value closest = table.keySet().stream()
-					.filter(v -> v instanceof DoubleVal)
-					.min((v1, v2) -> Double.compare(
-							Math.abs(((DoubleVal) v1).getDouble() - toFind),
-							Math.abs(((DoubleVal) v2).getDouble() - toFind)))
-					.get();
-			return getProb(closest);
+			if (doubleIndex == null) {
+				doubleIndex = createPointIndex(DoubleVal.class, 1);
+			}
+			int closest = doubleIndex
+					.getNearest(new double[] { ((DoubleVal) val).getDouble() });
+			return (closest >= 0) ? probs[closest] : 0.0;
 		}
 
 		else if (val instanceof ArrayVal && isContinuous()) {
 			double[] toFind = ((ArrayVal) val).getArray();
-			Value closest =
-					table.keySet().stream().filter(v -> v instanceof ArrayVal)
-							.min((v1, v2) -> Double.compare(
-									MathUtils.getDistance(((ArrayVal) v1).getArray(),
-											toFind),
-							MathUtils.getDistance(((ArrayVal) v2).getArray(),
-									toFind)))
-							.get();
-			return getProb(closest);
+			if (arrayIndex == null || arrayIndex.getDimension() != toFind.length) {
+				arrayIndex = createPointIndex(ArrayVal.class, toFind.length);
+			}
+			int closest = arrayIndex.getNearest(toFind);
+			return (closest >= 0) ? probs[closest] : 0.0;
 		}
 		return 0.0f;
 	}
@@ -212,25 +251,26 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return true if the table contains a row for the assignment, false otherwise
 	 */
 	public boolean hasProb(Value head) {
-		return table.containsKey(head);
+		return find(index, values, head) >= 0;
 	}
 
 	/**
 	 * Sample a value from the distribution. If no assignment can be sampled (due to
-	 * e.g. an ill-formed distribution), returns a none value.
+	 * e.g. an ill-formed distribution), returns a none value. The table is
+	 * sampled with an alias table created at the first draw.
 	 * 
 	 * @return the sampled assignment
 	 */
 	@Override
 	public Value sample() {
 		if (intervals == null) {
-			if (table.isEmpty()) {
+			if (size == 0) {
 				log.warning("creating intervals for an empty table");
 			}
-			intervals = new Intervals<Value>(table);
+			intervals = new AliasIntervals<Value>(getValues(), v -> getProb(v));
 		}
 		if (intervals.isEmpty()) {
-			log.warning("interval is empty, table: " + table);
+			log.warning("interval is empty, table: " + this);
 			return ValueFactory.none();
 		}
 
@@ -249,13 +289,13 @@ public class CategoricalTable implements IndependentDistribution {
 
 		if (isContinuous()) {
 			Map<double[], Double> points = new HashMap<double[], Double>();
-			for (Value v : getValues()) {
-				if (v instanceof ArrayVal) {
-					points.put(((ArrayVal) v).getArray(), getProb(v));
+			for (int i = 0; i < size; i++) {
+				if (values[i] instanceof ArrayVal) {
+					points.put(((ArrayVal) values[i]).getArray(), probs[i]);
 				}
-				else if (v instanceof DoubleVal) {
-					points.put(new double[] { ((DoubleVal) v).getDouble() },
-							getProb(v));
+				else if (values[i] instanceof DoubleVal) {
+					points.put(new double[] { ((DoubleVal) values[i]).getDouble() },
+							probs[i]);
 				}
 			}
 			DiscreteDensityFunction fun = new DiscreteDensityFunction(points);
@@ -291,25 +331,28 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return true if empty, false otherwise
 	 */
 	public boolean isEmpty() {
-		if (table.isEmpty()) {
+		if (size == 0) {
 			return true;
 		}
 		else
-			return (table.size() == 1
-					&& table.keySet().iterator().next().equals(ValueFactory.none()));
+			return (size == 1 && values[0].equals(ValueFactory.none()));
 	}
 
 	/**
 	 * Returns a subset of the N values in the table with the highest probability.
+	 * Since the rows are sorted, the operation only looks at the first N rows.
 	 * 
 	 * @param nbest the number of values to select
 	 * @return the distribution with the subset of values
 	 */
 	public CategoricalTable getNBest(int nbest) {
-		Map<Value, Double> ntable = InferenceUtils.getNBest(table, nbest);
+		if (nbest < 1) {
+			log.warning("nbest should be >= 1, but is " + nbest);
+			nbest = 1;
+		}
 		Builder builder = new Builder(variable);
-		for (Value v : ntable.keySet()) {
-			builder.addRow(v, ntable.get(v));
+		for (int i = 0; i < Math.min(nbest, size); i++) {
+			builder.addRow(values[i], probs[i]);
 		}
 		return builder.build().toDiscrete();
 	}
@@ -322,17 +365,8 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public Value getBest() {
-		if (table.size() > 0) {
-			double maxprob = -10;
-			Value maxVal = ValueFactory.none();
-			for (Value v : table.keySet()) {
-				double prob = table.get(v);
-				if (prob > maxprob) {
-					maxprob = prob;
-					maxVal = v;
-				}
-			}
-			return maxVal;
+		if (size > 0) {
+			return values[0];
 		}
 		else {
 			log.warning("table is empty, cannot extract best value");
@@ -346,17 +380,33 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return the size of the table
 	 */
 	public int size() {
-		return table.size();
+		return size;
 	}
 
 	/**
-	 * Returns the rows of the table.
+	 * Returns the rows of the table, sorted by decreasing probability.
 	 * 
 	 * @return the table rows
 	 */
 	@Override
 	public Set<Value> getValues() {
-		return table.keySet();
+		return new AbstractSet<Value>() {
+
+			@Override
+			public boolean contains(Object o) {
+				return (o instanceof Value) && find(index, values, (Value) o) >= 0;
+			}
+
+			@Override
+			public Iterator<Value> iterator() {
+				return Arrays.asList(values).subList(0, size).iterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
 	}
 
 	// ===================================
@@ -364,11 +414,16 @@ public class CategoricalTable implements IndependentDistribution {
 	// ===================================
 
 	/**
-	 * Returns the hashcode for the table.
+	 * Returns the hashcode for the table (computed in the same way as for a map
+	 * of values to probabilities).
 	 */
 	@Override
 	public int hashCode() {
-		return table.hashCode();
+		int hash = 0;
+		for (int i = 0; i < size; i++) {
+			hash += values[i].hashCode() ^ Double.hashCode(probs[i]);
+		}
+		return hash;
 	}
 
 	/**
@@ -378,17 +433,12 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public String toString() {
-
-		Map<Value, Double> sortedTable =
-				InferenceUtils.getNBest(table, Math.max(table.size(), 1));
-
-		String str = "";
-		for (Entry<Value, Double> entry : sortedTable.entrySet()) {
-			String prob = StringUtils.getShortForm(entry.getValue());
-			str += "P(" + variable + "=" + entry.getKey() + "):=" + prob + "\n";
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			String prob = StringUtils.getShortForm(probs[i]);
+			str.append("P(" + variable + "=" + values[i] + "):=" + prob + "\n");
 		}
-
-		return (str.length() > 0) ? str.substring(0, str.length() - 1) : str;
+		return (str.length() > 0) ? str.substring(0, str.length() - 1) : "";
 	}
 
 	/**
@@ -398,13 +448,13 @@ public class CategoricalTable implements IndependentDistribution {
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof CategoricalTable) {
-			Set<Value> otherVals = ((CategoricalTable) o).getValues();
-			if (!getValues().equals(otherVals)) {
+			CategoricalTable other = (CategoricalTable) o;
+			if (size != other.size) {
 				return false;
 			}
-			for (Value v : getValues()) {
-				if (Math.abs(
-						((CategoricalTable) o).getProb(v) - getProb(v)) > 0.01) {
+			for (int i = 0; i < size; i++) {
+				int pos = find(other.index, other.values, values[i]);
+				if (pos < 0 || Math.abs(other.probs[pos] - probs[i]) > 0.01) {
 					return false;
 				}
 			}
@@ -420,11 +470,8 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public CategoricalTable copy() {
-		Map<Value, Double> newTable = new HashMap<Value, Double>();
-		for (Value v : table.keySet()) {
-			newTable.put(v, table.get(v));
-		}
-		return new CategoricalTable(variable, newTable);
+		return new CategoricalTable(variable, Arrays.copyOf(values, size),
+				Arrays.copyOf(probs, size), size);
 	}
 
 	/**
@@ -439,15 +486,15 @@ public class CategoricalTable implements IndependentDistribution {
 		Attr id = doc.createAttribute("id");
 		id.setValue(variable.replace("'", ""));
 		var.setAttributeNode(id);
-		for (Value v : InferenceUtils.getNBest(table, table.size()).keySet()) {
-			if (!v.equals(ValueFactory.none())) {
+		for (int i = 0; i < size; i++) {
+			if (!values[i].equals(ValueFactory.none())) {
 				Element valueNode = doc.createElement("value");
-				if (table.get(v) < 0.99) {
+				if (probs[i] < 0.99) {
 					Attr prob = doc.createAttribute("prob");
-					prob.setValue("" + StringUtils.getShortForm(table.get(v)));
+					prob.setValue("" + StringUtils.getShortForm(probs[i]));
 					valueNode.setAttributeNode(prob);
 				}
-				valueNode.setTextContent("" + v);
+				valueNode.setTextContent("" + values[i]);
 				var.appendChild(valueNode);
 			}
 		}
@@ -455,11 +502,16 @@ public class CategoricalTable implements IndependentDistribution {
 	}
 
 	/**
-	 * Returns the table of values with their probability.
+	 * Returns the table of values with their probability, sorted by decreasing
+	 * probability. The returned map is a copy of the table content.
 	 * 
 	 * @return the table
 	 */
 	public Map<Value, Double> getTable() {
+		Map<Value, Double> table = new LinkedHashMap<Value, Double>(2 * size);
+		for (int i = 0; i < size; i++) {
+			table.put(values[i], probs[i]);
+		}
 		return table;
 	}
 
@@ -469,23 +521,181 @@ public class CategoricalTable implements IndependentDistribution {
 
 	/**
 	 * Returns true if the table can be converted to a continuous distribution, and
-	 * false otherwise.
+	 * false otherwise. The result is computed at the first call, and reset when
+	 * the table is pruned.
 	 * 
 	 * @return true if convertible to continuous, false otherwise.
 	 */
 	private boolean isContinuous() {
-		if (!table.keySet().isEmpty()) {
-			for (Value v : getValues()) {
-				if (!(v instanceof ArrayVal) && !(v instanceof DoubleVal)
-						&& !(v instanceof NoneVal)) {
-					return false;
+		if (continuous == null) {
+			boolean result = (size > 1);
+			for (int i = 0; i < size && result; i++) {
+				result = (values[i] instanceof ArrayVal)
+						|| (values[i] instanceof DoubleVal)
+						|| (values[i] instanceof NoneVal);
+			}
+			continuous = result;
+		}
+		return continuous;
+	}
+
+	/**
+	 * Creates a nearest-neighbour index over the rows whose values are of the
+	 * given class (DoubleVal or ArrayVal) and have the given dimension.
+	 * 
+	 * @param cls the class of the values to index
+	 * @param dim the dimension of the values to index
+	 * @return the corresponding index
+	 */
+	private PointIndex createPointIndex(Class<? extends Value> cls, int dim) {
+		double[][] points = new double[size][];
+		int[] positions = new int[size];
+		int nbPoints = 0;
+		for (int i = 0; i < size; i++) {
+			if (cls.isInstance(values[i])) {
+				double[] point = (values[i] instanceof DoubleVal)
+						? new double[] { ((DoubleVal) values[i]).getDouble() }
+						: ((ArrayVal) values[i]).getArray();
+				if (point.length == dim) {
+					points[nbPoints] = point;
+					positions[nbPoints++] = i;
 				}
 			}
-			if (getValues().size() > 1) {
-				return true;
+		}
+		return new PointIndex(Arrays.copyOf(points, nbPoints),
+				Arrays.copyOf(positions, nbPoints));
+	}
+
+	/**
+	 * Sets the rows of the table, sorts them by decreasing probability (keeping
+	 * the original order for rows with equal probabilities) and creates the
+	 * index.
+	 * 
+	 * @param vals the values
+	 * @param ps the probability for each value
+	 * @param nbRows the number of rows
+	 */
+	private void setRows(Value[] vals, double[] ps, int nbRows) {
+		boolean sorted = true;
+		for (int i = 1; i < nbRows && sorted; i++) {
+			sorted = (ps[i - 1] >= ps[i]);
+		}
+		if (sorted) {
+			values = vals;
+			probs = ps;
+		}
+		else {
+			Integer[] order = new Integer[nbRows];
+			for (int i = 0; i < nbRows; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (i, j) -> Double.compare(ps[j], ps[i]));
+			values = new Value[nbRows];
+			probs = new double[nbRows];
+			for (int i = 0; i < nbRows; i++) {
+				values[i] = vals[order[i]];
+				probs[i] = ps[order[i]];
 			}
 		}
-		return false;
+		size = nbRows;
+		index = createIndex(values, size);
+	}
+
+	/**
+	 * Normalises the first rows of the probability array in place. If the total
+	 * probability is zero, the array is left unchanged.
+	 * 
+	 * @param probs the probability array
+	 * @param size the number of rows to normalise
+	 */
+	private static void normalise(double[] probs, int size) {
+		double total = 0.0;
+		for (int i = 0; i < size; i++) {
+			total += probs[i];
+		}
+		if (total == 0.0) {
+			log.warning("all assignments in the distribution have a zero "
+					+ "probability, cannot be normalised");
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			probs[i] /= total;
+		}
+	}
+
+	/**
+	 * Creates an open-addressing index (with linear probing) for the first rows of
+	 * the value array. Each slot contains the position of the value + 1, or 0 for
+	 * empty slots. The number of slots is a power of two at least twice as large
+	 * as the number of rows.
+	 * 
+	 * @param values the value array
+	 * @param size the number of rows
+	 * @return the corresponding index
+	 */
+	private static int[] createIndex(Value[] values, int size) {
+		int capacity = 4;
+		while (capacity < 2 * size) {
+			capacity <<= 1;
+		}
+		int[] index = new int[capacity];
+		for (int i = 0; i < size; i++) {
+			addToIndex(index, values, i);
+		}
+		return index;
+	}
+
+	/**
+	 * Adds the value at the given position to the index, which must contain at
+	 * least one empty slot.
+	 * 
+	 * @param index the index
+	 * @param values the value array
+	 * @param pos the position of the value to add
+	 */
+	private static void addToIndex(int[] index, Value[] values, int pos) {
+		int mask = index.length - 1;
+		int slot = spread(values[pos].hashCode()) & mask;
+		while (index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		index[slot] = pos + 1;
+	}
+
+	/**
+	 * Returns the position of the value in the array, based on the index, or -1 if
+	 * the value is not included.
+	 * 
+	 * @param index the index
+	 * @param values the value array
+	 * @param val the value to find
+	 * @return the position of the value, or -1 if absent
+	 */
+	private static int find(int[] index, Value[] values, Value val) {
+		if (val == null) {
+			return -1;
+		}
+		int mask = index.length - 1;
+		int slot = spread(val.hashCode()) & mask;
+		while (index[slot] != 0) {
+			Value v = values[index[slot] - 1];
+			if (v == val || v.equals(val)) {
+				return index[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Spreads the higher bits of the hash code over the lower ones (in the same
+	 * manner as HashMap).
+	 * 
+	 * @param hash the hash code
+	 * @return the spread hash code
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
 	}
 
 	// ===================================
@@ -505,8 +715,17 @@ public class CategoricalTable implements IndependentDistribution {
 		// the variable name
 		String variable;
 
-		// the probability table
-		Map<Value, Double> table;
+		// the values added so far
+		Value[] values;
+
+		// the probability of each value
+		double[] probs;
+
+		// the number of rows
+		int size;
+
+		// index mapping each value to its position (+1) in the arrays
+		int[] index;
 
 		// ===================================
 		// TABLE CONSTRUCTION
@@ -518,7 +737,9 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @param variable the name of the random variable
 		 */
 		public Builder(String variable) {
-			table = new HashMap<Value, Double>(5);
+			values = new Value[4];
+			probs = new double[4];
+			index = new int[8];
 			this.variable = variable;
 		}
 
@@ -534,7 +755,24 @@ public class CategoricalTable implements IndependentDistribution {
 			if (prob < 0.0f || prob > 1.02f) {
 				return;
 			}
-			table.put(value, prob);
+			int pos = find(index, values, value);
+			if (pos >= 0) {
+				probs[pos] = prob;
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+				probs = Arrays.copyOf(probs, 2 * size);
+			}
+			values[size] = value;
+			probs[size] = prob;
+			if (2 * (size + 1) > index.length) {
+				index = createIndex(values, size + 1);
+			}
+			else {
+				addToIndex(index, values, size);
+			}
+			size++;
 		}
 
 		/**
@@ -589,7 +827,8 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @param prob the probability increment
 		 */
 		public void incrementRow(Value head, double prob) {
-			addRow(head, table.getOrDefault(head, 0.0) + prob);
+			int pos = find(index, values, head);
+			addRow(head, (pos >= 0) ? probs[pos] + prob : prob);
 		}
 
 		/**
@@ -609,11 +848,20 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @param head head assignment
 		 */
 		public void removeRow(Value head) {
-			table.remove(head);
+			int pos = find(index, values, head);
+			if (pos >= 0) {
+				System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+				System.arraycopy(probs, pos + 1, probs, pos, size - pos - 1);
+				values[--size] = null;
+				index = createIndex(values, size);
+			}
 		}
 
+		/**
+		 * Normalises the probabilities in the table (in place).
+		 */
 		public void normalise() {
-			table = InferenceUtils.normalise(table);
+			CategoricalTable.normalise(probs, size);
 		}
 
 		/**
@@ -625,19 +873,19 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @return the distribution (CategoricalTable or SingleValueDistribution).
 		 */
 		public IndependentDistribution build() {
-			double totalProb = table.values().stream().mapToDouble(d -> d).sum();
+			double totalProb = getTotalProb();
 			if (totalProb < 0.99) {
 				incrementRow(ValueFactory.none(), 1.0 - totalProb);
 			}
 			else if (totalProb > 1.01) {
-				table = InferenceUtils.normalise(table);
+				normalise();
 			}
-			if (table.size() == 1) {
-				Value singleValue = table.keySet().iterator().next();
-				return new SingleValueDistribution(variable, singleValue);
+			if (size == 1) {
+				return new SingleValueDistribution(variable, values[0]);
 			}
 			else {
-				return new CategoricalTable(variable, table);
+				return new CategoricalTable(variable, Arrays.copyOf(values, size),
+						Arrays.copyOf(probs, size), size);
 			}
 		}
 
@@ -650,8 +898,7 @@ public class CategoricalTable implements IndependentDistribution {
 		 */
 		public boolean isWellFormed() {
 			// checks that the total probability is roughly equal to 1.0f
-			double totalProb =
-					table.keySet().stream().mapToDouble(v -> table.get(v)).sum();
+			double totalProb = getTotalProb();
 			if (totalProb < 0.9f || totalProb > 1.1f) {
 				log.fine("total probability is " + totalProb);
 				return false;
@@ -666,7 +913,7 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @return true if empty, false otherwise
 		 */
 		public boolean isEmpty() {
-			return table.isEmpty();
+			return size == 0;
 		}
 
 		/**
@@ -675,7 +922,11 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @return the total probability
 		 */
 		public double getTotalProb() {
-			return table.values().stream().mapToDouble(d -> d).sum();
+			double totalProb = 0.0;
+			for (int i = 0; i < size; i++) {
+				totalProb += probs[i];
+			}
+			return totalProb;
 		}
 
 		/**
@@ -684,14 +935,16 @@ public class CategoricalTable implements IndependentDistribution {
 		 * @return the values
 		 */
 		public List<Value> getValues() {
-			return new ArrayList<Value>(table.keySet());
+			return new ArrayList<Value>(Arrays.asList(values).subList(0, size));
 		}
 
 		/**
 		 * Clears the builder.
 		 */
 		public void clear() {
-			table.clear();
+			Arrays.fill(values, 0, size, null);
+			Arrays.fill(index, 0);
+			size = 0;
 		}
 	}
 
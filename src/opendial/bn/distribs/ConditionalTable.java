@@ -27,6 +27,7 @@ import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -59,6 +60,9 @@ public class ConditionalTable implements ProbDistribution {
 	// logger
 	public final static Logger log = Logger.getLogger("OpenDial");
 
+	// maximum number of cells (conditions * head values) for a compiled table
+	public static int MAX_COMPILED_SIZE = 200000;
+
 	// head variable
 	String headVar;
 
@@ -68,6 +72,13 @@ public class ConditionalTable implements ProbDistribution {
 	// the probability table
 	protected HashMap<Assignment, IndependentDistribution> table;
 
+	// compiled (array-based) form of the table, null if not yet compiled or
+	// if the table cannot be compiled
+	Compiled compiled;
+
+	// whether the compilation of the table has been attempted
+	boolean isCompiled;
+
 	// ===================================
 	// TABLE CONSTRUCTION
 	// ===================================
@@ -127,6 +138,7 @@ public class ConditionalTable implements ProbDistribution {
 		if (this.headVar.equals(oldVarId)) {
 			this.headVar = newVarId;
 		}
+		invalidate();
 	}
 
 	/**
@@ -144,6 +156,7 @@ public class ConditionalTable implements ProbDistribution {
 					+ distrib.getVariable());
 		}
 		conditionalVars.addAll(condition.getVariables());
+		invalidate();
 	}
 
 	/**
@@ -157,6 +170,7 @@ public class ConditionalTable implements ProbDistribution {
 		for (Assignment condition : table.keySet()) {
 			changed = changed || table.get(condition).pruneValues(threshold);
 		}
+		invalidate();
 		return changed;
 	}
 
@@ -185,6 +199,14 @@ public class ConditionalTable implements ProbDistribution {
 	@Override
 	public Value sample(Assignment condition) {
 
+		Compiled compiledTable = getCompiled();
+		if (compiledTable != null) {
+			int cell = compiledTable.getCell(condition);
+			if (cell >= 0) {
+				return compiledTable.distribs[cell].sample();
+			}
+		}
+
 		if (condition.size() != conditionalVars.size()) {
 			condition = condition.getTrimmed(conditionalVars);
 		}
@@ -210,6 +232,13 @@ public class ConditionalTable implements ProbDistribution {
 	 */
 	@Override
 	public double getProb(Assignment condition, Value head) {
+		Compiled compiledTable = getCompiled();
+		if (compiledTable != null) {
+			int cell = compiledTable.getCell(condition);
+			if (cell >= 0) {
+				return compiledTable.getProb(cell, head);
+			}
+		}
 		if (condition.size() > conditionalVars.size()) {
 			condition = condition.getTrimmed(conditionalVars);
 		}
@@ -390,6 +419,207 @@ public class ConditionalTable implements ProbDistribution {
 		return false;
 	}
 
+	// ===================================
+	// COMPILATION
+	// ===================================
+
+	/**
+	 * Compiles the table into an array-based representation, if the table is
+	 * discrete, each condition is defined on all conditional variables, and the
+	 * total size does not exceed MAX_COMPILED_SIZE. The compiled form is then used
+	 * for the probability lookups and sampling until the table is modified.
+	 * 
+	 * @return true if the table could be compiled, false otherwise
+	 */
+	public boolean compile() {
+		return getCompiled() != null;
+	}
+
+	/**
+	 * Returns the compiled form of the table, compiling it if necessary. Returns
+	 * null if the table cannot be compiled.
+	 * 
+	 * @return the compiled table (or null)
+	 */
+	private Compiled getCompiled() {
+		if (!isCompiled) {
+			compiled = Compiled.create(conditionalVars, table);
+			isCompiled = true;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Discards the compiled form of the table (after a modification).
+	 */
+	private void invalidate() {
+		compiled = null;
+		isCompiled = false;
+	}
+
+	/**
+	 * Array-based representation of a discrete conditional table. Each conditional
+	 * variable is associated with a mapping from its values to indices, and each
+	 * condition is mapped to a cell computed from these indices with mixed-radix
+	 * strides. The probabilities are stored in one contiguous array indexed by
+	 * cell and head value.
+	 */
+	static final class Compiled {
+
+		// the conditional variables
+		final String[] vars;
+
+		// the index of each value, for each conditional variable
+		final List<Map<Value, Integer>> valueIndices;
+
+		// the stride for each conditional variable
+		final int[] strides;
+
+		// the head values
+		final Value[] heads;
+
+		// the index of each head value
+		final Map<Value, Integer> headIndices;
+
+		// the probabilities, indexed by cell * heads.length + head index
+		final double[] cpt;
+
+		// the distribution for each cell (null if the condition is absent)
+		final IndependentDistribution[] distribs;
+
+		/**
+		 * Creates the compiled form of the table, or returns null if the table
+		 * cannot be compiled.
+		 * 
+		 * @param conditionalVars the conditional variables
+		 * @param table the table to compile
+		 * @return the compiled table (or null)
+		 */
+		static Compiled create(Set<String> conditionalVars,
+				Map<Assignment, IndependentDistribution> table) {
+			if (table.isEmpty()) {
+				return null;
+			}
+			String[] vars = conditionalVars.toArray(new String[0]);
+			List<Map<Value, Integer>> valueIndices =
+					new ArrayList<Map<Value, Integer>>();
+			for (int i = 0; i < vars.length; i++) {
+				valueIndices.add(new HashMap<Value, Integer>());
+			}
+			Map<Value, Integer> headIndices = new HashMap<Value, Integer>();
+			for (Assignment condition : table.keySet()) {
+				IndependentDistribution distrib = table.get(condition);
+				if (condition.size() != vars.length
+						|| !(distrib instanceof CategoricalTable
+								|| distrib instanceof SingleValueDistribution)) {
+					return null;
+				}
+				for (int i = 0; i < vars.length; i++) {
+					Map<Value, Integer> indices = valueIndices.get(i);
+					indices.putIfAbsent(condition.getValue(vars[i]), indices.size());
+				}
+				for (Value head : distrib.getValues()) {
+					headIndices.putIfAbsent(head, headIndices.size());
+				}
+			}
+
+			long nbCells = 1;
+			int[] strides = new int[vars.length];
+			for (int i = 0; i < vars.length; i++) {
+				strides[i] = (int) nbCells;
+				nbCells *= valueIndices.get(i).size();
+			}
+			if (nbCells * headIndices.size() > MAX_COMPILED_SIZE) {
+				return null;
+			}
+			return new Compiled(vars, valueIndices, strides, headIndices,
+					(int) nbCells, table);
+		}
+
+		/**
+		 * Fills the compiled table.
+		 * 
+		 * @param vars the conditional variables
+		 * @param valueIndices the value indices for each variable
+		 * @param strides the strides for each variable
+		 * @param headIndices the indices of the head values
+		 * @param nbCells the number of cells
+		 * @param table the table to compile
+		 */
+		private Compiled(String[] vars, List<Map<Value, Integer>> valueIndices,
+				int[] strides, Map<Value, Integer> headIndices, int nbCells,
+				Map<Assignment, IndependentDistribution> table) {
+			this.vars = vars;
+			this.valueIndices = valueIndices;
+			this.strides = strides;
+			this.headIndices = headIndices;
+			heads = new Value[headIndices.size()];
+			for (Value head : headIndices.keySet()) {
+				heads[headIndices.get(head)] = head;
+			}
+			cpt = new double[nbCells * heads.length];
+			distribs = new IndependentDistribution[nbCells];
+			for (Assignment condition : table.keySet()) {
+				int cell = getIndex(condition);
+				IndependentDistribution distrib = table.get(condition);
+				distribs[cell] = distrib;
+				for (Value head : distrib.getValues()) {
+					cpt[cell * heads.length + headIndices.get(head)] =
+							distrib.getProb(head);
+				}
+			}
+		}
+
+		/**
+		 * Returns the probability of the head value in the given cell.
+		 * 
+		 * @param cell the cell index
+		 * @param head the head value
+		 * @return the corresponding probability
+		 */
+		double getProb(int cell, Value head) {
+			Integer headIndex = headIndices.get(head);
+			if (headIndex != null && cpt[cell * heads.length + headIndex] > 0.0) {
+				return cpt[cell * heads.length + headIndex];
+			}
+
+			// the distribution may still find a probability for the value (e.g.
+			// as the closest value in a discretised continuous table)
+			return distribs[cell].getProb(head);
+		}
+
+		/**
+		 * Returns the cell for the condition, or -1 if the condition does not
+		 * correspond to any distribution in the table.
+		 * 
+		 * @param condition the condition (which may include other variables)
+		 * @return the cell index, or -1 if absent
+		 */
+		int getCell(Assignment condition) {
+			int cell = getIndex(condition);
+			return (cell >= 0 && distribs[cell] != null) ? cell : -1;
+		}
+
+		/**
+		 * Returns the index computed from the values of the conditional variables
+		 * in the assignment, or -1 if one of the values is unknown.
+		 * 
+		 * @param condition the condition (which may include other variables)
+		 * @return the index, or -1 if a value is unknown
+		 */
+		private int getIndex(Assignment condition) {
+			int cell = 0;
+			for (int i = 0; i < vars.length; i++) {
+				Integer index = valueIndices.get(i).get(condition.getValue(vars[i]));
+				if (index == null || !condition.containsVar(vars[i])) {
+					return -1;
+				}
+				cell += index * strides[i];
+			}
+			return cell;
+		}
+	}
+
 	// ===================================
 	// TABLE CONSTRUCTION
 	// ===================================
@@ -591,7 +821,8 @@ public class ConditionalTable implements ProbDistribution {
 		/**
 		 * Builds the corresponding probability table. If some conditional tables
 		 * have a total probability mass that is less than 1.0, creates a default
-		 * None value to cover the remaining mass.
+		 * None value to cover the remaining mass. The resulting table is compiled
+		 * into its array-based form (if possible).
 		 * 
 		 * @return the corresponding conditional table
 		 */
@@ -601,7 +832,9 @@ public class ConditionalTable implements ProbDistribution {
 			for (Assignment cond : table.keySet()) {
 				table2.put(cond, table.get(cond).build());
 			}
-			return new ConditionalTable(headVar, table2);
+			ConditionalTable result = new ConditionalTable(headVar, table2);
+			result.compile();
+			return result;
 		}
 
 	}
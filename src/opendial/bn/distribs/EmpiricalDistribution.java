@@ -27,11 +27,11 @@ import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 
 import opendial.bn.distribs.ConditionalTable.Builder;
@@ -39,7 +39,11 @@ import opendial.bn.distribs.densityfunctions.KernelDensityFunction;
 import opendial.bn.values.ArrayVal;
 import opendial.bn.values.DoubleVal;
 import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
+import opendial.inference.approximate.SampleStore;
+import opendial.inference.approximate.SamplingContext;
+import opendial.inference.approximate.SamplingStatistics;
 
 /**
  * Distribution defined "empirically" in terms of a set of samples on a collection of
@@ -54,19 +58,30 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	// logger
 	public final static Logger log = Logger.getLogger("OpenDial");
 
-	// list of samples for the empirical distribution
-	protected List<Assignment> samples;
+	// samples for the empirical distribution (in columnar format)
+	protected SampleStore samples;
 
-	// random sampler
-	Random sampler;
+	// cache for the samples as assignments (created when needed)
+	List<Assignment> assignmentsCache;
 
 	// cache for the discrete and continuous distributions
 	MultivariateTable discreteCache;
 	ContinuousDistribution continuousCache;
 
+	// number of occurrences of each (full) assignment in the samples, updated
+	// as new samples are added (created when needed)
+	Map<Assignment, Integer> histogram;
+
+	// cache for the marginal distributions P(var) and P(var|condVars)
+	Map<String, IndependentDistribution> marginalCache;
+	Map<List<Object>, ProbDistribution> condMarginalCache;
+
 	// the names of the random variables
 	Set<String> variables;
 
+	// convergence statistics of the sampling process (if any)
+	SamplingStatistics stats;
+
 	// ===================================
 	// CONSTRUCTION METHODS
 	// ===================================
@@ -75,9 +90,8 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * Constructs an empirical distribution with an empty set of samples
 	 */
 	public EmpiricalDistribution() {
-		this.samples = new ArrayList<Assignment>();
+		this.samples = new SampleStore();
 		this.variables = new HashSet<String>();
-		sampler = new Random();
 	}
 
 	/**
@@ -92,6 +106,17 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		}
 	}
 
+	/**
+	 * Constructs a new empirical distribution with the samples in the store (the
+	 * store is not copied, and should not be modified afterwards)
+	 * 
+	 * @param samples the sample store
+	 */
+	public EmpiricalDistribution(SampleStore samples) {
+		this.samples = samples;
+		this.variables = new HashSet<String>(samples.getVariables());
+	}
+
 	/**
 	 * Adds a new sample to the distribution
 	 * 
@@ -99,9 +124,21 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	public void addSample(Assignment sample) {
 		samples.add(sample);
-		discreteCache = null;
-		continuousCache = null;
+		resetCaches();
 		variables.addAll(sample.getVariables());
+		if (histogram != null) {
+			histogram.merge(new Assignment(sample), 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Sets the convergence statistics of the sampling process that generated the
+	 * samples
+	 * 
+	 * @param stats the sampling statistics
+	 */
+	public void setStatistics(SamplingStatistics stats) {
+		this.stats = stats;
 	}
 
 	/**
@@ -111,11 +148,9 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	public void removeVariable(String varId) {
 		variables.remove(varId);
-		discreteCache = null;
-		continuousCache = null;
-		for (Assignment s : samples) {
-			s.removePair(varId);
-		}
+		resetCaches();
+		histogram = null;
+		samples.removeVariable(varId);
 	}
 
 	// ===================================
@@ -132,8 +167,8 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	public Assignment sample() {
 
 		if (!samples.isEmpty()) {
-			int selection = sampler.nextInt(samples.size());
-			Assignment selected = samples.get(selection);
+			int selection = SamplingContext.nextInt(samples.size());
+			Assignment selected = getAssignments().get(selection);
 			return selected;
 		}
 		else {
@@ -156,6 +191,15 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @return the collection of samples
 	 */
 	public Collection<Assignment> getSamples() {
+		return getAssignments();
+	}
+
+	/**
+	 * Returns the samples in their columnar format
+	 * 
+	 * @return the sample store
+	 */
+	public SampleStore getSampleStore() {
 		return samples;
 	}
 
@@ -168,6 +212,16 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		return samples.size();
 	}
 
+	/**
+	 * Returns the convergence statistics of the sampling process that generated the
+	 * samples (or null if no statistics are available)
+	 * 
+	 * @return the sampling statistics
+	 */
+	public SamplingStatistics getStatistics() {
+		return stats;
+	}
+
 	/**
 	 * Returns the possible values for the variables of the distribution.
 	 * 
@@ -175,19 +229,20 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public Set<Assignment> getValues() {
-		Set<Assignment> possible = new HashSet<Assignment>();
-		for (Assignment sample : samples) {
-			possible.add(sample);
-		}
-		return possible;
+		return Collections.unmodifiableSet(getHistogram().keySet());
 	}
 
 	/**
-	 * Returns the probability of a particular assignment
+	 * Returns the probability of a particular assignment (i.e. its relative
+	 * frequency in the samples)
 	 */
 	@Override
 	public double getProb(Assignment head) {
-		return toDiscrete().getProb(head);
+		if (samples.isEmpty()) {
+			return toDiscrete().getProb(head);
+		}
+		Integer count = getHistogram().get(head.getTrimmed(variables));
+		return (count != null) ? count / (double) samples.size() : 0.0;
 	}
 
 	/**
@@ -196,7 +251,15 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public Assignment getBest() {
-		return toDiscrete().getBest();
+		Assignment best = null;
+		int maxCount = 0;
+		for (Map.Entry<Assignment, Integer> entry : getHistogram().entrySet()) {
+			if (entry.getValue() > maxCount) {
+				maxCount = entry.getValue();
+				best = entry.getKey();
+			}
+		}
+		return (best != null) ? best : toDiscrete().getBest();
 	}
 
 	// ===================================
@@ -211,9 +274,9 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		if (discreteCache == null) {
 			MultivariateTable.Builder probs = new MultivariateTable.Builder();
 			double incr = 1.0 / samples.size();
-			for (Assignment sample : samples) {
-				Assignment trimmed = sample.getTrimmed(variables);
-				probs.incrementRow(trimmed, incr);
+			Map<Assignment, Integer> counts = getHistogram();
+			for (Assignment trimmed : counts.keySet()) {
+				probs.incrementRow(trimmed, counts.get(trimmed) * incr);
 			}
 
 			discreteCache = probs.build();
@@ -244,19 +307,29 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	/**
 	 * Returns an independent probability distribution on a single random variable
 	 * based on the samples. This distribution may be a categorical table or a
-	 * continuous distribution.
+	 * continuous distribution. The marginal is computed once (until the samples
+	 * are modified), and a copy is returned to the caller.
 	 * 
 	 * @return the probability distribution resulting from the marginalisation.
 	 */
 	@Override
 	public IndependentDistribution getMarginal(String var) {
-		if (sample().getTrimmed(Arrays.asList(var)).containContinuousValues()
-				&& samples.stream().distinct().limit(5).count() == 5) {
-			return createContinuous(var);
+		if (marginalCache == null) {
+			marginalCache = new HashMap<String, IndependentDistribution>();
 		}
-		else {
-			return createDiscrete(var);
+		IndependentDistribution marginal = marginalCache.get(var);
+		if (marginal == null) {
+			List<Value> values = samples.getValues(var);
+			if (!values.isEmpty() && isContinuous(values.get(0))
+					&& values.size() >= 5) {
+				marginal = createContinuous(var);
+			}
+			else {
+				marginal = createDiscrete(var);
+			}
+			marginalCache.put(var, marginal);
 		}
+		return marginal.copy();
 	}
 
 	/**
@@ -273,17 +346,38 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		if (condVars.isEmpty()) {
 			return getMarginal(var);
 		}
-		else {
-			Builder builder = new ConditionalTable.Builder(var);
-			double incr = 1.0 / samples.size();
-			for (Assignment sample : samples) {
-				Assignment condition = sample.getTrimmed(condVars);
-				Value val = sample.getValue(var);
-				builder.incrementRow(condition, val, incr);
-			}
-			builder.normalise();
-			return builder.build();
+		if (condMarginalCache == null) {
+			condMarginalCache = new HashMap<List<Object>, ProbDistribution>();
+		}
+		List<Object> key = Arrays.asList(var, new HashSet<String>(condVars));
+		ProbDistribution marginal = condMarginalCache.get(key);
+		if (marginal == null) {
+			marginal = createConditional(var, condVars);
+			condMarginalCache.put(key, marginal);
+		}
+		return marginal.copy();
+	}
+
+	/**
+	 * Creates a conditional table P(var|condVars) based on the samples.
+	 * 
+	 * @param var the head variable
+	 * @param condVars the (non-empty) conditional variables
+	 * @return the resulting conditional table
+	 */
+	private ConditionalTable createConditional(String var, Set<String> condVars) {
+		Builder builder = new ConditionalTable.Builder(var);
+		double incr = 1.0 / samples.size();
+		Set<String> vars = new HashSet<String>(condVars);
+		vars.add(var);
+		Map<Assignment, Integer> counts = samples.getCounts(vars);
+		for (Assignment a : counts.keySet()) {
+			Assignment condition = a.getTrimmed(condVars);
+			Value val = a.getValue(var);
+			builder.incrementRow(condition, val, counts.get(a) * incr);
 		}
+		builder.normalise();
+		return builder.build();
 	}
 
 	/**
@@ -298,9 +392,14 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 
 		double incr = 1.0 / samples.size();
 
-		for (Assignment sample : samples) {
-			Value val = sample.getValue(headVar);
-			probs.incrementRow(val, incr);
+		Map<Value, Integer> counts = samples.getCounts(headVar);
+		int nbUndefined = samples.size();
+		for (Value val : counts.keySet()) {
+			probs.incrementRow(val, counts.get(val) * incr);
+			nbUndefined -= counts.get(val);
+		}
+		if (nbUndefined > 0) {
+			probs.incrementRow(ValueFactory.none(), nbUndefined * incr);
 		}
 
 		return probs.build();
@@ -315,8 +414,8 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	public ContinuousDistribution createContinuous(String headVar) {
 
 		List<double[]> values = new ArrayList<double[]>();
-		for (Assignment a : samples) {
-			Value v = a.getValue(headVar);
+		for (int i = 0; i < samples.size(); i++) {
+			Value v = samples.getValue(i, headVar);
 			if (v instanceof ArrayVal) {
 				values.add(((ArrayVal) v).getArray());
 			}
@@ -343,37 +442,23 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 
 		Map<String, Map<Value, Integer>> frequencies =
 				new HashMap<String, Map<Value, Integer>>();
-
-		for (Assignment sample : samples) {
-			for (String var : sample.getVariables()) {
-				Value val = sample.getValue(var);
-				if (!frequencies.containsKey(var)) {
-					frequencies.put(var, new HashMap<Value, Integer>());
-				}
-				Map<Value, Integer> valFreq = frequencies.get(var);
-				if (!valFreq.containsKey(val)) {
-					valFreq.put(val, 1);
-				}
-				else {
-					valFreq.put(val, valFreq.get(val) + 1);
-				}
-			}
+		for (String var : samples.getVariables()) {
+			frequencies.put(var, samples.getCounts(var));
 		}
 
-		boolean changed = false;
 		int minNumber = (int) (samples.size() * threshold);
-		for (int i = 0; i < samples.size(); i++) {
-			Assignment sample = samples.get(i);
-			for (String var : sample.getVariables()) {
-				if (frequencies.get(var).get(sample.getValue(var)) < minNumber) {
-					samples.remove(i);
-					changed = true;
-					continue;
+		boolean changed = samples.retainRows(i -> {
+			for (String var : frequencies.keySet()) {
+				Value val = samples.getValue(i, var);
+				if (!isContinuous(val) && frequencies.get(var).containsKey(val)
+						&& frequencies.get(var).get(val) < minNumber) {
+					return false;
 				}
 			}
-		}
-		discreteCache = null;
-		continuousCache = null;
+			return true;
+		});
+		resetCaches();
+		histogram = null;
 		return changed;
 	}
 
@@ -391,12 +476,11 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 			variables.add(newId);
 		}
 
-		for (Assignment a : samples) {
-			if (a.containsVar(oldId)) {
-				Value v = a.removePair(oldId);
-				a.addPair(newId, v);
-			}
-		}
+		samples.renameVariable(oldId, newId);
+		assignmentsCache = null;
+		histogram = null;
+		marginalCache = null;
+		condMarginalCache = null;
 
 		if (discreteCache != null) {
 			discreteCache.modifyVariableId(oldId, newId);
@@ -413,7 +497,9 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public EmpiricalDistribution copy() {
-		EmpiricalDistribution copy = new EmpiricalDistribution(samples);
+		EmpiricalDistribution copy =
+				new EmpiricalDistribution(new SampleStore(samples));
+		copy.stats = stats;
 		return copy;
 	}
 
@@ -441,8 +527,7 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	private boolean isContinuous() {
 
 		for (String var : getVariables()) {
-			Assignment a = samples.get(0);
-			if (a.containsVar(var) && a.containContinuousValues()) {
+			if (!samples.isEmpty() && isContinuous(samples.getValue(0, var))) {
 				if (getVariables().size() == 1) {
 					return true;
 				}
@@ -454,4 +539,51 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		return false;
 	}
 
+	/**
+	 * Returns true if the value is continuous (DoubleVal or ArrayVal)
+	 * 
+	 * @param value the value
+	 * @return true if the value is continuous, false otherwise
+	 */
+	private static boolean isContinuous(Value value) {
+		return value instanceof DoubleVal || value instanceof ArrayVal;
+	}
+
+	/**
+	 * Returns the samples as a list of assignments (created at the first call)
+	 * 
+	 * @return the list of assignments
+	 */
+	private List<Assignment> getAssignments() {
+		if (assignmentsCache == null) {
+			assignmentsCache = samples.getAssignments();
+		}
+		return assignmentsCache;
+	}
+
+	/**
+	 * Returns the number of occurrences of each assignment in the samples (created
+	 * at the first call, and then updated as new samples are added).
+	 * 
+	 * @return the histogram of the samples
+	 */
+	private Map<Assignment, Integer> getHistogram() {
+		if (histogram == null) {
+			histogram = new HashMap<Assignment, Integer>(samples.getCounts(variables));
+		}
+		return histogram;
+	}
+
+	/**
+	 * Resets the cached representations of the samples (except the histogram,
+	 * which is updated incrementally when new samples are added).
+	 */
+	private void resetCaches() {
+		assignmentsCache = null;
+		discreteCache = null;
+		continuousCache = null;
+		marginalCache = null;
+		condMarginalCache = null;
+	}
+
 }
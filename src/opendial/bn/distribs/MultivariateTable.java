@@ -34,6 +34,7 @@ import java.util.Set;
 
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.inference.approximate.AliasIntervals;
 import opendial.inference.approximate.Intervals;
 import opendial.utils.InferenceUtils;
 import opendial.utils.StringUtils;
@@ -56,7 +57,7 @@ public class MultivariateTable implements MultivariateDistribution {
 	// the probability table
 	Map<Assignment, Double> table;
 
-	// probability intervals (used for binary search in sampling)
+	// probability intervals (alias table used for sampling)
 	Intervals<Assignment> intervals;
 
 	// sampler
@@ -185,7 +186,8 @@ public class MultivariateTable implements MultivariateDistribution {
 
 	/**
 	 * Sample an assignment from the distribution. If no assignment can be sampled
-	 * (due to e.g. an ill-formed distribution), returns an empty assignment.
+	 * (due to e.g. an ill-formed distribution), returns an empty assignment. The table
+	 * is sampled with an alias table created at the first draw.
 	 * 
 	 * @return the sampled assignment
 	 */
@@ -193,7 +195,7 @@ public class MultivariateTable implements MultivariateDistribution {
 	public Assignment sample() {
 
 		if (intervals == null) {
-			intervals = new Intervals<Assignment>(table);
+			intervals = new AliasIntervals<Assignment>(table);
 		}
 		if (intervals.isEmpty()) {
 			log.warning("interval is empty, table: " + table);
@@ -29,9 +29,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 
 import opendial.bn.values.ValueFactory;
+import opendial.inference.approximate.SamplingContext;
 import opendial.utils.StringUtils;
 
 import org.w3c.dom.Attr;
@@ -61,9 +61,6 @@ public class GaussianDensityFunction implements DensityFunction {
 	// the standard deviation of the Gaussian
 	final double[] stdDev;
 
-	// sampler object
-	static final Random sampler = new Random();
-
 	/**
 	 * Creates a new density function with the given mean and variance vector. Only
 	 * diagonal coveriance are currently supported
@@ -156,7 +153,7 @@ public class GaussianDensityFunction implements DensityFunction {
 
 		double[] result = new double[mean.length];
 		for (int i = 0; i < mean.length; i++) {
-			result[i] = (sampler.nextGaussian() * stdDev[i]) + mean[i];
+			result[i] = (SamplingContext.nextGaussian() * stdDev[i]) + mean[i];
 		}
 		return result;
 	}
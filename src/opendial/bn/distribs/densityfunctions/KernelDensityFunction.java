@@ -26,15 +26,13 @@ package opendial.bn.distribs.densityfunctions;
 import java.util.logging.*;
 
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
+import opendial.datastructs.PointIndex;
+import opendial.inference.approximate.SamplingContext;
 import opendial.utils.MathUtils;
 import opendial.utils.StringUtils;
 
@@ -53,6 +51,13 @@ public class KernelDensityFunction implements DensityFunction {
 	// logger
 	public final static Logger log = Logger.getLogger("OpenDial");
 
+	// maximum relative error for the approximate evaluation of the density (0.0
+	// for an exact evaluation)
+	public static double MAX_DENSITY_ERROR = 0.001;
+
+	// minimum number of points for the density to be approximated
+	public static int MIN_POINTS_FOR_APPROXIMATION = 100;
+
 	// bandwidth for the kernel
 	final double[] bandwidths;
 	// shorter bandwidth (for multivariate sampling)
@@ -65,14 +70,21 @@ public class KernelDensityFunction implements DensityFunction {
 	// the points
 	final double[][] points;
 
-	// the sampler
-	static final Random sampler = new Random(Calendar.getInstance().getTimeInMillis()
-			+ Thread.currentThread().getId());
-
 	// whether the data points are bounded (if the sum of their values over the
 	// dimensions must amount o 1.0).
 	final boolean isBounded;
 
+	// the mean and variance of the points
+	final double[] mean;
+	final double[] variance;
+
+	// peak density of a single kernel (product of the normalisation factors)
+	final double kernelNorm;
+
+	// index over the points, used for the approximate evaluation (created when
+	// needed)
+	PointIndex index;
+
 	/**
 	 * Creates a new kernel density function with the given points
 	 * 
@@ -83,10 +95,30 @@ public class KernelDensityFunction implements DensityFunction {
 		if (points.length == 0) {
 			throw new RuntimeException("KDE must contain at least one point");
 		}
+		mean = estimateMean();
+		variance = estimateVariance();
 		isBounded = shouldBeBounded();
 		bandwidths = estimateBandwidths();
 		samplingDeviation = Arrays.stream(bandwidths)
 				.map(b -> b / Math.pow(bandwidths.length, 2)).toArray();
+		kernelNorm = estimateKernelNorm();
+	}
+
+	/**
+	 * Creates a copy of the kernel density function, reusing its points, moments
+	 * and bandwidths.
+	 * 
+	 * @param other the function to copy
+	 */
+	private KernelDensityFunction(KernelDensityFunction other) {
+		points = other.points;
+		mean = other.mean;
+		variance = other.variance;
+		isBounded = other.isBounded;
+		bandwidths = other.bandwidths;
+		samplingDeviation = other.samplingDeviation;
+		kernelNorm = other.kernelNorm;
+		index = other.index;
 	}
 
 	/**
@@ -108,25 +140,54 @@ public class KernelDensityFunction implements DensityFunction {
 	}
 
 	/**
-	 * Returns the density for the given point
+	 * Returns the density for the given point. If the KDE contains at least
+	 * MIN_POINTS_FOR_APPROXIMATION points, the density is approximated by only
+	 * summing the kernels of the points that are close enough to x (using a k-d
+	 * tree or a sorted array). The kernels of the ignored points are each below
+	 * MAX_DENSITY_ERROR / n times the peak density of a kernel (where n is the
+	 * number of points). If the kernels of the ignored points may then account for
+	 * more than MAX_DENSITY_ERROR of the density (e.g. when x is far from every
+	 * point), the density is computed exactly. The relative error of the density is
+	 * therefore bounded by MAX_DENSITY_ERROR.
 	 * 
 	 * @param x the point
 	 * @return its density
 	 */
 	@Override
 	public double getDensity(double... x) {
-		int dim = (isBounded) ? bandwidths.length - 1 : bandwidths.length;
-
-		// Density of x for a single point in the KDE
-		Function<double[], Double> pointDensity = p -> IntStream.range(0, dim)
-				.mapToDouble(d -> Math
-						.log(kernel.getDensity((x[d] - p[d]) / bandwidths[d])
-								/ bandwidths[d]))
-				.sum();
-
-		double density = Arrays.stream(points)
-				.mapToDouble(p -> Math.exp(pointDensity.apply(p))).sum()
-				/ points.length;
+		int dim = getKernelDimensions();
+
+		double density;
+		density = -1.0;
+		if (MAX_DENSITY_ERROR > 0.0
+				&& points.length >= MIN_POINTS_FOR_APPROXIMATION) {
+			double threshold = Math.min(MAX_DENSITY_ERROR, 1) / points.length;
+			double cutoff = Math.sqrt(-2 * Math.log(threshold));
+			double[] lower = new double[dim];
+			double[] upper = new double[dim];
+			for (int d = 0; d < dim; d++) {
+				lower[d] = x[d] - cutoff * bandwidths[d];
+				upper[d] = x[d] + cutoff * bandwidths[d];
+			}
+			// sum of the kernels in the box, and number of points in the box
+			double[] total = new double[2];
+			getIndex().forEachInBox(lower, upper, i -> {
+				total[0] += getKernelValue(x, points[i], dim);
+				total[1]++;
+			});
+			// the kernels of the ignored points are each below the threshold
+			if ((points.length - total[1]) * threshold <= MAX_DENSITY_ERROR
+					* total[0]) {
+				density = total[0];
+			}
+		}
+		if (density < 0.0) {
+			density = 0.0;
+			for (double[] point : points) {
+				density += getKernelValue(x, point, dim);
+			}
+		}
+		density = density * kernelNorm / points.length;
 
 		// bounded support (cf. Jones 1993)
 		if (isBounded) {
@@ -153,7 +214,7 @@ public class KernelDensityFunction implements DensityFunction {
 	public double[] sample() {
 
 		// step 1 : selecting one point from the available points
-		double[] centre = points[sampler.nextInt(points.length)];
+		double[] centre = points[SamplingContext.nextInt(points.length)];
 
 		// step 2: sampling a point in its vicinity (following a Gaussian)
 		double[] newPoint = new double[bandwidths.length];
@@ -161,7 +222,7 @@ public class KernelDensityFunction implements DensityFunction {
 		double shift = 0.0;
 		for (int i = 0; i < centre.length; i++) {
 			newPoint[i] =
-					(sampler.nextGaussian() * samplingDeviation[i]) + centre[i];
+					(SamplingContext.nextGaussian() * samplingDeviation[i]) + centre[i];
 			total += newPoint[i];
 			if (newPoint[i] < shift) {
 				shift = newPoint[i];
@@ -199,7 +260,7 @@ public class KernelDensityFunction implements DensityFunction {
 	 */
 	@Override
 	public KernelDensityFunction copy() {
-		KernelDensityFunction copy = new KernelDensityFunction(points);
+		KernelDensityFunction copy = new KernelDensityFunction(this);
 		return copy;
 	}
 
@@ -252,6 +313,23 @@ public class KernelDensityFunction implements DensityFunction {
 	 */
 	@Override
 	public double[] getMean() {
+		return mean.clone();
+	}
+
+	/**
+	 * Returns the variance of the KDE.
+	 */
+	@Override
+	public double[] getVariance() {
+		return variance.clone();
+	}
+
+	/**
+	 * Computes the mean of the points.
+	 * 
+	 * @return the mean
+	 */
+	private double[] estimateMean() {
 		double[] mean = new double[points[0].length];
 		for (int i = 0; i < mean.length; i++) {
 			mean[i] = 0.0;
@@ -268,11 +346,11 @@ public class KernelDensityFunction implements DensityFunction {
 	}
 
 	/**
-	 * Returns the variance of the KDE.
+	 * Computes the variance of the points.
+	 * 
+	 * @return the variance
 	 */
-	@Override
-	public double[] getVariance() {
-		double[] mean = getMean();
+	private double[] estimateVariance() {
 		double[] variance = new double[points[0].length];
 		for (int i = 0; i < variance.length; i++) {
 			variance[i] = 0.0;
@@ -310,7 +388,6 @@ public class KernelDensityFunction implements DensityFunction {
 	 * @return the standard deviation
 	 */
 	private double[] getStandardDeviations() {
-		double[] variance = getVariance();
 		double[] std = new double[points[0].length];
 		for (int i = 0; i < variance.length; i++) {
 			std[i] = Math.sqrt(variance[i]);
@@ -351,6 +428,69 @@ public class KernelDensityFunction implements DensityFunction {
 		return silverman;
 	}
 
+	/**
+	 * Returns the product of the normalisation factors of the kernel over the
+	 * dimensions used for the density.
+	 * 
+	 * @return the peak density of a single kernel
+	 */
+	private double estimateKernelNorm() {
+		double norm = 1.0;
+		for (int d = 0; d < getKernelDimensions(); d++) {
+			norm /= Math.sqrt(2 * Math.PI) * bandwidths[d];
+		}
+		return norm;
+	}
+
+	/**
+	 * Returns the number of dimensions used to compute the density (one less than
+	 * the dimensionality if the points are bounded).
+	 * 
+	 * @return the number of dimensions for the kernels
+	 */
+	private int getKernelDimensions() {
+		return (isBounded) ? bandwidths.length - 1 : bandwidths.length;
+	}
+
+	/**
+	 * Returns the (unnormalised) value of the kernel centered on the point, for x.
+	 * 
+	 * @param x the value
+	 * @param point the centre of the kernel
+	 * @param dim the number of dimensions to consider
+	 * @return the kernel value
+	 */
+	private double getKernelValue(double[] x, double[] point, int dim) {
+		double dist = 0.0;
+		for (int d = 0; d < dim; d++) {
+			double z = (x[d] - point[d]) / bandwidths[d];
+			dist += z * z;
+		}
+		return Math.exp(-dist / 2);
+	}
+
+	/**
+	 * Returns the index over the points (restricted to the dimensions used for the
+	 * density), creating it if necessary.
+	 * 
+	 * @return the index over the points
+	 */
+	private PointIndex getIndex() {
+		PointIndex result = index;
+		if (result == null) {
+			int dim = getKernelDimensions();
+			double[][] projected = new double[points.length][];
+			int[] ids = new int[points.length];
+			for (int i = 0; i < points.length; i++) {
+				projected[i] = Arrays.copyOf(points[i], dim);
+				ids[i] = i;
+			}
+			result = new PointIndex(projected, ids);
+			index = result;
+		}
+		return result;
+	}
+
 	/**
 	 * Converts the distribution to a Gaussian distribution and returns its XML
 	 * representation.
@@ -26,13 +26,13 @@ package opendial.bn.nodes;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.logging.Logger;
 
 import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
+import opendial.inference.approximate.SamplingContext;
 
 /**
  * Representation of an action node (sometimes also called decision node). An action
@@ -50,8 +50,6 @@ public class ActionNode extends BNode {
 	private Set<Value> actionValues;
 	private Value[] actionValuesAsArray;
 
-	Random sampler;
-
 	// ===================================
 	// NODE CONSTRUCTION
 	// ===================================
@@ -64,7 +62,6 @@ public class ActionNode extends BNode {
 	public ActionNode(String nodeId) {
 		super(nodeId);
 		actionValues = new HashSet<Value>();
-		sampler = new Random();
 		actionValues.add(ValueFactory.none());
 	}
 
@@ -92,6 +89,7 @@ public class ActionNode extends BNode {
 	public void addValue(Value value) {
 		actionValues.add(value);
 		actionValuesAsArray = null;
+		incrementNetworkVersion();
 	}
 
 	/**
@@ -113,6 +111,7 @@ public class ActionNode extends BNode {
 	public void removeValue(Value value) {
 		actionValues.remove(value);
 		actionValuesAsArray = null;
+		incrementNetworkVersion();
 	}
 
 	/**
@@ -122,6 +121,7 @@ public class ActionNode extends BNode {
 	 */
 	public void removeValues(Set<Object> values) {
 		actionValues.removeAll(values);
+		incrementNetworkVersion();
 	}
 
 	/**
@@ -172,7 +172,7 @@ public class ActionNode extends BNode {
 	 * @return the sample value
 	 */
 	public Value sample() {
-		int index = sampler.nextInt(actionValues.size());
+		int index = SamplingContext.nextInt(actionValues.size());
 		if (actionValuesAsArray == null) {
 			actionValuesAsArray =
 					actionValues.toArray(new Value[actionValues.size()]);
@@ -216,6 +216,7 @@ public class ActionNode extends BNode {
 
 	public void setValues(Set<Value> newValues) {
 		actionValues = newValues;
+		incrementNetworkVersion();
 	}
 
 }
@@ -36,6 +36,8 @@ import java.util.Stack;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import opendial.bn.BNetwork;
 import opendial.bn.values.Value;
@@ -198,6 +200,7 @@ public abstract class BNode implements Comparable<BNode> {
 	public void setId(String newNodeId) {
 		String oldNodeId = this.nodeId;
 		this.nodeId = newNodeId;
+		incrementNetworkStructure();
 
 		modifyVariableId(oldNodeId, newNodeId);
 
@@ -219,6 +222,10 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @param network the Bayesian network to associate to the node.
 	 */
 	public void setNetwork(BNetwork network) {
+		if (this.network != null && this.network != network) {
+			this.network.incrementStructureVersion();
+			this.network.incrementVersion();
+		}
 		this.network = network;
 	}
 
@@ -235,6 +242,15 @@ public abstract class BNode implements Comparable<BNode> {
 		return nodeId;
 	}
 
+	/**
+	 * Returns the Bayesian network in which the node is included (can be null)
+	 * 
+	 * @return the Bayesian network for the node
+	 */
+	public BNetwork getNetwork() {
+		return network;
+	}
+
 	/**
 	 * Returns true if the node contains an input node identified by the given id,
 	 * and false otherwise.
@@ -337,6 +353,10 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return an ordered list of ancestors for the node
 	 */
 	public List<BNode> getAncestors() {
+		if (isIndexed()) {
+			return network.getAncestorIds(nodeId).stream()
+					.map(id -> network.getNode(id)).collect(Collectors.toList());
+		}
 		List<BNode> ancestors = new ArrayList<BNode>();
 
 		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
@@ -365,6 +385,9 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return the ordered list of ancestor identifiers
 	 */
 	public List<String> getAncestorIds() {
+		if (isIndexed()) {
+			return network.getAncestorIds(nodeId);
+		}
 		List<BNode> ancestors = getAncestors();
 		List<String> ancestorsIds = new ArrayList<String>(ancestors.size());
 		for (BNode node : ancestors) {
@@ -431,6 +454,10 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return an ordered list of descendants for the node
 	 */
 	public List<BNode> getDescendants() {
+		if (isIndexed()) {
+			return network.getDescendantIds(nodeId).stream()
+					.map(id -> network.getNode(id)).collect(Collectors.toList());
+		}
 		List<BNode> descendants = new ArrayList<BNode>();
 
 		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
@@ -459,6 +486,9 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return the ordered list of descendant identifiers
 	 */
 	public List<String> getDescendantIds() {
+		if (isIndexed()) {
+			return network.getDescendantIds(nodeId);
+		}
 		List<BNode> descendants = getDescendants();
 		List<String> descendantsIds = new ArrayList<String>(descendants.size());
 		for (BNode node : descendants) {
@@ -475,6 +505,9 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if a descendant is found, false otherwise
 	 */
 	public boolean hasDescendant(Set<String> variables) {
+		if (isIndexed()) {
+			return network.hasDescendant(nodeId, variables);
+		}
 
 		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
 		nodesToProcess.add(this);
@@ -504,6 +537,9 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return true if a descendant is found, false otherwise
 	 */
 	public boolean hasAncestor(Set<String> variables) {
+		if (isIndexed()) {
+			return network.hasAncestor(nodeId, variables);
+		}
 
 		Queue<BNode> nodesToProcess = new LinkedList<BNode>();
 		nodesToProcess.add(this);
@@ -593,6 +629,9 @@ public abstract class BNode implements Comparable<BNode> {
 	 * @return the maximal clique
 	 */
 	public Set<String> getClique() {
+		if (isIndexed()) {
+			return network.getClique(nodeId);
+		}
 		Set<String> clique = new HashSet<String>();
 		clique.add(nodeId);
 		Stack<BNode> toProcess = new Stack<BNode>();
@@ -640,6 +679,22 @@ public abstract class BNode implements Comparable<BNode> {
 		}
 	}
 
+	/**
+	 * Returns a (lazy) stream over the possible assignments of input values for
+	 * the node. If the node has no input, the stream contains a single, empty
+	 * assignment. Contrary to getPossibleConditions(), the assignments are only
+	 * created when they are consumed.
+	 * 
+	 * @return the stream of possible conditions
+	 */
+	public Stream<Assignment> getPossibleConditionsStream() {
+		ValueRange possibleInputValues = new ValueRange();
+		for (BNode inputNode : inputNodes.values()) {
+			possibleInputValues.addValues(inputNode.getId(), inputNode.getValues());
+		}
+		return possibleInputValues.getCombinations();
+	}
+
 	// ===================================
 	// UTILITIES
 	// ===================================
@@ -759,6 +814,37 @@ public abstract class BNode implements Comparable<BNode> {
 	// PROTECTED AND PRIVATE METHODS
 	// ===================================
 
+	/**
+	 * Returns true if the node is included in a network whose structural index
+	 * covers the node (see BNetwork.isIndexed), and false otherwise
+	 * 
+	 * @return true if the node relations can be read from the network index
+	 */
+	private boolean isIndexed() {
+		return network != null && network.isIndexed(this);
+	}
+
+	/**
+	 * Increments the version stamp of the network that contains the node (if any),
+	 * in order to signal that the node has been modified.
+	 */
+	protected void incrementNetworkVersion() {
+		if (network != null) {
+			network.incrementVersion();
+		}
+	}
+
+	/**
+	 * Increments the structure version of the network that contains the node (if
+	 * any), in order to signal that the relations or identifier of the node have
+	 * been modified.
+	 */
+	protected void incrementNetworkStructure() {
+		if (network != null) {
+			network.incrementStructureVersion();
+		}
+	}
+
 	/**
 	 * Replaces the identifier for the input and output nodes with the new identifier
 	 * 
@@ -791,6 +877,8 @@ public abstract class BNode implements Comparable<BNode> {
 					+ " already included in the input nodes of " + nodeId);
 		}
 		inputNodes.put(inputNode.getId(), inputNode);
+		incrementNetworkStructure();
+		incrementNetworkVersion();
 	}
 
 	/**
@@ -807,11 +895,14 @@ public abstract class BNode implements Comparable<BNode> {
 		}
 		else {
 			outputNodes.put(outputNode.getId(), outputNode);
+			incrementNetworkStructure();
 		}
 	}
 
 	protected boolean removeInputNode_internal(String inputNodeId) {
 		BNode inputNode = inputNodes.remove(inputNodeId);
+		incrementNetworkStructure();
+		incrementNetworkVersion();
 		return (inputNode != null);
 	}
 
@@ -829,6 +920,7 @@ public abstract class BNode implements Comparable<BNode> {
 					"node " + outputNodeId + " is not an output node for " + nodeId);
 		}
 		BNode outputNode = outputNodes.remove(outputNodeId);
+		incrementNetworkStructure();
 		return (outputNode != null);
 	}
 
@@ -25,6 +25,7 @@ package opendial.bn.nodes;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -56,7 +57,7 @@ public class ChanceNode extends BNode {
 	// the set of cached values for the node
 	// NB: if the node has a continuous range, these values are based on
 	// a discretisation procedure defined by the distribution
-	protected Set<Value> cachedValues;
+	protected volatile Set<Value> cachedValues;
 
 	// ===================================
 	// NODE CONSTRUCTION
@@ -98,6 +99,7 @@ public class ChanceNode extends BNode {
 			log.warning(nodeId + "  != " + distrib.getVariable());
 		}
 		cachedValues = null;
+		incrementNetworkVersion();
 	}
 
 	/**
@@ -131,6 +133,7 @@ public class ChanceNode extends BNode {
 	public void pruneValues(double threshold) {
 		if (distrib.pruneValues(threshold)) {
 			cachedValues = null;
+			incrementNetworkVersion();
 		}
 	}
 
@@ -163,9 +166,10 @@ public class ChanceNode extends BNode {
 
 		// log.fine("Must marginalise to compute P(" + nodeId + "="+ nodeValue
 		// + ")");
-		Set<Assignment> combinations = getPossibleConditions();
+		Iterator<Assignment> combinations = getPossibleConditionsStream().iterator();
 		double totalProb = 0.0;
-		for (Assignment combi : combinations) {
+		while (combinations.hasNext()) {
+			Assignment combi = combinations.next();
 			double prob = 1.0;
 			for (BNode inputNode : inputNodes.values()) {
 				if (inputNode instanceof ChanceNode) {
@@ -289,9 +293,9 @@ public class ChanceNode extends BNode {
 
 		Map<Assignment, Double> factor = new HashMap<Assignment, Double>();
 
-		Set<Assignment> combinations = getPossibleConditions();
-		for (Assignment combination : combinations) {
-
+		Iterator<Assignment> combinations = getPossibleConditionsStream().iterator();
+		while (combinations.hasNext()) {
+			Assignment combination = combinations.next();
 			IndependentDistribution posterior = distrib.getProbDistrib(combination);
 			for (Value value : posterior.getValues()) {
 				factor.put(new Assignment(combination, nodeId, value),
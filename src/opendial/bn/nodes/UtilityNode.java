@@ -84,6 +84,7 @@ public class UtilityNode extends BNode {
 	public void addUtility(Assignment input, double value) {
 		if (distrib instanceof UtilityTable) {
 			((UtilityTable) distrib).setUtil(input, value);
+			incrementNetworkVersion();
 		}
 		else {
 			log.warning("utility distribution is not a table, cannot add value");
@@ -98,6 +99,7 @@ public class UtilityNode extends BNode {
 	public void removeUtility(Assignment input) {
 		if (distrib instanceof UtilityTable) {
 			((UtilityTable) distrib).removeUtil(input);
+			incrementNetworkVersion();
 		}
 		else {
 			log.warning("utility distribution is not a table, cannot remove value");
@@ -106,6 +108,7 @@ public class UtilityNode extends BNode {
 
 	public void setDistrib(UtilityFunction distrib) {
 		this.distrib = distrib;
+		incrementNetworkVersion();
 	}
 
 	@Override
@@ -159,10 +162,8 @@ public class UtilityNode extends BNode {
 
 		Map<Assignment, Double> factor = new HashMap<Assignment, Double>();
 
-		Set<Assignment> combinations = getPossibleConditions();
-		for (Assignment combination : combinations) {
-			factor.put(combination, distrib.getUtil(combination));
-		}
+		getPossibleConditionsStream()
+				.forEach(c -> factor.put(c, distrib.getUtil(c)));
 		return factor;
 	}
 
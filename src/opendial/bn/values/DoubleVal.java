@@ -73,8 +73,11 @@ public final class DoubleVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
 		boolean result = (o instanceof DoubleVal
-				&& Math.abs(((DoubleVal) o).getDouble() - getDouble()) < 0.000001);
+				&& Math.abs(((DoubleVal) o).d - d) < 0.000001);
 		return result;
 	}
 
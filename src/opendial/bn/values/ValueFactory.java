@@ -48,6 +48,17 @@ public class ValueFactory {
 	// none value (no need to recreate one everytime)
 	static final NoneVal noneValue = new NoneVal();
 
+	// boolean values (idem)
+	static final BooleanVal trueValue = new BooleanVal(true);
+	static final BooleanVal falseValue = new BooleanVal(false);
+
+	// pool of canonical string values (indexed by their string)
+	static final ValuePool<String> pool = new ValuePool<String>();
+
+	// pool of canonical double values created from strings (indexed by the
+	// values themselves, since a double value does not retain its string)
+	static final ValuePool<DoubleVal> doublePool = new ValuePool<DoubleVal>();
+
 	// pattern to find a double value
 	public static Pattern doublePattern =
 			Pattern.compile("[-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?");
@@ -67,6 +78,12 @@ public class ValueFactory {
 	 * contains a numeric value, "true", "false", "None", or opening and closing
 	 * brackets, convert it to the appropriate values. Else, returns a string value.
 	 * 
+	 * <p>
+	 * The string and double values are interned: the values created from identical
+	 * strings (or strings representing the same double) are the same object (as
+	 * long as the value remains in use). The regular expressions are only applied
+	 * to strings whose first character may start a number or a list of values.
+	 * 
 	 * @param str the string representation for the value
 	 * @return the resulting value
 	 */
@@ -76,15 +93,35 @@ public class ValueFactory {
 			return noneValue;
 		}
 
+		Value pooled = pool.get(str);
+		if (pooled != null) {
+			return pooled;
+		}
+
+		char first = str.isEmpty() ? ' ' : str.charAt(0);
+		if (first != '[' && !isNumberStart(first)) {
+			if (str.equalsIgnoreCase("true")) {
+				return trueValue;
+			}
+			else if (str.equalsIgnoreCase("false")) {
+				return falseValue;
+			}
+			else if (str.equalsIgnoreCase("None")) {
+				return none();
+			}
+			return pool.intern(str, new StringVal(str));
+		}
+
 		Matcher m = doublePattern.matcher(str);
 		if (m.matches()) {
-			return new DoubleVal(Double.parseDouble(str));
+			DoubleVal value = new DoubleVal(Double.parseDouble(str));
+			return doublePool.intern(value, value);
 		}
 		else if (str.equalsIgnoreCase("true")) {
-			return new BooleanVal(true);
+			return trueValue;
 		}
 		else if (str.equalsIgnoreCase("false")) {
-			return new BooleanVal(false);
+			return falseValue;
 		}
 		else if (str.equalsIgnoreCase("None")) {
 			return none();
@@ -120,7 +157,18 @@ public class ValueFactory {
 			}
 		}
 
-		return new StringVal(str);
+		return pool.intern(str, new StringVal(str));
+	}
+
+	/**
+	 * Returns true if the character can start the string representation of a
+	 * number, and false otherwise
+	 * 
+	 * @param c the character
+	 * @return true if the character may start a number, false otherwise
+	 */
+	private static boolean isNumberStart(char c) {
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
 	}
 
 	/**
@@ -144,7 +192,7 @@ public class ValueFactory {
 	 * @return the double
 	 */
 	public static BooleanVal create(boolean b) {
-		return new BooleanVal(b);
+		return (b) ? trueValue : falseValue;
 	}
 
 	/**
@@ -0,0 +1,134 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+package opendial.bn.values;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Interning pool for values. The pool maps each key (e.g. the string
+ * representation of a value) to a canonical value, such that the values created
+ * from identical keys are the same object (which allows equality checks to take
+ * an identity fast path).
+ * 
+ * <p>
+ * The pool is weakly referenced: the entries are automatically removed once the
+ * canonical value is no longer used elsewhere. The key of each entry must
+ * therefore be held by the canonical value (or be the value itself). To limit the
+ * contention between threads, the pool is divided in a number of segments (each
+ * synchronised separately) selected from the hashcode of the key.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+class ValuePool<K> {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// number of segments (must be a power of two)
+	static final int NB_SEGMENTS = 16;
+
+	// the segments of the pool (the keys are held by the canonical values, and
+	// the values are weak references to these canonical values)
+	final List<Map<K, WeakReference<Value>>> segments;
+
+	/**
+	 * Creates a new, empty pool
+	 */
+	ValuePool() {
+		segments = new ArrayList<Map<K, WeakReference<Value>>>(NB_SEGMENTS);
+		for (int i = 0; i < NB_SEGMENTS; i++) {
+			segments.add(new WeakHashMap<K, WeakReference<Value>>());
+		}
+	}
+
+	/**
+	 * Returns the canonical value for the key, or null if the pool does not contain
+	 * any value for the key
+	 * 
+	 * @param key the key
+	 * @return the canonical value (or null)
+	 */
+	Value get(K key) {
+		Map<K, WeakReference<Value>> segment = getSegment(key);
+		synchronized (segment) {
+			WeakReference<Value> ref = segment.get(key);
+			return (ref != null) ? ref.get() : null;
+		}
+	}
+
+	/**
+	 * Adds the value to the pool as canonical value for the key, unless the pool
+	 * already contains a canonical value for it. The key must be held by the value
+	 * itself, or be the value (to ensure the entry is kept as long as the value is
+	 * alive). Returns the canonical value.
+	 * 
+	 * @param key the key held by the value
+	 * @param value the value
+	 * @return the canonical value for the key
+	 */
+	Value intern(K key, Value value) {
+		Map<K, WeakReference<Value>> segment = getSegment(key);
+		synchronized (segment) {
+			WeakReference<Value> ref = segment.get(key);
+			Value existing = (ref != null) ? ref.get() : null;
+			if (existing != null) {
+				return existing;
+			}
+			segment.put(key, new WeakReference<Value>(value));
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the pool
+	 * 
+	 * @return the number of entries
+	 */
+	int size() {
+		int size = 0;
+		for (Map<K, WeakReference<Value>> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the segment for the key
+	 * 
+	 * @param key the key
+	 * @return the corresponding segment
+	 */
+	private Map<K, WeakReference<Value>> getSegment(K key) {
+		int h = key.hashCode();
+		return segments.get((h ^ (h >>> 16)) & (NB_SEGMENTS - 1));
+	}
+
+}
@@ -709,6 +709,15 @@ public class Assignment {
 		return c;
 	}
 
+	/**
+	 * Returns a compact (immutable and array-backed) copy of the assignment
+	 * 
+	 * @return the compact assignment
+	 */
+	public CompactAssignment toCompact() {
+		return new CompactAssignment(this);
+	}
+
 	/**
 	 * Returns the list of variables used
 	 * 
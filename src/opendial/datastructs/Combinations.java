@@ -0,0 +1,187 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import opendial.bn.values.Value;
+
+/**
+ * Lazy enumeration of all combinations of values for a set of variables, each
+ * variable being associated with a collection of alternative values. The
+ * combinations are enumerated with an odometer over the value arrays of each
+ * variable (the first variable changing fastest), and are only created when they
+ * are consumed.
+ * 
+ * <p>
+ * The enumeration is implemented as a spliterator, and can therefore be split in
+ * ranges of combinations for parallel streams.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public final class Combinations implements Spliterator<Assignment> {
+
+	// the variables
+	final String[] variables;
+
+	// the alternative values for each variable
+	final Value[][] values;
+
+	// the index of the next combination to enumerate
+	long index;
+
+	// the index after the last combination to enumerate
+	final long end;
+
+	// the value indices for the next combination (null if not yet computed)
+	int[] counters;
+
+	/**
+	 * Creates the enumeration of all combinations for the given values.
+	 * 
+	 * @param valuesMatrix the alternative values for each variable
+	 */
+	public Combinations(Map<String, ? extends Collection<Value>> valuesMatrix) {
+		variables = new String[valuesMatrix.size()];
+		values = new Value[valuesMatrix.size()][];
+		long nbCombinations = 1;
+		int i = 0;
+		for (String var : valuesMatrix.keySet()) {
+			variables[i] = var;
+			values[i] = valuesMatrix.get(var).toArray(new Value[0]);
+			nbCombinations = Math.multiplyExact(nbCombinations, values[i].length);
+			i++;
+		}
+		index = 0;
+		end = nbCombinations;
+	}
+
+	/**
+	 * Creates the enumeration for a range of combinations of an existing
+	 * enumeration.
+	 * 
+	 * @param existing the existing enumeration
+	 * @param start the index of the first combination
+	 * @param end the index after the last combination
+	 */
+	private Combinations(Combinations existing, long start, long end) {
+		variables = existing.variables;
+		values = existing.values;
+		index = start;
+		this.end = end;
+	}
+
+	/**
+	 * Returns a (sequential) stream with all combinations of values.
+	 * 
+	 * @param valuesMatrix the alternative values for each variable
+	 * @return the stream of combinations
+	 */
+	public static Stream<Assignment> stream(
+			Map<String, ? extends Collection<Value>> valuesMatrix) {
+		return StreamSupport.stream(new Combinations(valuesMatrix), false);
+	}
+
+	/**
+	 * Creates the next combination and provides it to the action, if there is one.
+	 * 
+	 * @param action the action to perform on the combination
+	 * @return true if a combination was provided, false otherwise
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super Assignment> action) {
+		if (index >= end) {
+			return false;
+		}
+		if (counters == null) {
+			counters = new int[variables.length];
+			long rest = index;
+			for (int i = 0; i < variables.length; i++) {
+				counters[i] = (int) (rest % values[i].length);
+				rest = rest / values[i].length;
+			}
+		}
+		Assignment combination = new Assignment();
+		for (int i = 0; i < variables.length; i++) {
+			combination.addPair(variables[i], values[i][counters[i]]);
+		}
+
+		// moving the odometer to the next combination
+		for (int i = 0; i < variables.length; i++) {
+			counters[i]++;
+			if (counters[i] < values[i].length) {
+				break;
+			}
+			counters[i] = 0;
+		}
+		index++;
+		action.accept(combination);
+		return true;
+	}
+
+	/**
+	 * Splits the remaining combinations in two halves, and returns the enumeration
+	 * for the first half (or null if too few combinations remain).
+	 * 
+	 * @return the enumeration for the first half of the remaining combinations
+	 */
+	@Override
+	public Spliterator<Assignment> trySplit() {
+		if (end - index < 2) {
+			return null;
+		}
+		long middle = index + (end - index) / 2;
+		Combinations firstHalf = new Combinations(this, index, middle);
+		index = middle;
+		counters = null;
+		return firstHalf;
+	}
+
+	/**
+	 * Returns the number of remaining combinations
+	 * 
+	 * @return the number of remaining combinations
+	 */
+	@Override
+	public long estimateSize() {
+		return end - index;
+	}
+
+	/**
+	 * Returns the characteristics of the enumeration (ordered, sized and
+	 * non-null).
+	 * 
+	 * @return the characteristics
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+}
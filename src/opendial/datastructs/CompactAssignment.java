@@ -0,0 +1,416 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+package opendial.datastructs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
+
+/**
+ * Immutable, array-backed representation of an assignment of values to variables.
+ * The (variable,value) pairs are sorted by the identifiers of the variables in
+ * the global symbol table, which allows most operations (equality, containment
+ * and consistency checks) to be performed through a single merge over the two
+ * sorted arrays. The hashcode is computed once at construction, and is identical
+ * to the hashcode of the corresponding (map-based) Assignment.
+ * 
+ * <p>
+ * Compact assignments are meant to be used as keys of caches and in other hot
+ * paths where assignments are created and compared many times. They can be
+ * converted from and to regular assignments with new CompactAssignment(a) and
+ * toAssignment(). The extension methods share the arrays of the original
+ * assignment whenever possible.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public final class CompactAssignment {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// the empty assignment
+	public static final CompactAssignment EMPTY =
+			new CompactAssignment(new int[0], new String[0], new Value[0], 0);
+
+	// the symbol identifiers of the variables (in increasing order)
+	final int[] ids;
+
+	// the variable names (in the same order)
+	final String[] variables;
+
+	// the values (in the same order)
+	final Value[] values;
+
+	// the precomputed hashcode
+	final int hash;
+
+	// ===================================
+	// CONSTRUCTORS
+	// ===================================
+
+	/**
+	 * Creates a compact representation of the assignment
+	 * 
+	 * @param a the assignment
+	 */
+	public CompactAssignment(Assignment a) {
+		this(a, null);
+	}
+
+	/**
+	 * Creates a compact representation of the assignment, restricted to the
+	 * variables given as argument (if the collection is null, all variables are
+	 * retained).
+	 * 
+	 * @param a the assignment
+	 * @param retained the variables to retain (or null)
+	 */
+	public CompactAssignment(Assignment a, Collection<String> retained) {
+		int size = 0;
+		long[] keys = new long[a.size()];
+		String[] vars = new String[a.size()];
+		Value[] vals = new Value[a.size()];
+		for (Entry<String, Value> e : a.getEntrySet()) {
+			if (retained == null || retained.contains(e.getKey())) {
+				// the index of the pair is stored in the low bits of the key
+				keys[size] = ((long) SymbolTable.getId(e.getKey()) << 32) | size;
+				vars[size] = e.getKey();
+				vals[size] = e.getValue();
+				size++;
+			}
+		}
+		Arrays.sort(keys, 0, size);
+		ids = new int[size];
+		variables = new String[size];
+		values = new Value[size];
+		int h = 0;
+		for (int i = 0; i < size; i++) {
+			int index = (int) keys[i];
+			ids[i] = (int) (keys[i] >>> 32);
+			variables[i] = vars[index];
+			values[i] = vals[index];
+			h += variables[i].hashCode() ^ Objects.hashCode(values[i]);
+		}
+		hash = h;
+	}
+
+	/**
+	 * Creates a compact assignment from its arrays and hashcode
+	 * 
+	 * @param ids the symbol identifiers
+	 * @param variables the variable names
+	 * @param values the values
+	 * @param hash the hashcode
+	 */
+	private CompactAssignment(int[] ids, String[] variables, Value[] values,
+			int hash) {
+		this.ids = ids;
+		this.variables = variables;
+		this.values = values;
+		this.hash = hash;
+	}
+
+	/**
+	 * Returns a new compact assignment extended with the (variable,value) pair. If
+	 * the variable is already included, its value is replaced (and the arrays of
+	 * variables are shared with the current assignment). The hashcode of the new
+	 * assignment is updated incrementally.
+	 * 
+	 * @param var the variable
+	 * @param val the value
+	 * @return the extended assignment
+	 */
+	public CompactAssignment with(String var, Value val) {
+		int id = SymbolTable.getId(var);
+		int pos = Arrays.binarySearch(ids, id);
+		if (pos >= 0) {
+			if (Objects.equals(values[pos], val)) {
+				return this;
+			}
+			Value[] newValues = values.clone();
+			newValues[pos] = val;
+			int newHash = hash - (var.hashCode() ^ Objects.hashCode(values[pos]))
+					+ (var.hashCode() ^ Objects.hashCode(val));
+			return new CompactAssignment(ids, variables, newValues, newHash);
+		}
+		pos = -pos - 1;
+		int[] newIds = new int[ids.length + 1];
+		String[] newVars = new String[ids.length + 1];
+		Value[] newValues = new Value[ids.length + 1];
+		System.arraycopy(ids, 0, newIds, 0, pos);
+		System.arraycopy(variables, 0, newVars, 0, pos);
+		System.arraycopy(values, 0, newValues, 0, pos);
+		newIds[pos] = id;
+		newVars[pos] = var;
+		newValues[pos] = val;
+		System.arraycopy(ids, pos, newIds, pos + 1, ids.length - pos);
+		System.arraycopy(variables, pos, newVars, pos + 1, ids.length - pos);
+		System.arraycopy(values, pos, newValues, pos + 1, ids.length - pos);
+		int newHash = hash + (var.hashCode() ^ Objects.hashCode(val));
+		return new CompactAssignment(newIds, newVars, newValues, newHash);
+	}
+
+	/**
+	 * Returns a new compact assignment restricted to the variables given as
+	 * argument
+	 * 
+	 * @param retained the variables to retain
+	 * @return the trimmed assignment
+	 */
+	public CompactAssignment getTrimmed(Collection<String> retained) {
+		int[] newIds = new int[ids.length];
+		String[] newVars = new String[ids.length];
+		Value[] newValues = new Value[ids.length];
+		int size = 0;
+		int newHash = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (retained.contains(variables[i])) {
+				newIds[size] = ids[i];
+				newVars[size] = variables[i];
+				newValues[size] = values[i];
+				newHash += variables[i].hashCode() ^ Objects.hashCode(values[i]);
+				size++;
+			}
+		}
+		if (size == ids.length) {
+			return this;
+		}
+		return new CompactAssignment(Arrays.copyOf(newIds, size),
+				Arrays.copyOf(newVars, size), Arrays.copyOf(newValues, size),
+				newHash);
+	}
+
+	// ===================================
+	// GETTERS
+	// ===================================
+
+	/**
+	 * Returns the number of pairs in the assignment
+	 * 
+	 * @return the size of the assignment
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Returns true if the assignment is empty, and false otherwise
+	 * 
+	 * @return true if the assignment is empty, else false
+	 */
+	public boolean isEmpty() {
+		return ids.length == 0;
+	}
+
+	/**
+	 * Returns true if the assignment contains the variable, and false otherwise
+	 * 
+	 * @param var the variable
+	 * @return true if the variable is included, else false
+	 */
+	public boolean containsVar(String var) {
+		return indexOf(var) >= 0;
+	}
+
+	/**
+	 * Returns the value associated with the variable in the assignment, if one is
+	 * specified. Else, returns the none value.
+	 * 
+	 * @param var the variable
+	 * @return the associated value
+	 */
+	public Value getValue(String var) {
+		int pos = indexOf(var);
+		return (pos >= 0) ? values[pos] : ValueFactory.none();
+	}
+
+	/**
+	 * Returns the variables of the assignment (sorted by their symbol identifiers)
+	 * 
+	 * @return the variables
+	 */
+	public List<String> getVariables() {
+		return Arrays.asList(variables);
+	}
+
+	/**
+	 * Returns true if the assignment contains all pairs of the assignment given as
+	 * argument. The check is performed with a merge over the two sorted arrays.
+	 * 
+	 * @param a the assignment
+	 * @return true if a is contained in the assignment, false otherwise
+	 */
+	public boolean contains(CompactAssignment a) {
+		if (a.ids.length > ids.length) {
+			return false;
+		}
+		int i = 0;
+		for (int j = 0; j < a.ids.length; j++) {
+			while (i < ids.length && ids[i] < a.ids[j]) {
+				i++;
+			}
+			if (i == ids.length || ids[i] != a.ids[j]
+					|| !Objects.equals(values[i], a.values[j])) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the assignment contains all pairs of the (map-based)
+	 * assignment given as argument.
+	 * 
+	 * @param a the assignment
+	 * @return true if a is contained in the assignment, false otherwise
+	 */
+	public boolean contains(Assignment a) {
+		for (Entry<String, Value> e : a.getEntrySet()) {
+			int pos = indexOf(e.getKey());
+			if (pos < 0 || !Objects.equals(values[pos], e.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the two assignments are mutually consistent, i.e. if the
+	 * variables that appear in both assignments have the same values. The check is
+	 * performed with a merge over the two sorted arrays.
+	 * 
+	 * @param a the other assignment
+	 * @return true if the assignments are consistent, false otherwise
+	 */
+	public boolean consistentWith(CompactAssignment a) {
+		int i = 0;
+		int j = 0;
+		while (i < ids.length && j < a.ids.length) {
+			if (ids[i] < a.ids[j]) {
+				i++;
+			}
+			else if (ids[i] > a.ids[j]) {
+				j++;
+			}
+			else if (!Objects.equals(values[i++], a.values[j++])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the assignment is consistent with the (map-based) assignment
+	 * given as argument.
+	 * 
+	 * @param a the other assignment
+	 * @return true if the assignments are consistent, false otherwise
+	 */
+	public boolean consistentWith(Assignment a) {
+		for (int i = 0; i < ids.length; i++) {
+			if (a.containsVar(variables[i])
+					&& !Objects.equals(values[i], a.getValue(variables[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// ===================================
+	// UTILITY FUNCTIONS
+	// ===================================
+
+	/**
+	 * Converts the compact assignment into a regular (map-based) assignment
+	 * 
+	 * @return the corresponding assignment
+	 */
+	public Assignment toAssignment() {
+		Assignment a = new Assignment();
+		for (int i = 0; i < ids.length; i++) {
+			a.addPair(variables[i], values[i]);
+		}
+		a.cachedHash = hash;
+		return a;
+	}
+
+	/**
+	 * Returns the precomputed hashcode of the assignment (which is identical to the
+	 * hashcode of the corresponding map-based assignment).
+	 * 
+	 * @return the hashcode
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * Returns true if the object is a compact assignment with identical pairs
+	 * 
+	 * @param o the object to compare
+	 * @return true if the assignments are equal, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof CompactAssignment)) {
+			return false;
+		}
+		CompactAssignment a = (CompactAssignment) o;
+		return hash == a.hash && Arrays.equals(ids, a.ids)
+				&& Arrays.equals(values, a.values);
+	}
+
+	/**
+	 * Returns a string representation of the assignment
+	 */
+	@Override
+	public String toString() {
+		return toAssignment().toString();
+	}
+
+	/**
+	 * Returns the position of the variable in the arrays, or a negative number if
+	 * the variable is not included
+	 * 
+	 * @param var the variable
+	 * @return the position of the variable
+	 */
+	private int indexOf(String var) {
+		int id = SymbolTable.lookup(var);
+		return (id >= 0) ? Arrays.binarySearch(ids, id) : -1;
+	}
+
+}
@@ -40,8 +40,14 @@ import opendial.bn.values.DoubleVal;
 import opendial.bn.values.Value;
 import opendial.templates.FunctionalTemplate;
 import opendial.templates.Template;
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
+import net.objecthunter.exp4j.function.Function;
+import net.objecthunter.exp4j.operator.Operator;
+import net.objecthunter.exp4j.shuntingyard.ShuntingYard;
+import net.objecthunter.exp4j.tokenizer.FunctionToken;
+import net.objecthunter.exp4j.tokenizer.NumberToken;
+import net.objecthunter.exp4j.tokenizer.OperatorToken;
+import net.objecthunter.exp4j.tokenizer.Token;
+import net.objecthunter.exp4j.tokenizer.VariableToken;
 
 /**
  * Representation of a mathematical expression whose value can be evaluated. The
@@ -49,6 +55,11 @@ import net.objecthunter.exp4j.ExpressionBuilder;
  * of the expression given a particular assignment of values.
  * 
  * The class builds on the exp4j package, see http://www.objecthunter.net/exp4j/.
+ * The expression is parsed once (with the shunting-yard algorithm of exp4j) into a
+ * postfix program, in which each variable is associated with a slot. Evaluating
+ * the expression then simply fills the slots from the assignment and runs the
+ * program on a stack, without any parsing. The program is immutable, and can be
+ * evaluated concurrently.
  * 
  * @author Pierre Lison (plison@ifi.uio.no)
  *
@@ -71,8 +82,8 @@ public final class MathExpression {
 	/** The original string for the expression */
 	final String expressionStr;
 
-	/** The tokens in the expression */
-	final Expression exp;
+	/** The compiled (postfix) program for the expression */
+	final Program program;
 
 	/** The unknown variable labels */
 	final Set<String> variables;
@@ -97,11 +108,10 @@ public final class MathExpression {
 		this.variables.addAll(getVariableLabels(local));
 		functions.stream().map(ft -> (ft.getFunction().getName() + ft.hashCode()))
 				.forEach(f -> variables.remove(f));
+		Set<String> labels = getVariableLabels(local);
 		local = local.replaceAll("[\\[\\]\\{\\}]", "");
 		local = local.replaceAll("\\.([a-zA-Z])", "_$1");
-		ExpressionBuilder builder = new ExpressionBuilder(local);
-		builder.variables(getVariableLabels(local));
-		exp = builder.build();
+		program = new Program(local, labels);
 	}
 
 	private static Set<FunctionalTemplate> getFunctions(String expression) {
@@ -144,7 +154,7 @@ public final class MathExpression {
 	public MathExpression(MathExpression existing) {
 		this.expressionStr = existing.expressionStr;
 		this.variables = existing.variables;
-		this.exp = existing.exp;
+		this.program = existing.program;
 		this.functions = existing.functions;
 	}
 
@@ -166,8 +176,7 @@ public final class MathExpression {
 		if (!variables.isEmpty()) {
 			throw new RuntimeException("variables " + variables + " are not set");
 		}
-		Expression exp2 = new Expression(exp);
-		return exp2.evaluate();
+		return program.evaluate(new Assignment());
 	}
 
 	/**
@@ -184,10 +193,7 @@ public final class MathExpression {
 			Value result = f.getValue(input2);
 			input2.addPair((fu.getName()+f.hashCode()), result);
 		}
-		Expression exp2 = new Expression(exp);
-		exp2.setVariables(getDoubles(input2));
-		double result = exp2.evaluate();
-		return result;
+		return program.evaluate(input2);
 	}
 
 	/**
@@ -225,33 +231,6 @@ public final class MathExpression {
 		return indexedVars;
 	}
 
-	/**
-	 * Returns a representation of the assignment limited to double values. For
-	 * arrays, each variable is expanded into separate variables for each dimension.
-	 * 
-	 * @return the assignment of all double (and array) values
-	 */
-	private static Map<String, Double> getDoubles(Assignment assign) {
-		Map<String, Double> doubles = new HashMap<String, Double>();
-		for (String var : assign.getVariables()) {
-			Value v = assign.getValue(var);
-			if (!(v instanceof DoubleVal || v instanceof ArrayVal)) {
-				continue;
-			}
-			var = var.replaceAll("\\.", "_");
-			if (v instanceof DoubleVal) {
-				doubles.put(var, ((DoubleVal) v).getDouble());
-			}
-			else if (v instanceof ArrayVal) {
-				double[] array = ((ArrayVal) v).getArray();
-				for (int i = 0; i < array.length; i++) {
-					doubles.put(var + i, array[i]);
-				}
-			}
-		}
-		return doubles;
-	}
-
 	/**
 	 * Returns a string representation of the expression
 	 */
@@ -277,4 +256,246 @@ public final class MathExpression {
 		return expressionStr.hashCode();
 	}
 
+	// ===================================
+	// COMPILED PROGRAM
+	// ===================================
+
+	/**
+	 * Postfix program for a mathematical expression. The program is a sequence of
+	 * instructions (constants, variable slots, operators and functions) evaluated on
+	 * a stack. The most common arithmetic operators are evaluated directly, while
+	 * the other operators and functions are delegated to exp4j.
+	 */
+	static final class Program {
+
+		// instruction codes
+		static final int CONSTANT = 0;
+		static final int SLOT = 1;
+		static final int ADD = 2;
+		static final int SUBTRACT = 3;
+		static final int MULTIPLY = 4;
+		static final int NEGATE = 5;
+		static final int OPERATOR = 6;
+		static final int FUNCTION = 7;
+
+		// default values for the constants predefined in exp4j
+		static final Map<String, Double> defaults = new HashMap<String, Double>();
+
+		static {
+			defaults.put("pi", Math.PI);
+			defaults.put("\u03c0", Math.PI);
+			defaults.put("\u03c6", 1.61803398874d);
+			defaults.put("e", Math.E);
+		}
+
+		// the instruction codes
+		final int[] codes;
+
+		// the constant values (for CONSTANT instructions)
+		final double[] constants;
+
+		// the slot indices (for SLOT instructions)
+		final int[] slotIndices;
+
+		// the operators (for OPERATOR instructions)
+		final Operator[] operators;
+
+		// the functions (for FUNCTION instructions)
+		final Function[] functions;
+
+		// the variable label in the assignment, for each slot
+		final String[] slotVars;
+
+		// the array variable and index for each slot (if the slot refers to a
+		// dimension of an array, e.g. "x0" for the first element of x)
+		final String[] arrayVars;
+		final int[] arrayIndices;
+
+		// maximum size of the stack during the evaluation (-1 if the program is
+		// ill-formed)
+		final int maxDepth;
+
+		/**
+		 * Compiles the (preprocessed) expression into a postfix program.
+		 * 
+		 * @param local the expression, where the dots in labels are replaced by
+		 *            underscores
+		 * @param labels the variable labels in their original form (with dots)
+		 */
+		Program(String local, Set<String> labels) {
+			Set<String> varNames = getVariableLabels(local);
+			varNames.addAll(defaults.keySet());
+			Token[] tokens = ShuntingYard.convertToRPN(local,
+					new HashMap<String, Function>(), new HashMap<String, Operator>(),
+					varNames);
+
+			codes = new int[tokens.length];
+			constants = new double[tokens.length];
+			slotIndices = new int[tokens.length];
+			operators = new Operator[tokens.length];
+			functions = new Function[tokens.length];
+			Map<String, Integer> slots = new HashMap<String, Integer>();
+			int depth = 0;
+			int max = 0;
+			for (int i = 0; i < tokens.length; i++) {
+				Token token = tokens[i];
+				if (token instanceof NumberToken) {
+					codes[i] = CONSTANT;
+					constants[i] = ((NumberToken) token).getValue();
+					depth++;
+				}
+				else if (token instanceof VariableToken) {
+					codes[i] = SLOT;
+					String name = ((VariableToken) token).getName();
+					slotIndices[i] = slots.computeIfAbsent(name, n -> slots.size());
+					depth++;
+				}
+				else if (token instanceof OperatorToken) {
+					Operator op = ((OperatorToken) token).getOperator();
+					operators[i] = op;
+					codes[i] = getCode(op);
+					depth = (depth >= op.getNumOperands())
+							? depth - op.getNumOperands() + 1 : Integer.MIN_VALUE;
+				}
+				else if (token instanceof FunctionToken) {
+					Function f = ((FunctionToken) token).getFunction();
+					functions[i] = f;
+					codes[i] = FUNCTION;
+					depth = (depth >= f.getNumArguments())
+							? depth - f.getNumArguments() + 1 : Integer.MIN_VALUE;
+				}
+				max = Math.max(max, depth);
+			}
+			maxDepth = (depth == 1) ? max : -1;
+
+			// resolving the variables in the assignment for each slot
+			slotVars = new String[slots.size()];
+			arrayVars = new String[slots.size()];
+			arrayIndices = new int[slots.size()];
+			for (String name : slots.keySet()) {
+				int slot = slots.get(name);
+				slotVars[slot] = name;
+				for (String label : labels) {
+					if (label.replaceAll("\\.", "_").equals(name)) {
+						slotVars[slot] = label;
+					}
+				}
+				Matcher m = Pattern.compile("(.*?)(\\d+)").matcher(slotVars[slot]);
+				if (m.matches() && m.group(2).length() < 9) {
+					arrayVars[slot] = m.group(1);
+					arrayIndices[slot] = Integer.parseInt(m.group(2));
+				}
+			}
+		}
+
+		/**
+		 * Returns the instruction code for the operator
+		 * 
+		 * @param op the operator
+		 * @return the corresponding code
+		 */
+		private static int getCode(Operator op) {
+			if (op.getNumOperands() == 2) {
+				switch (op.getSymbol()) {
+				case "+":
+					return ADD;
+				case "-":
+					return SUBTRACT;
+				case "*":
+					return MULTIPLY;
+				}
+			}
+			else if (op.getNumOperands() == 1 && op.getSymbol().equals("-")) {
+				return NEGATE;
+			}
+			return OPERATOR;
+		}
+
+		/**
+		 * Evaluates the program given the assignment of values to the variables.
+		 * 
+		 * @param input the input assignment
+		 * @return the result of the evaluation
+		 */
+		double evaluate(Assignment input) {
+			if (maxDepth < 0) {
+				throw new IllegalArgumentException("Invalid number of operands");
+			}
+			double[] slots = new double[slotVars.length];
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = getSlotValue(input, i);
+			}
+			double[] stack = new double[maxDepth];
+			int top = 0;
+			for (int i = 0; i < codes.length; i++) {
+				switch (codes[i]) {
+				case CONSTANT:
+					stack[top++] = constants[i];
+					break;
+				case SLOT:
+					stack[top++] = slots[slotIndices[i]];
+					break;
+				case ADD:
+					top--;
+					stack[top - 1] = stack[top - 1] + stack[top];
+					break;
+				case SUBTRACT:
+					top--;
+					stack[top - 1] = stack[top - 1] - stack[top];
+					break;
+				case MULTIPLY:
+					top--;
+					stack[top - 1] = stack[top - 1] * stack[top];
+					break;
+				case NEGATE:
+					stack[top - 1] = -stack[top - 1];
+					break;
+				case OPERATOR:
+					int nbOperands = operators[i].getNumOperands();
+					top -= nbOperands;
+					stack[top] = operators[i].apply(
+							Arrays.copyOfRange(stack, top, top + nbOperands));
+					top++;
+					break;
+				case FUNCTION:
+					int nbArgs = functions[i].getNumArguments();
+					top -= nbArgs;
+					stack[top] = functions[i]
+							.apply(Arrays.copyOfRange(stack, top, top + nbArgs));
+					top++;
+					break;
+				}
+			}
+			return stack[0];
+		}
+
+		/**
+		 * Returns the value for the slot, extracted from the assignment. The value
+		 * is either a double value, or one dimension of an array value.
+		 * 
+		 * @param input the input assignment
+		 * @param slot the slot index
+		 * @return the value for the slot
+		 */
+		private double getSlotValue(Assignment input, int slot) {
+			Value v = input.getValue(slotVars[slot]);
+			if (v instanceof DoubleVal) {
+				return ((DoubleVal) v).getDouble();
+			}
+			if (arrayVars[slot] != null) {
+				Value array = input.getValue(arrayVars[slot]);
+				if (array instanceof ArrayVal && arrayIndices[slot] < ((ArrayVal) array)
+						.getArray().length) {
+					return ((ArrayVal) array).getArray()[arrayIndices[slot]];
+				}
+			}
+			Double defaultValue = defaults.get(slotVars[slot]);
+			if (defaultValue != null) {
+				return defaultValue;
+			}
+			throw new IllegalArgumentException("No value has been set for the "
+					+ "setVariable '" + slotVars[slot] + "'.");
+		}
+	}
+
 }
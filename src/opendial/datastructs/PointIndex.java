@@ -0,0 +1,283 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Index over a fixed set of points (of identical dimension) answering
+ * nearest-neighbour queries in logarithmic time, as well as range queries over
+ * axis-aligned boxes. One-dimensional points are kept
+ * in a sorted array searched by bisection, while multi-dimensional points are
+ * organised in a k-d tree stored implicitly in an array (the median of each
+ * sub-range being the node splitting the range). The distance is the Euclidian
+ * distance, as in MathUtils.getDistance.
+ * 
+ * <p>
+ * The index is immutable and must be recreated when the points change.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class PointIndex {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// the dimension of the points
+	final int dim;
+
+	// the points, in the order of the tree (or sorted for one dimension)
+	final double[][] points;
+
+	// the identifier associated with each point
+	final int[] ids;
+
+	/**
+	 * Creates a new index for the points, where each point is associated with an
+	 * identifier (such as its position in another collection).
+	 * 
+	 * @param points the points (all with the same dimension)
+	 * @param ids the identifier for each point
+	 */
+	public PointIndex(double[][] points, int[] ids) {
+		this.dim = (points.length > 0) ? points[0].length : 0;
+		this.points = points.clone();
+		this.ids = ids.clone();
+		build(0, points.length, 0);
+	}
+
+	/**
+	 * Returns the dimension of the indexed points
+	 * 
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns the number of indexed points
+	 * 
+	 * @return the number of points
+	 */
+	public int size() {
+		return points.length;
+	}
+
+	/**
+	 * Returns the identifier of the point closest to the query, or -1 if the index
+	 * is empty or the query does not have the dimension of the indexed points.
+	 * 
+	 * @param query the query point
+	 * @return the identifier of the nearest point
+	 */
+	public int getNearest(double[] query) {
+		if (points.length == 0 || query.length != dim) {
+			return -1;
+		}
+		else if (dim == 1) {
+			return ids[getNearest1D(query[0])];
+		}
+		double[] best = { Double.MAX_VALUE, -1 };
+		search(0, points.length, 0, query, best);
+		return ids[(int) best[1]];
+	}
+
+	/**
+	 * Applies the action to the identifier of each point located inside the box
+	 * delimited by the lower and upper corners (inclusive). Does nothing if the
+	 * corners do not have the dimension of the indexed points.
+	 * 
+	 * @param lower the lower corner of the box
+	 * @param upper the upper corner of the box
+	 * @param action the action to apply to the identifiers
+	 */
+	public void forEachInBox(double[] lower, double[] upper, IntConsumer action) {
+		if (points.length == 0 || lower.length != dim || upper.length != dim) {
+			return;
+		}
+		else if (dim == 1) {
+			for (int i = getLowerBound1D(lower[0]); i < points.length
+					&& points[i][0] <= upper[0]; i++) {
+				action.accept(ids[i]);
+			}
+			return;
+		}
+		searchBox(0, points.length, 0, lower, upper, action);
+	}
+
+	/**
+	 * Sorts the points in the range [start, end) by the coordinate at the given
+	 * depth (modulo the dimension), and recursively builds the two sub-trees on
+	 * each side of the median.
+	 * 
+	 * @param start the start of the range
+	 * @param end the end of the range (exclusive)
+	 * @param depth the depth in the tree
+	 */
+	private void build(int start, int end, int depth) {
+		if (end - start < 2) {
+			return;
+		}
+		int axis = depth % dim;
+		Integer[] order = new Integer[end - start];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = start + i;
+		}
+		Arrays.sort(order, (i, j) -> Double.compare(points[i][axis], points[j][axis]));
+		double[][] sortedPoints = new double[order.length][];
+		int[] sortedIds = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			sortedPoints[i] = points[order[i]];
+			sortedIds[i] = ids[order[i]];
+		}
+		System.arraycopy(sortedPoints, 0, points, start, order.length);
+		System.arraycopy(sortedIds, 0, ids, start, order.length);
+		if (dim > 1) {
+			int mid = (start + end) >>> 1;
+			build(start, mid, depth + 1);
+			build(mid + 1, end, depth + 1);
+		}
+	}
+
+	/**
+	 * Returns the position of the point closest to the value, assuming
+	 * one-dimensional points sorted in increasing order.
+	 * 
+	 * @param value the value to find
+	 * @return the position of the nearest point
+	 */
+	private int getNearest1D(double value) {
+		int low = Math.min(getLowerBound1D(value), points.length - 1);
+		if (low > 0 && Math.abs(points[low - 1][0] - value) <= Math
+				.abs(points[low][0] - value)) {
+			return low - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the position of the first point that is greater or equal to the
+	 * value (or the number of points if none is), assuming one-dimensional points
+	 * sorted in increasing order.
+	 * 
+	 * @param value the value
+	 * @return the position of the first point >= value
+	 */
+	private int getLowerBound1D(double value) {
+		int low = 0;
+		int high = points.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (points[mid][0] < value) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Searches the k-d tree in the range [start, end) for the points inside the
+	 * box, and applies the action to their identifiers. The sub-trees that lie
+	 * outside the box along the splitting axis are skipped.
+	 * 
+	 * @param start the start of the range
+	 * @param end the end of the range (exclusive)
+	 * @param depth the depth in the tree
+	 * @param lower the lower corner of the box
+	 * @param upper the upper corner of the box
+	 * @param action the action to apply to the identifiers
+	 */
+	private void searchBox(int start, int end, int depth, double[] lower,
+			double[] upper, IntConsumer action) {
+		if (start >= end) {
+			return;
+		}
+		int mid = (start + end) >>> 1;
+		double[] point = points[mid];
+		boolean inside = true;
+		for (int i = 0; i < dim && inside; i++) {
+			inside = (point[i] >= lower[i] && point[i] <= upper[i]);
+		}
+		if (inside) {
+			action.accept(ids[mid]);
+		}
+		int axis = depth % dim;
+		if (lower[axis] <= point[axis]) {
+			searchBox(start, mid, depth + 1, lower, upper, action);
+		}
+		if (upper[axis] >= point[axis]) {
+			searchBox(mid + 1, end, depth + 1, lower, upper, action);
+		}
+	}
+
+	/**
+	 * Searches the k-d tree in the range [start, end) for the point closest to the
+	 * query, updating the best (distance, position) pair found so far. The
+	 * sub-tree on the far side of the splitting plane is only explored if the
+	 * plane is closer than the current best point.
+	 * 
+	 * @param start the start of the range
+	 * @param end the end of the range (exclusive)
+	 * @param depth the depth in the tree
+	 * @param query the query point
+	 * @param best the best (squared distance, position) pair so far
+	 */
+	private void search(int start, int end, int depth, double[] query,
+			double[] best) {
+		if (start >= end) {
+			return;
+		}
+		int mid = (start + end) >>> 1;
+		double dist = 0.0;
+		for (int i = 0; i < dim; i++) {
+			double diff = points[mid][i] - query[i];
+			dist += diff * diff;
+		}
+		if (dist < best[0]) {
+			best[0] = dist;
+			best[1] = mid;
+		}
+		int axis = depth % dim;
+		double diff = query[axis] - points[mid][axis];
+		if (diff < 0) {
+			search(start, mid, depth + 1, query, best);
+			if (diff * diff < best[0]) {
+				search(mid + 1, end, depth + 1, query, best);
+			}
+		}
+		else {
+			search(mid + 1, end, depth + 1, query, best);
+			if (diff * diff < best[0]) {
+				search(start, mid, depth + 1, query, best);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+package opendial.datastructs;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Global table of variable symbols, mapping each variable name to a small integer
+ * identifier (and conversely). The identifiers are allocated in the order in
+ * which the variables are first encountered. The table is thread-safe: the
+ * allocation of new identifiers is synchronised, but the lookups (in both
+ * directions) do not require any lock.
+ * 
+ * <p>
+ * The table lives as long as the process, and the identifiers are never released
+ * (as they may still be referred to by existing assignments). Its size is
+ * therefore the number of distinct variable names encountered so far, which is
+ * bounded by the variables of the domains that have been loaded (and the
+ * variables created by their rules).
+ * 
+ * <p>
+ * The identifiers are used by compact representations (such as
+ * CompactAssignment) to sort and compare variables without relying on string
+ * comparisons and hashing.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class SymbolTable {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// the identifier for each variable name
+	static final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+	// the variable name for each identifier (the array is replaced by a larger
+	// copy when full, such that it can be read without locking)
+	static volatile String[] names = new String[64];
+
+	// lock for the allocation of new identifiers
+	static final Object lock = new Object();
+
+	/**
+	 * Returns the identifier for the variable, allocating a new one if the variable
+	 * has not been encountered before.
+	 * 
+	 * @param variable the variable name
+	 * @return the variable identifier
+	 */
+	public static int getId(String variable) {
+		Integer id = ids.get(variable);
+		if (id != null) {
+			return id;
+		}
+		synchronized (lock) {
+			id = ids.get(variable);
+			if (id != null) {
+				return id;
+			}
+			int newId = ids.size();
+			String[] current = names;
+			if (newId == current.length) {
+				current = Arrays.copyOf(current, 2 * current.length);
+			}
+			current[newId] = variable;
+			names = current;
+
+			// the name must be stored before the identifier is published
+			ids.put(variable, newId);
+			return newId;
+		}
+	}
+
+	/**
+	 * Returns the identifier for the variable if the variable is already in the
+	 * table, and -1 otherwise (without allocating a new identifier).
+	 * 
+	 * @param variable the variable name
+	 * @return the variable identifier, or -1 if the variable is unknown
+	 */
+	public static int lookup(String variable) {
+		Integer id = ids.get(variable);
+		return (id != null) ? id : -1;
+	}
+
+	/**
+	 * Returns the variable name associated with the identifier
+	 * 
+	 * @param id the variable identifier
+	 * @return the variable name
+	 */
+	public static String getVariable(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns the number of variables currently in the table
+	 * 
+	 * @return the number of variables
+	 */
+	public static int size() {
+		return ids.size();
+	}
+
+}
@@ -32,9 +32,9 @@ import java.util.Map;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import opendial.bn.values.Value;
-import opendial.utils.InferenceUtils;
 
 /**
  * Representation of a range of alternative values for a set of variables.
@@ -148,7 +148,18 @@ public class ValueRange {
 			return range.get(var).stream().map(v -> new Assignment(var, v))
 					.collect(Collectors.toSet());
 		}
-		return InferenceUtils.getAllCombinations(range);
+		return getCombinations().collect(Collectors.toSet());
+	}
+
+	/**
+	 * Returns a (lazy) stream over all alternative assignments of values for the
+	 * variables in the range. Contrary to linearise(), the assignments are only
+	 * created when they are consumed. The stream can be made parallel.
+	 * 
+	 * @return the stream of alternative assignments
+	 */
+	public Stream<Assignment> getCombinations() {
+		return Combinations.stream(range);
 	}
 
 	/**
@@ -199,6 +210,15 @@ public class ValueRange {
 		return range.hashCode() - 1;
 	}
 
+	/**
+	 * Returns true if the object is a value range with the same variables and
+	 * values, and false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof ValueRange) && ((ValueRange) o).range.equals(range);
+	}
+
 	/**
 	 * Returns true if the range is empty (contains no variables).
 	 * 
@@ -26,12 +26,26 @@ package opendial.domains;
 import java.io.File;
 import java.util.logging.*;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import opendial.DialogueState;
 import opendial.Settings;
 import opendial.bn.BNetwork;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.conditions.BasicCondition;
+import opendial.domains.rules.conditions.ComplexCondition;
+import opendial.domains.rules.conditions.Condition;
+import opendial.domains.rules.conditions.NegatedCondition;
+import opendial.templates.StringMatcher;
+import opendial.templates.StringTemplate;
+import opendial.templates.Template;
 import opendial.utils.XMLUtils;
 
 /**
@@ -61,6 +75,12 @@ public class Domain {
 	// settings
 	Settings settings;
 
+	// matcher for the string values searched by the rule conditions
+	StringMatcher matcher;
+
+	// index of the model triggers (rebuilt when the models are modified)
+	volatile TriggerIndex triggerIndex;
+
 	/**
 	 * Creates a new domain with an empty dialogue state and list of models.
 	 */
@@ -70,6 +90,7 @@ public class Domain {
 		initState = new DialogueState();
 		parameters = new BNetwork();
 		importedFiles = new ArrayList<File>();
+		matcher = new StringMatcher();
 	}
 
 	/**
@@ -147,6 +168,29 @@ public class Domain {
 	 */
 	public void addModel(Model model) {
 		models.add(model);
+		for (Rule rule : model.getRules()) {
+			rule.getConditions().forEach(c -> registerCondition(c));
+		}
+	}
+
+	/**
+	 * Registers the basic conditions included in the condition in the string
+	 * matcher of the domain, such that the string values searched by the
+	 * conditions can be found in a single pass over the input.
+	 * 
+	 * @param condition the condition to register
+	 */
+	private void registerCondition(Condition condition) {
+		if (condition instanceof BasicCondition) {
+			((BasicCondition) condition).setMatcher(matcher);
+		}
+		else if (condition instanceof ComplexCondition) {
+			((ComplexCondition) condition).getConditions()
+					.forEach(c -> registerCondition(c));
+		}
+		else if (condition instanceof NegatedCondition) {
+			registerCondition(((NegatedCondition) condition).getInitCondition());
+		}
 	}
 
 	/**
@@ -167,6 +211,24 @@ public class Domain {
 		return models;
 	}
 
+	/**
+	 * Returns the models (in their order of declaration) that are triggered by at
+	 * least one of the updated variables. Models without rules are ignored. This
+	 * is equivalent to checking {@link Model#isTriggered(Collection)} for each
+	 * model, but relies on an index of the triggers defined in the domain.
+	 * 
+	 * @param updatedVars the updated variables
+	 * @return the triggered models
+	 */
+	public List<Model> getTriggeredModels(Collection<String> updatedVars) {
+		TriggerIndex index = triggerIndex;
+		if (index == null || !index.isValid(models)) {
+			index = new TriggerIndex(models);
+			triggerIndex = index;
+		}
+		return index.getTriggeredModels(updatedVars);
+	}
+
 	/**
 	 * Replaces the domain-specific settings
 	 * 
@@ -226,4 +288,162 @@ public class Domain {
 		return false;
 	}
 
+	/**
+	 * Index of the triggers for the models of the domain. Fully specified triggers
+	 * are stored in a hash table indexed by their (lowercase) label, while
+	 * underspecified triggers are matched against the variable labels. The models
+	 * triggered by a given variable are memoised, such that the dispatch costs one
+	 * lookup per updated variable.
+	 */
+	static final class TriggerIndex {
+
+		// maximum number of variables whose triggered models are memoised
+		static final int MAX_MEMO_SIZE = 10000;
+
+		// the indexed models
+		final Model[] models;
+
+		// number of triggers for each model (to detect modifications)
+		final int[] nbTriggers;
+
+		// models with a fully specified trigger for each (lowercase) label
+		final Map<String, BitSet> fixedTriggers;
+
+		// underspecified triggers, together with their model indices
+		final List<Template> patterns;
+		final List<Integer> patternModels;
+
+		// memoised models triggered by each variable
+		final Map<String, BitSet> memo;
+
+		/**
+		 * Creates the trigger index for the list of models
+		 * 
+		 * @param modelList the models of the domain
+		 */
+		TriggerIndex(List<Model> modelList) {
+			models = modelList.toArray(new Model[modelList.size()]);
+			nbTriggers = new int[models.length];
+			fixedTriggers = new HashMap<String, BitSet>();
+			patterns = new ArrayList<Template>();
+			patternModels = new ArrayList<Integer>();
+			memo = new ConcurrentHashMap<String, BitSet>();
+			for (int i = 0; i < models.length; i++) {
+				nbTriggers[i] = models[i].triggers.size();
+				for (Template trigger : models[i].triggers) {
+					if (trigger instanceof StringTemplate) {
+						String key = getKey(trigger.toString());
+						fixedTriggers.computeIfAbsent(key, k -> new BitSet()).set(i);
+					}
+					else {
+						patterns.add(trigger);
+						patternModels.add(i);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns true if the index is still valid for the list of models (that is,
+		 * if the list contains the same models with the same number of triggers).
+		 * 
+		 * @param modelList the models of the domain
+		 * @return true if the index is valid, false otherwise
+		 */
+		boolean isValid(List<Model> modelList) {
+			if (modelList.size() != models.length) {
+				return false;
+			}
+			Iterator<Model> it = modelList.iterator();
+			for (int i = 0; i < models.length; i++) {
+				Model model = it.next();
+				if (model != models[i] || model.triggers.size() != nbTriggers[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the models triggered by at least one of the updated variables
+		 * 
+		 * @param updatedVars the updated variables
+		 * @return the triggered models
+		 */
+		List<Model> getTriggeredModels(Collection<String> updatedVars) {
+			BitSet triggered = new BitSet(models.length);
+			for (String updatedVar : updatedVars) {
+				triggered.or(getTriggeredModels(updatedVar));
+			}
+			List<Model> result = new ArrayList<Model>(triggered.cardinality());
+			for (int i = triggered.nextSetBit(0); i >= 0; i =
+					triggered.nextSetBit(i + 1)) {
+				if (!models[i].rules.isEmpty()) {
+					result.add(models[i]);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the indices of the models triggered by the variable
+		 * 
+		 * @param var the variable label
+		 * @return the indices of the triggered models
+		 */
+		private BitSet getTriggeredModels(String var) {
+			BitSet triggered = memo.get(var);
+			if (triggered != null) {
+				return triggered;
+			}
+			triggered = new BitSet(models.length);
+			BitSet fixed = fixedTriggers.get(getKey(var));
+			if (fixed != null) {
+				for (int i = fixed.nextSetBit(0); i >= 0; i = fixed.nextSetBit(i + 1)) {
+					if (matches(i, var)) {
+						triggered.set(i);
+					}
+				}
+			}
+			for (int i = 0; i < patterns.size(); i++) {
+				if (patterns.get(i).match(var).isMatching()) {
+					triggered.set(patternModels.get(i));
+				}
+			}
+			if (memo.size() >= MAX_MEMO_SIZE) {
+				memo.clear();
+			}
+			memo.put(var, triggered);
+			return triggered;
+		}
+
+		/**
+		 * Returns true if one of the fully specified triggers of the model matches
+		 * the variable.
+		 * 
+		 * @param modelIndex the model index
+		 * @param var the variable label
+		 * @return true if the variable matches a trigger, false otherwise
+		 */
+		private boolean matches(int modelIndex, String var) {
+			for (Template trigger : models[modelIndex].triggers) {
+				if (trigger instanceof StringTemplate
+						&& trigger.match(var).isMatching()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the key for the label in the table of fully specified triggers
+		 * 
+		 * @param label the label
+		 * @return the corresponding key
+		 */
+		private static String getKey(String label) {
+			return label.trim().toLowerCase();
+		}
+	}
+
 }
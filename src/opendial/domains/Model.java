@@ -26,11 +26,16 @@ package opendial.domains;
 import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import opendial.DialogueState;
 import opendial.domains.rules.Rule;
+import opendial.domains.rules.distribs.AnchoredRule;
+import opendial.domains.rules.distribs.AnchoringCache;
 import opendial.templates.Template;
 
 /**
@@ -54,12 +59,18 @@ public class Model {
 	// counter for the model identifier, if not explicitly given
 	public static int idCounter = 0;
 
+	// whether to anchor the rules of a model in parallel
+	public static boolean PARALLEL_ANCHORING = true;
+
 	// triggers associated with the model
 	List<Template> triggers;
 
 	// collection of rules for the model
 	Collection<Rule> rules;
 
+	// cache of the rule anchorings, reused across updates
+	final AnchoringCache anchorings;
+
 	// ===================================
 	// MODEL CONSTRUCTION
 	// ===================================
@@ -70,6 +81,7 @@ public class Model {
 	public Model() {
 		triggers = new LinkedList<Template>();
 		rules = new LinkedList<Rule>();
+		anchorings = new AnchoringCache();
 		id = "model" + idCounter;
 		idCounter++;
 	}
@@ -158,17 +170,124 @@ public class Model {
 	 * @return true if the state has been changed, false otherwise
 	 */
 	public boolean trigger(DialogueState state) {
-		for (Rule r : rules) {
+		if (PARALLEL_ANCHORING && rules.size() > 1) {
+			triggerInParallel(state);
+		}
+		else {
+			for (Rule r : rules) {
+				applyRule(state, r);
+			}
+		}
+		return !state.getNewVariables().isEmpty() || !state.getNewActionVariables().isEmpty();
+	}
+
+	/**
+	 * Triggers the model in two phases. The rules are first anchored in parallel
+	 * (which only reads the dialogue state), and the anchored rules are then
+	 * added to the state in the order of the rules. A rule is anchored again
+	 * (sequentially) if one of its input variables matches a node modified by
+	 * the rules added before it, or if the anchoring failed, such that the
+	 * resulting state is identical to the one obtained by applying the rules one
+	 * after the other.
+	 * 
+	 * @param state the current dialogue state
+	 */
+	private void triggerInParallel(DialogueState state) {
+		List<Rule> ruleList = new ArrayList<Rule>(rules);
+
+		// anchoring phase (read-only)
+		List<List<AnchoredRule>> anchored = ruleList.parallelStream().map(r -> {
 			try {
-				state.applyRule(r);
+				return state.anchorRule(r, anchorings);
 			}
 			catch (RuntimeException e) {
-				log.warning("rule " + r.getRuleId() + " could not be applied: "
-						+ e.toString());
-				e.printStackTrace();
+				return null;
+			}
+		}).collect(Collectors.toList());
+
+		// insertion phase (in the order of the rules)
+		Set<String> modified = new HashSet<String>();
+		for (int i = 0; i < ruleList.size(); i++) {
+			Rule r = ruleList.get(i);
+			List<AnchoredRule> arules = anchored.get(i);
+			if (arules != null && arules.size() > 1) {
+				Set<String> ownModified = new HashSet<String>(modified);
+				arules.forEach(a -> ownModified.addAll(getModifiedNodes(a)));
+				arules = (dependsOn(r, ownModified)) ? null : arules;
+			}
+			else if (arules != null && dependsOn(r, modified)) {
+				arules = null;
 			}
+			if (arules != null) {
+				arules.forEach(a -> state.addAnchoredRule(a));
+			}
+			else {
+				arules = applyRule(state, r);
+			}
+			arules.forEach(a -> modified.addAll(getModifiedNodes(a)));
 		}
-		return !state.getNewVariables().isEmpty() || !state.getNewActionVariables().isEmpty();
+	}
+
+	/**
+	 * Applies the rule to the dialogue state, and returns the anchored rules that
+	 * were added to it (or an empty list if the rule could not be applied).
+	 * 
+	 * @param state the dialogue state
+	 * @param r the rule to apply
+	 * @return the anchored rules added to the state
+	 */
+	private List<AnchoredRule> applyRule(DialogueState state, Rule r) {
+		try {
+			return state.applyRule(r, anchorings);
+		}
+		catch (RuntimeException e) {
+			log.warning("rule " + r.getRuleId() + " could not be applied: "
+					+ e.toString());
+			e.printStackTrace();
+			return new ArrayList<AnchoredRule>();
+		}
+	}
+
+	/**
+	 * Returns the identifiers of the nodes that are created or modified when the
+	 * anchored rule is added to the dialogue state: the rule node, its output (or
+	 * action) nodes and the equality nodes connecting outputs to predictions.
+	 * 
+	 * @param arule the anchored rule
+	 * @return the identifiers of the modified nodes
+	 */
+	private static Set<String> getModifiedNodes(AnchoredRule arule) {
+		Set<String> nodeIds = new HashSet<String>();
+		nodeIds.add(arule.getVariable());
+		for (String output : arule.getOutputs()) {
+			nodeIds.add(output);
+			if (output.endsWith("'")) {
+				nodeIds.add("=_" + output.substring(0, output.length() - 1));
+			}
+		}
+		return nodeIds;
+	}
+
+	/**
+	 * Returns true if one of the input variables of the rule matches one of the
+	 * node identifiers, and false otherwise.
+	 * 
+	 * @param r the rule
+	 * @param nodeIds the node identifiers
+	 * @return true if the rule depends on one of the nodes, false otherwise
+	 */
+	private static boolean dependsOn(Rule r, Set<String> nodeIds) {
+		if (nodeIds.isEmpty()) {
+			return false;
+		}
+		for (Template t : r.getInputVariables()) {
+			for (String nodeId : nodeIds) {
+				if (t.toString().equals(nodeId) || t.match(nodeId).isMatching()) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
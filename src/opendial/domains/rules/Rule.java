@@ -195,6 +195,19 @@ public class Rule {
 		return effects;
 	}
 
+	/**
+	 * Returns the conditions of the rule cases (in their order of declaration).
+	 * 
+	 * @return the conditions of the rule
+	 */
+	public List<Condition> getConditions() {
+		List<Condition> conditions = new ArrayList<Condition>();
+		for (RuleCase c : cases) {
+			conditions.add(c.condition);
+		}
+		return conditions;
+	}
+
 	/**
 	 * Returns the set of groundings that can be derived from the rule and the
 	 * specific input assignment.
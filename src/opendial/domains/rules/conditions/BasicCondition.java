@@ -33,10 +33,12 @@ import java.util.Set;
 import opendial.bn.values.ArrayVal;
 import opendial.bn.values.NoneVal;
 import opendial.bn.values.SetVal;
+import opendial.bn.values.StringVal;
 import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 import opendial.domains.rules.RuleGrounding;
+import opendial.templates.StringMatcher;
 import opendial.templates.Template;
 import opendial.templates.Template.MatchResult;
 
@@ -66,6 +68,19 @@ public final class BasicCondition implements Condition {
 	// (default is EQUAL)
 	final Relation relation;
 
+	// possible forms of the condition, depending on the location of its slots
+	private static enum Form {
+		GROUND, SLOT_IN_VARIABLE, SLOT_IN_VALUE
+	}
+
+	// the form of the condition (determined once at construction)
+	final Form form;
+
+	// shared matcher for string values (and index of the expected value in it),
+	// used for ground CONTAINS and NOT_CONTAINS conditions
+	StringMatcher matcher;
+	int matcherId = -1;
+
 	// ===================================
 	// CONDITION CONSTRUCTION
 	// ===================================
@@ -84,6 +99,7 @@ public final class BasicCondition implements Condition {
 		groundValue = (templateValue.isUnderspecified()) ? null
 				: ValueFactory.create(value);
 		this.relation = relation;
+		form = getForm();
 	}
 
 	/**
@@ -99,6 +115,7 @@ public final class BasicCondition implements Condition {
 		this.templateValue = Template.create(value.toString());
 		this.groundValue = value;
 		this.relation = relation;
+		form = getForm();
 	}
 
 	/**
@@ -123,7 +140,23 @@ public final class BasicCondition implements Condition {
 				groundValue = ValueFactory.create(templateValue.toString());
 			}
 		}
+		form = getForm();
+	}
 
+	/**
+	 * Determines the form of the condition: fully ground (no slots), with slots in
+	 * the variable label only, or with slots in the expected value.
+	 * 
+	 * @return the form of the condition
+	 */
+	private Form getForm() {
+		if (!templateValue.getSlots().isEmpty()) {
+			return Form.SLOT_IN_VALUE;
+		}
+		else if (!variable.getSlots().isEmpty()) {
+			return Form.SLOT_IN_VARIABLE;
+		}
+		return Form.GROUND;
 	}
 
 	// ===================================
@@ -175,13 +208,25 @@ public final class BasicCondition implements Condition {
 	 * argument, and false otherwise
 	 * 
 	 * <p>
-	 * This method uses an external ConditionCheck object to ease the process.
+	 * Ground conditions are directly checked against the value of their variable,
+	 * and conditions with slots only in the variable label are checked after
+	 * filling the label. In the other cases, the condition is first grounded with
+	 * the input assignment.
 	 *
 	 * @param input the actual assignment of values
 	 * @return true if the condition is satisfied, false otherwise
 	 */
 	@Override
 	public boolean isSatisfiedBy(Assignment input) {
+		switch (form) {
+		case GROUND:
+			return isSatisfied(input.getValue(variable.toString()));
+		case SLOT_IN_VARIABLE:
+			return variable.isFilledBy(input)
+					&& isSatisfied(input.getValue(variable.fillSlots(input)));
+		default:
+			break;
+		}
 		if (!variable.isFilledBy(input) || !templateValue.isFilledBy(input)) {
 			return false;
 		}
@@ -190,6 +235,27 @@ public final class BasicCondition implements Condition {
 		return grounded.isSatisfied(actualValue);
 	}
 
+	/**
+	 * Registers the expected value of the condition in the shared string matcher,
+	 * provided the condition is ground, has a CONTAINS or NOT_CONTAINS relation
+	 * and expects a plain string. The condition then relies on the matcher to
+	 * search for the expected value in the actual string values. Otherwise, the
+	 * method has no effect.
+	 * 
+	 * @param matcher the string matcher
+	 */
+	public void setMatcher(StringMatcher matcher) {
+		if (form == Form.GROUND && groundValue instanceof StringVal
+				&& (relation == Relation.CONTAINS
+						|| relation == Relation.NOT_CONTAINS)) {
+			int id = matcher.addTemplate(Template.create(groundValue.toString()));
+			if (id >= 0) {
+				this.matcher = matcher;
+				matcherId = id;
+			}
+		}
+	}
+
 	/**
 	 * Returns true if the relation is satisfied between the actual and expected
 	 * values.
@@ -211,9 +277,9 @@ public final class BasicCondition implements Condition {
 			case LOWER_THAN:
 				return (actualValue.compareTo(groundValue) < 0);
 			case CONTAINS:
-				return actualValue.contains(groundValue);
+				return contains(actualValue);
 			case NOT_CONTAINS:
-				return !actualValue.contains(groundValue);
+				return !contains(actualValue);
 			case LENGTH:
 				return actualValue.length() == groundValue.length();
 			case IN:
@@ -245,6 +311,20 @@ public final class BasicCondition implements Condition {
 		}
 	}
 
+	/**
+	 * Returns true if the actual value contains the expected value, relying on
+	 * the shared string matcher if one is defined for the condition.
+	 * 
+	 * @param actualValue the actual value
+	 * @return true if the expected value is contained, false otherwise
+	 */
+	private boolean contains(Value actualValue) {
+		if (matcher != null && actualValue instanceof StringVal) {
+			return matcher.contains(actualValue.toString(), matcherId);
+		}
+		return actualValue.contains(groundValue);
+	}
+
 	/**
 	 * Returns the set of possible groundings for the given input assignment
 	 * 
@@ -254,7 +334,8 @@ public final class BasicCondition implements Condition {
 	@Override
 	public RuleGrounding getGroundings(Assignment input) {
 
-		BasicCondition groundCond = new BasicCondition(this, input);
+		BasicCondition groundCond =
+				(form == Form.GROUND) ? this : new BasicCondition(this, input);
 		RuleGrounding groundings = new RuleGrounding();
 
 		// case 1: the variable label is underspecified
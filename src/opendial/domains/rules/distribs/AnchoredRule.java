@@ -25,6 +25,7 @@
 package opendial.domains.rules.distribs;
 
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,11 +39,13 @@ import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.distribs.UtilityFunction;
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.CompactAssignment;
 import opendial.datastructs.ValueRange;
 import opendial.domains.rules.Rule;
 import opendial.domains.rules.Rule.RuleType;
 import opendial.domains.rules.RuleOutput;
 import opendial.domains.rules.conditions.Condition;
+import opendial.domains.rules.distribs.AnchoringCache.Anchoring;
 import opendial.domains.rules.effects.Effect;
 import opendial.domains.rules.parameters.Parameter;
 import opendial.templates.Template;
@@ -62,7 +65,7 @@ public final class AnchoredRule implements ProbDistribution, UtilityFunction {
 	final Rule rule;
 
 	// whether the rule is relevant
-	boolean relevant = false;
+	final boolean relevant;
 
 	// the range of possible input values for the rule
 	final ValueRange inputs;
@@ -82,8 +85,8 @@ public final class AnchoredRule implements ProbDistribution, UtilityFunction {
 	// the relevant effects for the rule
 	final Set<Effect> effects;
 
-	// cache with the outputs for a given assignment
-	Map<Assignment, RuleOutput> cache;
+	// cache with the outputs for a given assignment (without the filled slots)
+	Map<CompactAssignment, RuleOutput> cache;
 
 	/**
 	 * Anchors the rule in the dialogue state. The construction process leads to the
@@ -98,17 +101,29 @@ public final class AnchoredRule implements ProbDistribution, UtilityFunction {
 	 * 
 	 * @param rule the probabilistic rule
 	 * @param state the dialogue state
-	 * @param filled
+	 * @param filledSlots the filled slots for the rule
 	 */
 	public AnchoredRule(Rule rule, DialogueState state, Assignment filledSlots) {
+		this(rule, state, filledSlots, null);
+	}
+
+	/**
+	 * Anchors the rule in the dialogue state, reusing the results of a previous
+	 * anchoring from the cache if the rule was already anchored with the same
+	 * filled slots and the same range of input values.
+	 * 
+	 * @param rule the probabilistic rule
+	 * @param state the dialogue state
+	 * @param filledSlots the filled slots for the rule
+	 * @param anchorings the cache of anchorings (can be null)
+	 */
+	public AnchoredRule(Rule rule, DialogueState state, Assignment filledSlots,
+			AnchoringCache anchorings) {
 		this.rule = rule;
 		this.id = rule.getRuleId();
 		if (!filledSlots.isEmpty()) {
 			this.id += "(" + filledSlots + ")";
 		}
-		effects = new HashSet<Effect>();
-		outputs = new ValueRange();
-		parameters = new HashSet<String>();
 		this.filledSlots = filledSlots;
 
 		// determines the input range
@@ -121,37 +136,73 @@ public final class AnchoredRule implements ProbDistribution, UtilityFunction {
 				}
 			}
 		}
-		Set<Assignment> conditions = inputs.linearise();
+		variables = new HashSet<String>(inputs.getVariables());
+
+		Anchoring anchoring = null;
+		if (anchorings != null) {
+			anchoring = anchorings.get(rule, filledSlots, inputs);
+		}
+		if (anchoring == null) {
+			anchoring = anchor();
+			if (anchorings != null) {
+				anchorings.put(rule, filledSlots, inputs, anchoring);
+			}
+		}
+
+		relevant = anchoring.relevant;
+		effects = new HashSet<Effect>(anchoring.effects);
+		outputs = new ValueRange();
+		outputs.addRange(anchoring.outputs);
+		parameters = new HashSet<String>();
+		anchoring.parameterVars.stream().filter(p -> state.hasChanceNode(p))
+				.forEach(p -> parameters.add(p));
+		cache = anchoring.cache;
+
+		// adding the action variables
+		if (relevant && rule.getRuleType() == RuleType.UTIL) {
+			variables.addAll(outputs.getVariables());
+		}
+	}
+
+	/**
+	 * Determines the relevance of the rule, its set of possible effects, output
+	 * values and parameters (for all possible input values).
+	 * 
+	 * @return the resulting anchoring
+	 */
+	private Anchoring anchor() {
 
 		// we already start a cache if we have a probability rule
 		if (rule.getRuleType() == RuleType.PROB) {
-			cache = new ConcurrentHashMap<Assignment, RuleOutput>();
+			cache = new ConcurrentHashMap<CompactAssignment, RuleOutput>();
 		}
-		variables = new HashSet<String>(inputs.getVariables());
 
-		// determines the set of possible effects, output values and parameters
-		// (for all possible input values)
-		for (Assignment input : conditions) {
+		boolean isRelevant = false;
+		Set<Effect> allEffects = new HashSet<Effect>();
+		ValueRange outputRange = new ValueRange();
+		Set<String> parameterVars = new HashSet<String>();
+		Iterator<Assignment> combinations = inputs.getCombinations().iterator();
+		while (combinations.hasNext()) {
+			Assignment input = combinations.next();
 			input.addAssignment(filledSlots);
 
 			RuleOutput output = getCachedOutput(input);
-			relevant = relevant || !output.isVoid();
+			isRelevant = isRelevant || !output.isVoid();
 			// looping on all alternative effects in the output
 			for (Map.Entry<Effect, Parameter> o : output.getPairs()) {
 				Effect effect = o.getKey();
 				Parameter param = o.getValue();
-				effects.add(effect);
-				outputs.addAssign(effect.getAssignment());
-				param.getVariables().stream().filter(p -> state.hasChanceNode(p))
-						.forEach(p -> parameters.add(p));
+				allEffects.add(effect);
+				outputRange.addAssign(effect.getAssignment());
+				parameterVars.addAll(param.getVariables());
 			}
 		}
-		// adding the action variables, and activating the cache
-		if (relevant && rule.getRuleType() == RuleType.UTIL) {
-			variables.addAll(outputs.getVariables());
-			cache = new ConcurrentHashMap<Assignment, RuleOutput>();
+		// activating the cache for utility rules
+		if (isRelevant && rule.getRuleType() == RuleType.UTIL) {
+			cache = new ConcurrentHashMap<CompactAssignment, RuleOutput>();
 		}
-
+		return new Anchoring(isRelevant, allEffects, outputRange, parameterVars,
+				cache);
 	}
 
 	/**
@@ -385,11 +436,11 @@ public final class AnchoredRule implements ProbDistribution, UtilityFunction {
 		if (cache == null) {
 			return rule.getOutput(new Assignment(input, filledSlots));
 		}
-		else if (input.size() > variables.size()) {
-			input = input.getTrimmed(variables);
-		}
-		return cache.computeIfAbsent(new Assignment(input, filledSlots),
-				a -> rule.getOutput(a));
+		CompactAssignment key = (input.size() > variables.size())
+				? new CompactAssignment(input, variables)
+				: new CompactAssignment(input);
+		return cache.computeIfAbsent(key,
+				k -> rule.getOutput(new Assignment(k.toAssignment(), filledSlots)));
 	}
 
 }
@@ -0,0 +1,205 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.domains.rules.distribs;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import opendial.datastructs.Assignment;
+import opendial.datastructs.CompactAssignment;
+import opendial.datastructs.ValueRange;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.RuleOutput;
+import opendial.domains.rules.effects.Effect;
+
+/**
+ * Cache of rule anchorings, which allows the results of anchoring a rule in a
+ * dialogue state (relevance, effects, output range, parameters and outputs for
+ * each input assignment) to be reused when the rule is anchored again with the
+ * same filled slots and the same range of input values, for instance in a
+ * subsequent update loop or dialogue turn.
+ * 
+ * <p>
+ * Rules with effects generating random values are never cached, since their
+ * outputs must be regenerated at each anchoring.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class AnchoringCache {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// maximum number of anchorings in the cache
+	public static int MAX_SIZE = 1000;
+
+	// the cached anchorings
+	final Map<Key, Anchoring> anchorings;
+
+	/**
+	 * Creates a new, empty cache
+	 */
+	public AnchoringCache() {
+		anchorings = new ConcurrentHashMap<Key, Anchoring>();
+	}
+
+	/**
+	 * Returns the anchoring for the rule with the given filled slots and input
+	 * range, if it is present in the cache. Else, returns null.
+	 * 
+	 * @param rule the rule
+	 * @param filledSlots the filled slots
+	 * @param inputs the range of input values
+	 * @return the cached anchoring, or null if absent
+	 */
+	Anchoring get(Rule rule, Assignment filledSlots, ValueRange inputs) {
+		return anchorings.get(new Key(rule, filledSlots, inputs));
+	}
+
+	/**
+	 * Adds the anchoring of the rule to the cache, unless the rule generates
+	 * random values.
+	 * 
+	 * @param rule the rule
+	 * @param filledSlots the filled slots
+	 * @param inputs the range of input values
+	 * @param anchoring the anchoring
+	 */
+	void put(Rule rule, Assignment filledSlots, ValueRange inputs,
+			Anchoring anchoring) {
+		for (Effect e : rule.getEffects()) {
+			if (!e.getRandomsToGenerate().isEmpty()) {
+				return;
+			}
+		}
+		if (anchorings.size() >= MAX_SIZE) {
+			anchorings.clear();
+		}
+		ValueRange inputsCopy = new ValueRange();
+		inputsCopy.addRange(inputs);
+		anchorings.put(new Key(rule, new Assignment(filledSlots), inputsCopy),
+				anchoring);
+	}
+
+	/**
+	 * Returns the number of anchorings in the cache
+	 * 
+	 * @return the cache size
+	 */
+	public int size() {
+		return anchorings.size();
+	}
+
+	/**
+	 * Empties the cache
+	 */
+	public void clear() {
+		anchorings.clear();
+	}
+
+	/**
+	 * Results of the anchoring of a rule, independent of the dialogue state in
+	 * which the rule is anchored.
+	 */
+	static final class Anchoring {
+
+		// whether the rule is relevant
+		final boolean relevant;
+
+		// the relevant effects for the rule
+		final Set<Effect> effects;
+
+		// the range of possible output values
+		final ValueRange outputs;
+
+		// the variables of the parameters (which must be filtered to retain the
+		// nodes of the dialogue state)
+		final Set<String> parameterVars;
+
+		// the outputs for a given input assignment (can be null)
+		final Map<CompactAssignment, RuleOutput> cache;
+
+		/**
+		 * Creates a new anchoring
+		 * 
+		 * @param relevant whether the rule is relevant
+		 * @param effects the relevant effects
+		 * @param outputs the range of output values
+		 * @param parameterVars the parameter variables
+		 * @param cache the outputs for each input assignment
+		 */
+		Anchoring(boolean relevant, Set<Effect> effects, ValueRange outputs,
+				Set<String> parameterVars, Map<CompactAssignment, RuleOutput> cache) {
+			this.relevant = relevant;
+			this.effects = effects;
+			this.outputs = outputs;
+			this.parameterVars = parameterVars;
+			this.cache = cache;
+		}
+	}
+
+	/**
+	 * Key for a rule anchoring. Rules are compared by identity.
+	 */
+	static final class Key {
+
+		final Rule rule;
+		final Assignment filledSlots;
+		final ValueRange inputs;
+		final int hash;
+
+		/**
+		 * Creates a new key
+		 * 
+		 * @param rule the rule
+		 * @param filledSlots the filled slots
+		 * @param inputs the range of input values
+		 */
+		Key(Rule rule, Assignment filledSlots, ValueRange inputs) {
+			this.rule = rule;
+			this.filledSlots = filledSlots;
+			this.inputs = inputs;
+			hash = System.identityHashCode(rule) + 31 * filledSlots.hashCode()
+					- inputs.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return k.rule == rule && k.hash == hash
+						&& k.filledSlots.equals(filledSlots) && k.inputs.equals(inputs);
+			}
+			return false;
+		}
+	}
+}
@@ -26,8 +26,10 @@ package opendial.inference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -35,6 +37,7 @@ import opendial.bn.BNetwork;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.UtilityNode;
 import opendial.datastructs.Assignment;
+import opendial.inference.exact.EliminationOrder;
 
 /**
  * Representation of an inference query, which can be either a probability query, a
@@ -87,6 +90,12 @@ public abstract class Query {
 	Collection<String> queryVars;
 	Assignment evidence;
 
+	// the elimination orders already computed for the query, for each heuristic
+	final Map<EliminationOrder.Heuristic, EliminationOrder> eliminationOrders =
+			Collections.synchronizedMap(
+					new EnumMap<EliminationOrder.Heuristic, EliminationOrder>(
+							EliminationOrder.Heuristic.class));
+
 	public Query(BNetwork network, Collection<String> queryVars,
 			Assignment evidence) {
 
@@ -147,6 +156,21 @@ public abstract class Query {
 		return filteredNodes;
 	}
 
+	/**
+	 * Returns the elimination order for the hidden variables of the query, using
+	 * the given heuristic. The order is computed at the first call, and then reused
+	 * by the subsequent calls (e.g. to first estimate the cost of the query, and
+	 * then answer it by variable elimination).
+	 * 
+	 * @param heuristic the heuristic for the elimination order
+	 * @return the corresponding elimination order
+	 */
+	public EliminationOrder getEliminationOrder(
+			EliminationOrder.Heuristic heuristic) {
+		return eliminationOrders.computeIfAbsent(heuristic,
+				h -> new EliminationOrder(this, h));
+	}
+
 	/**
 	 * Assuming a particular query P(queryVars|evidence) or U(queryVars|evidence) on
 	 * the provided Bayesian network, determines which nodes is relevant for the
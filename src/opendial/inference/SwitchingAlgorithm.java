@@ -24,6 +24,14 @@
 package opendial.inference;
 
 import java.util.logging.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import opendial.bn.BNetwork;
 import opendial.bn.distribs.ContinuousDistribution;
@@ -32,6 +40,7 @@ import opendial.bn.distribs.UtilityTable;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.inference.approximate.SamplingAlgorithm;
+import opendial.inference.exact.EliminationOrder;
 import opendial.inference.exact.VariableElimination;
 
 /**
@@ -40,16 +49,24 @@ import opendial.inference.exact.VariableElimination;
  * query.
  * 
  * <p>
- * The switching mechanism is defined via two thresholds:
+ * If the Bayesian network contains a continuous distribution, or if the branching
+ * factor of a node exceeds a given threshold, the selected algorithm is always
+ * likelihood weighting. In the remaining cases, the selection relies on a cost
+ * model that predicts the running time of the two algorithms:
  * <ul>
- * <li>one threshold on the maximum branching factor of the network
- * <li>one threshold on the maximum number of combination of values in a node factor
+ * <li>the cost of exact inference is estimated from the total size of the factors
+ * created along the elimination order of the query
+ * <li>the cost of likelihood weighting is estimated from the number of samples,
+ * the number of nodes to sample and the number of evidence nodes to weight
  * </ul>
  * 
  * <p>
- * If one of these threshold is exceeded or if the Bayesian network contains a
- * continuous distribution, the selected algorithm will be likelihood weighting.
- * Variable elimination is selected in the remaining cases.
+ * The algorithm with the lowest predicted cost is selected. If the two predicted
+ * costs are close to one another and the race mode is activated, both algorithms
+ * are run concurrently, and the result of the first one to terminate is returned
+ * (the other one being cancelled). If the cost model is deactivated, the selection
+ * relies on two thresholds (on the branching factor and on the number of
+ * combination of values in a node factor).
  * 
  * @author Pierre Lison (plison@ifi.uio.no)
  */
@@ -61,14 +78,51 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 	// maximum branching factor (in-degree) for VE
 	public static int MAX_BRANCHING_FACTOR = 10;
 
-	// maximum number of values to use VE
+	// maximum number of values to use VE (if the cost model is deactivated)
 	public static int MAX_NBVALUES = 5000;
 
-	VariableElimination ve;
+	// whether to select the algorithm according to the predicted costs
+	public static boolean COST_MODEL = true;
+
+	// estimated times (in nanoseconds) to compute one row of a factor in VE, and
+	// to sample or weight (for the evidence) a node in likelihood weighting. The
+	// default values were measured on one processor, with discrete networks of 8
+	// nodes with 3 to 15 values each (where VE took 6 to 20 microseconds per
+	// factor row, and likelihood weighting 300 to 950 nanoseconds per node and
+	// sample, evidence included). They can be recalibrated from the actual running
+	// times logged at the FINE level.
+	public static double VE_COST_PER_ROW = 8000;
+	public static double LW_COST_PER_NODE = 500;
+	public static double LW_COST_PER_EVIDENCE = 500;
+
+	// whether to run both algorithms concurrently on borderline queries
+	public static boolean RACE_MODE = false;
+
+	// maximum ratio between the two predicted costs for a query to be borderline
+	public static double BORDERLINE_RATIO = 2.0;
+
+	// thread pool for running the algorithms concurrently
+	static ExecutorService racePool = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "inference race");
+		t.setDaemon(true);
+		return t;
+	});
+
+	InferenceAlgorithm exact;
 	SamplingAlgorithm lw;
 
 	public SwitchingAlgorithm() {
-		this.ve = new VariableElimination();
+		this(new VariableElimination());
+	}
+
+	/**
+	 * Creates a switching algorithm with the given algorithm for exact inference
+	 * (e.g. a junction tree that is reused across queries).
+	 * 
+	 * @param exact the exact inference algorithm
+	 */
+	public SwitchingAlgorithm(InferenceAlgorithm exact) {
+		this.exact = exact;
 		this.lw = new SamplingAlgorithm();
 	}
 
@@ -81,8 +135,7 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 	 */
 	@Override
 	public MultivariateDistribution queryProb(Query.ProbQuery query) {
-		InferenceAlgorithm algo = selectBestAlgorithm(query);
-		return algo.queryProb(query);
+		return run(query, a -> a.queryProb(query));
 	}
 
 	/**
@@ -94,8 +147,7 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 	 */
 	@Override
 	public UtilityTable queryUtil(Query.UtilQuery query) {
-		InferenceAlgorithm algo = selectBestAlgorithm(query);
-		return algo.queryUtil(query);
+		return run(query, a -> a.queryUtil(query));
 	}
 
 	/**
@@ -121,7 +173,137 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 		return result;
 	}
 
+	/**
+	 * Selects the best algorithm for the query (exact inference or likelihood
+	 * weighting).
+	 * 
+	 * @param query the query
+	 * @return the selected algorithm
+	 */
 	public InferenceAlgorithm selectBestAlgorithm(Query query) {
+		if (!COST_MODEL) {
+			return selectWithThresholds(query);
+		}
+		return estimateCosts(query).isExactCheaper() ? exact : lw;
+	}
+
+	/**
+	 * Predicts the running time of the two algorithms for the query.
+	 * 
+	 * @param query the query
+	 * @return the predicted costs
+	 */
+	public CostEstimate estimateCosts(Query query) {
+
+		// predicted time for likelihood weighting (bounded by the time limit)
+		List<BNode> nodes = query.getFilteredSortedNodes();
+		int nbEvidence = query.getEvidence().size();
+		double samplingCost = lw.nbSamples * ((nodes.size() - nbEvidence)
+				* LW_COST_PER_NODE + nbEvidence * LW_COST_PER_EVIDENCE);
+		samplingCost = Math.min(samplingCost, lw.getMaxSamplingTime() * 1000000.0);
+
+		// exact inference is excluded for continuous or highly connected nodes
+		for (BNode node : nodes) {
+			if (node.getInputNodeIds().size() > MAX_BRANCHING_FACTOR
+					|| (node instanceof ChanceNode && ((ChanceNode) node)
+							.getDistrib() instanceof ContinuousDistribution)) {
+				return new CostEstimate(Double.POSITIVE_INFINITY, samplingCost);
+			}
+		}
+
+		// predicted time for exact inference (the elimination order is stored in
+		// the query, and reused by variable elimination)
+		EliminationOrder order = (exact instanceof VariableElimination)
+				? ((VariableElimination) exact).getEliminationOrder(query)
+				: query.getEliminationOrder(
+						EliminationOrder.Heuristic.WEIGHTED_MIN_FILL);
+		double exactCost = order.getTotalFactorSize() * VE_COST_PER_ROW;
+		return new CostEstimate(exactCost, samplingCost);
+	}
+
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
+	/**
+	 * Runs the inference task with the best algorithm for the query (or with both
+	 * algorithms if the query is borderline and the race mode is activated), and
+	 * logs the predicted and actual running times.
+	 * 
+	 * @param query the query
+	 * @param task the inference task to run
+	 * @return the inference result
+	 */
+	private <T> T run(Query query, Function<InferenceAlgorithm, T> task) {
+		if (!COST_MODEL) {
+			return task.apply(selectWithThresholds(query));
+		}
+		CostEstimate estimate = estimateCosts(query);
+		if (RACE_MODE && estimate.isBorderline()) {
+			return race(task, estimate);
+		}
+		InferenceAlgorithm algo = estimate.isExactCheaper() ? exact : lw;
+		long startTime = System.nanoTime();
+		T result = task.apply(algo);
+		log.fine(algo.getClass().getSimpleName() + " (" + estimate
+				+ "): actual time " + toMillis(System.nanoTime() - startTime));
+		return result;
+	}
+
+	/**
+	 * Runs the inference task with both algorithms concurrently, and returns the
+	 * result of the first algorithm that terminates successfully. The other
+	 * algorithm is cancelled (by interrupting its thread).
+	 * 
+	 * @param task the inference task to run
+	 * @param estimate the predicted costs
+	 * @return the inference result
+	 */
+	private <T> T race(Function<InferenceAlgorithm, T> task,
+			CostEstimate estimate) {
+		ExecutorCompletionService<T> service =
+				new ExecutorCompletionService<T>(racePool);
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		InferenceAlgorithm[] algos = { exact, lw };
+		long startTime = System.nanoTime();
+		for (InferenceAlgorithm algo : algos) {
+			futures.add(service.submit(() -> task.apply(algo)));
+		}
+		try {
+			Throwable error = null;
+			for (int i = 0; i < algos.length; i++) {
+				Future<T> future = service.take();
+				try {
+					T result = future.get();
+					InferenceAlgorithm winner = algos[futures.indexOf(future)];
+					log.fine(winner.getClass().getSimpleName() + " won the race ("
+							+ estimate + "): actual time "
+							+ toMillis(System.nanoTime() - startTime));
+					return result;
+				}
+				catch (ExecutionException e) {
+					error = e.getCause();
+				}
+			}
+			throw new RuntimeException("inference failed: " + error);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("inference interrupted");
+		}
+		finally {
+			futures.forEach(f -> f.cancel(true));
+		}
+	}
+
+	/**
+	 * Selects the algorithm according to the thresholds on the branching factor and
+	 * on the number of values in the node factors.
+	 * 
+	 * @param query the query
+	 * @return the selected algorithm
+	 */
+	private InferenceAlgorithm selectWithThresholds(Query query) {
 
 		for (BNode node : query.getFilteredSortedNodes()) {
 			if (node.getInputNodeIds().size() > MAX_BRANCHING_FACTOR) {
@@ -141,7 +323,88 @@ public class SwitchingAlgorithm implements InferenceAlgorithm {
 				}
 			}
 		}
-		return ve;
+		return exact;
+	}
+
+	/**
+	 * Returns a string representation of the duration (given in nanoseconds) in
+	 * milliseconds
+	 * 
+	 * @param nanos the duration in nanoseconds
+	 * @return the string representation in milliseconds
+	 */
+	private static String toMillis(double nanos) {
+		return String.format("%.3f ms", nanos / 1000000.0);
+	}
+
+	/**
+	 * Predicted running times (in nanoseconds) of exact inference and likelihood
+	 * weighting for a given query. The predicted time for exact inference is
+	 * infinite if the query cannot be handled by exact inference.
+	 */
+	public static final class CostEstimate {
+
+		final double exactCost;
+		final double samplingCost;
+
+		/**
+		 * Creates a new cost estimate
+		 * 
+		 * @param exactCost the predicted time for exact inference
+		 * @param samplingCost the predicted time for likelihood weighting
+		 */
+		CostEstimate(double exactCost, double samplingCost) {
+			this.exactCost = exactCost;
+			this.samplingCost = samplingCost;
+		}
+
+		/**
+		 * Returns the predicted time for exact inference (in nanoseconds)
+		 * 
+		 * @return the predicted time for exact inference
+		 */
+		public double getExactCost() {
+			return exactCost;
+		}
+
+		/**
+		 * Returns the predicted time for likelihood weighting (in nanoseconds)
+		 * 
+		 * @return the predicted time for likelihood weighting
+		 */
+		public double getSamplingCost() {
+			return samplingCost;
+		}
+
+		/**
+		 * Returns true if exact inference is predicted to be faster than likelihood
+		 * weighting, and false otherwise
+		 * 
+		 * @return true if exact inference is cheaper, false otherwise
+		 */
+		public boolean isExactCheaper() {
+			return exactCost <= samplingCost;
+		}
+
+		/**
+		 * Returns true if the two predicted costs differ by less than
+		 * BORDERLINE_RATIO, and false otherwise
+		 * 
+		 * @return true if the query is borderline, false otherwise
+		 */
+		public boolean isBorderline() {
+			return Math.max(exactCost, samplingCost) <= BORDERLINE_RATIO
+					* Math.min(exactCost, samplingCost);
+		}
+
+		/**
+		 * Returns a string representation of the predicted costs
+		 */
+		@Override
+		public String toString() {
+			return "predicted time: " + toMillis(exactCost) + " for exact inference, "
+					+ toMillis(samplingCost) + " for sampling";
+		}
 	}
 
 }
@@ -0,0 +1,196 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.approximate;
+
+import java.util.logging.*;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Interval collection that samples its objects with an alias table (using the
+ * method of Walker and Vose). Creating the alias table requires a linear pass over
+ * the intervals, but each subsequent draw only requires one random number and one
+ * array lookup (instead of a binary search over the cumulative probabilities).
+ * This representation is therefore preferable for distributions that are sampled
+ * repeatedly.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ * @param <T> the type of the objects in the intervals
+ */
+public class AliasIntervals<T> extends Intervals<T> {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// the objects in the intervals
+	final T[] objects;
+
+	// the probability of selecting the object of each bucket (instead of its
+	// alias)
+	final double[] probs;
+
+	// the alias (index of the other object) for each bucket
+	final int[] aliases;
+
+	/**
+	 * Creates a new alias table with a set of (content,probability) pairs
+	 * 
+	 * @param table the tables from which to create the alias table
+	 */
+	public AliasIntervals(Map<T, Double> table) {
+		super(table);
+		objects = getObjects();
+		probs = new double[objects.length];
+		aliases = new int[objects.length];
+		fillTable(getWeights(), probs, aliases);
+	}
+
+	/**
+	 * Creates a new alias table with a collection of values and a function
+	 * specifying the probability of each value
+	 * 
+	 * @param content the collection of content objects
+	 * @param probs the function associating a weight to each object
+	 */
+	public AliasIntervals(Collection<T> content, Function<T, Double> probs) {
+		super(content, probs);
+		objects = getObjects();
+		this.probs = new double[objects.length];
+		aliases = new int[objects.length];
+		fillTable(getWeights(), this.probs, aliases);
+	}
+
+	/**
+	 * Samples an object from the alias table.
+	 * 
+	 * @return the sampled object
+	 */
+	@Override
+	public T sample() {
+		if (objects.length == 0) {
+			throw new RuntimeException("could not sample: empty interval");
+		}
+		return objects[sampleIndex(probs, aliases)];
+	}
+
+	/**
+	 * Fills the probabilities and aliases of each bucket given the weights of the
+	 * objects, by pairing each bucket with a probability mass below average with a
+	 * bucket with a mass above average.
+	 * 
+	 * @param weights the (unnormalised) weights of the objects
+	 * @param probs the array of bucket probabilities to fill
+	 * @param aliases the array of bucket aliases to fill
+	 */
+	static void fillTable(double[] weights, double[] probs, int[] aliases) {
+		int n = weights.length;
+		double total = 0.0;
+		for (int i = 0; i < n; i++) {
+			total += weights[i];
+		}
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int nbSmall = 0;
+		int nbLarge = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / total;
+			if (scaled[i] < 1.0) {
+				small[nbSmall++] = i;
+			}
+			else {
+				large[nbLarge++] = i;
+			}
+		}
+		while (nbSmall > 0 && nbLarge > 0) {
+			int s = small[--nbSmall];
+			int l = large[--nbLarge];
+			probs[s] = scaled[s];
+			aliases[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+			if (scaled[l] < 1.0) {
+				small[nbSmall++] = l;
+			}
+			else {
+				large[nbLarge++] = l;
+			}
+		}
+
+		// the remaining buckets (up to rounding errors) are full
+		while (nbLarge > 0) {
+			int l = large[--nbLarge];
+			probs[l] = 1.0;
+			aliases[l] = l;
+		}
+		while (nbSmall > 0) {
+			int s = small[--nbSmall];
+			probs[s] = 1.0;
+			aliases[s] = s;
+		}
+	}
+
+	/**
+	 * Samples an index from the alias table defined by the bucket probabilities and
+	 * aliases
+	 * 
+	 * @param probs the bucket probabilities
+	 * @param aliases the bucket aliases
+	 * @return the sampled index
+	 */
+	static int sampleIndex(double[] probs, int[] aliases) {
+		double rand = SamplingContext.nextDouble() * probs.length;
+		int bucket = (int) rand;
+		return (rand - bucket < probs[bucket]) ? bucket : aliases[bucket];
+	}
+
+	/**
+	 * Returns the weights (interval lengths) of the objects
+	 * 
+	 * @return the array of weights
+	 */
+	private double[] getWeights() {
+		double[] weights = new double[intervals.length];
+		for (int i = 0; i < intervals.length; i++) {
+			weights[i] = intervals[i].end - intervals[i].start;
+		}
+		return weights;
+	}
+
+	/**
+	 * Returns the objects in the intervals
+	 * 
+	 * @return the array of objects
+	 */
+	@SuppressWarnings("unchecked")
+	private T[] getObjects() {
+		T[] result = (T[]) new Object[intervals.length];
+		for (int i = 0; i < intervals.length; i++) {
+			result[i] = intervals[i].getObject();
+		}
+		return result;
+	}
+
+}
@@ -27,7 +27,6 @@ import java.util.logging.*;
 
 import java.util.Collection;
 import java.util.Map;
-import java.util.Random;
 import java.util.function.Function;
 
 /**
@@ -50,9 +49,6 @@ public class Intervals<T> {
 	// the intervals
 	final Interval<T>[] intervals;
 
-	// sampler for the interval collection
-	final static Random sampler = new Random();
-
 	// total probability for the table
 	final double totalProb;
 
@@ -126,7 +122,7 @@ public class Intervals<T> {
 			throw new RuntimeException("could not sample: empty interval");
 		}
 
-		double rand = sampler.nextDouble() * totalProb;
+		double rand = SamplingContext.nextDouble() * totalProb;
 
 		int min = 0;
 		int max = intervals.length;
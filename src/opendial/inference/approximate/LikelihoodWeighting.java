@@ -3,12 +3,15 @@ package opendial.inference.approximate;
 import java.util.logging.*;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import opendial.bn.distribs.ContinuousDistribution;
 import opendial.bn.distribs.ProbDistribution;
@@ -16,6 +19,7 @@ import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
+import opendial.bn.values.DoubleVal;
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
 import opendial.inference.Query;
@@ -35,8 +39,19 @@ public class LikelihoodWeighting {
 
 	public static double WEIGHT_THRESHOLD = 0.0001f;
 
-	// the stack of weighted samples which have been collected so far
-	Stack<Sample> samples = new Stack<Sample>();
+	// number of samples per batch (in adaptive mode)
+	public static int BATCH_SIZE = 250;
+
+	// minimum effective sample size before checking convergence (in adaptive
+	// mode)
+	public static double MIN_EFFECTIVE_SIZE = 100;
+
+	// tolerance on the change in the marginals of the query variables (0 to
+	// always collect nbSamples samples)
+	double tolerance;
+
+	// the weighted samples which have been collected so far
+	SampleStore samples = new SampleStore();
 
 	// the query
 	Query query;
@@ -49,6 +64,24 @@ public class LikelihoodWeighting {
 	// termination status
 	boolean isTerminated = false;
 
+	// thread that started the sampling (sampling stops if it is interrupted)
+	final Thread owner = Thread.currentThread();
+
+	// weighted counts for the values of the query variables (or weighted sums
+	// for the continuous values), and sum of the (squared) weights
+	Map<String, Map<Value, Double>> counts =
+			new HashMap<String, Map<Value, Double>>();
+	Map<String, Double> sums = new HashMap<String, Double>();
+	double totalWeight = 0.0;
+	double totalSquaredWeight = 0.0;
+
+	// weighted sums of the utilities and of the weights for each assignment of
+	// the query variables (only used for utility queries)
+	Map<Assignment, double[]> utilities = new HashMap<Assignment, double[]>();
+
+	// convergence statistics
+	SamplingStatistics stats;
+
 	// scheduled thread pool to terminate sampling once the time limit is
 	// reached
 	static ScheduledExecutorService service = Executors.newScheduledThreadPool(2);
@@ -66,26 +99,64 @@ public class LikelihoodWeighting {
 	 * @param maxSamplingTime maximum sampling time (in milliseconds)
 	 */
 	public LikelihoodWeighting(Query query, int nbSamples, long maxSamplingTime) {
+		this(query, nbSamples, maxSamplingTime, 0.0);
+	}
+
+	/**
+	 * Creates a new sampling query with the given arguments and starts sampling
+	 * (using parallel streams). If the tolerance is positive, the samples are
+	 * collected in batches, and the sampling stops as soon as the effective sample
+	 * size exceeds MIN_EFFECTIVE_SIZE and the marginals of the query variables
+	 * change by less than the tolerance over the last batch. For utility queries,
+	 * the expected utility of each assignment of the query variables must also
+	 * change by less than the tolerance (relative to its magnitude).
+	 * 
+	 * @param query the query to answer
+	 * @param nbSamples the maximum number of samples to collect
+	 * @param maxSamplingTime maximum sampling time (in milliseconds)
+	 * @param tolerance the tolerance on the change of the marginals
+	 */
+	public LikelihoodWeighting(Query query, int nbSamples, long maxSamplingTime,
+			double tolerance) {
 		this.query = query;
 		this.evidence = query.getEvidence();
 		this.queryVars = query.getQueryVars();
 
 		this.nbSamples = nbSamples;
+		this.tolerance = tolerance;
 		sortedNodes = query.getFilteredSortedNodes();
 		Collections.reverse(sortedNodes);
 		service.schedule(() -> isTerminated = true, maxSamplingTime,
 				TimeUnit.MILLISECONDS);
-		Stream.generate(() -> this)
-				// creates infinite stream
-				.parallel()
-				// parallelise
-				.map(p -> p.sample())
-				// generate a sample
-				.limit(nbSamples)
-				// stop when nbSamples are collected
-				.filter(s -> s.getWeight() > WEIGHT_THRESHOLD)
-				.filter(s -> !s.isEmpty()) // discard empty samples
-				.forEach(s -> samples.add(s)); // makes a list of samples
+
+		long startTime = System.currentTimeMillis();
+		long seed = SamplingContext.nextLong();
+		int batchSize = (tolerance > 0) ? BATCH_SIZE : nbSamples;
+		int nbDrawn = 0;
+		int nbBatches = 0;
+		double change = Double.POSITIVE_INFINITY;
+		boolean converged = false;
+		while (nbDrawn < nbSamples && !isTerminated && !converged
+				&& !owner.isInterrupted()) {
+			int end = Math.min(nbDrawn + batchSize, nbSamples);
+			List<Sample> batch = IntStream.range(nbDrawn, end)
+					// creates the stream of sample indices
+					.parallel()
+					// parallelise
+					.mapToObj(i -> sample(seed + i))
+					// generate a sample (with a generator seeded by its index)
+					.filter(s -> s.getWeight() > WEIGHT_THRESHOLD)
+					.filter(s -> !s.isEmpty()) // discard empty samples
+					.collect(Collectors.toList()); // makes a list of samples
+			nbDrawn = end;
+			nbBatches++;
+			change = addBatch(batch);
+			converged = tolerance > 0 && change < tolerance
+					&& getEffectiveSampleSize() >= MIN_EFFECTIVE_SIZE;
+		}
+		stats = new SamplingStatistics(nbDrawn, samples.size(), nbBatches,
+				getEffectiveSampleSize(), change, converged,
+				System.currentTimeMillis() - startTime);
 	}
 
 	/**
@@ -98,28 +169,53 @@ public class LikelihoodWeighting {
 	}
 
 	/**
-	 * Returns the collected samples
+	 * Returns the convergence statistics for the sampling process
+	 * 
+	 * @return the sampling statistics
+	 */
+	public SamplingStatistics getStatistics() {
+		return stats;
+	}
+
+	/**
+	 * Returns the effective sample size of the collected samples, defined as (sum
+	 * of weights)^2 / (sum of squared weights)
+	 * 
+	 * @return the effective sample size
+	 */
+	public double getEffectiveSampleSize() {
+		return (totalSquaredWeight > 0)
+				? totalWeight * totalWeight / totalSquaredWeight : 0.0;
+	}
+
+	/**
+	 * Returns the collected samples, after redrawing them according to their weight
 	 * 
 	 * @return the collected samples
 	 */
-	public List<Sample> getSamples() {
+	public SampleStore getSamples() {
 		redrawSamples();
 		return samples;
 	}
 
 	/**
 	 * Runs the sample collection procedure until termination (either due to a
-	 * time-out or the collection of a number of samples = nbSamples). The method
+	 * time-out, the interruption of the thread that started the sampling, or the
+	 * collection of a number of samples = nbSamples). The method
 	 * loops until terminate() is called, or enough samples have been collected.
+	 * The sample is drawn with a random number generator created from the seed,
+	 * such that the samples do not depend on the thread collecting them.
 	 * 
+	 * @param seed the seed for the random number generator
 	 * @return the resulting sample
 	 * 
 	 */
-	protected Sample sample() {
+	protected Sample sample(long seed) {
 		Sample sample = new Sample();
-		if (isTerminated) {
+		if (isTerminated || owner.isInterrupted()) {
 			return sample;
 		}
+		SplittableRandom previous = SamplingContext.reseed(seed);
 		try {
 			for (BNode n : sortedNodes) {
 				String id = n.getId();
@@ -150,6 +246,9 @@ public class LikelihoodWeighting {
 			log.warning("exception caught: " + e);
 			e.printStackTrace();
 		}
+		finally {
+			SamplingContext.restore(previous);
+		}
 		return sample;
 	}
 
@@ -157,6 +256,107 @@ public class LikelihoodWeighting {
 	// PRIVATE METHODS
 	// ===================================
 
+	/**
+	 * Adds a batch of samples to the collected samples, and returns the maximum
+	 * change in the (weighted) marginals of the query variables caused by the
+	 * batch. For continuous variables, the change is computed on the mean value
+	 * (relative to its magnitude). For utility queries, the change in the expected
+	 * utility of each assignment of the query variables (relative to its
+	 * magnitude) is also included. The change is infinite for the first batch,
+	 * and is not computed (i.e. infinite) if the tolerance is not positive.
+	 * 
+	 * @param batch the batch of samples
+	 * @return the maximum change in the marginals
+	 */
+	private double addBatch(List<Sample> batch) {
+
+		// without tolerance, only the weights are recorded
+		if (tolerance <= 0) {
+			for (Sample s : batch) {
+				totalWeight += s.getWeight();
+				totalSquaredWeight += s.getWeight() * s.getWeight();
+				samples.add(s);
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double oldTotal = totalWeight;
+		Map<String, Map<Value, Double>> oldCounts =
+				new HashMap<String, Map<Value, Double>>();
+		counts.keySet().stream().forEach(
+				v -> oldCounts.put(v, new HashMap<Value, Double>(counts.get(v))));
+		Map<String, Double> oldSums = new HashMap<String, Double>(sums);
+		boolean isUtilQuery = (query instanceof Query.UtilQuery);
+		Map<Assignment, Double> oldUtils = new HashMap<Assignment, Double>();
+		utilities.keySet().stream()
+				.forEach(a -> oldUtils.put(a, getExpectedUtility(a)));
+
+		for (Sample s : batch) {
+			double weight = s.getWeight();
+			if (isUtilQuery) {
+				double[] util = utilities.computeIfAbsent(new Assignment(s),
+						a -> new double[2]);
+				util[0] += weight * s.getUtility();
+				util[1] += weight;
+			}
+			for (String var : s.getVariables()) {
+				Value value = s.getValue(var);
+				if (value instanceof DoubleVal) {
+					sums.merge(var, weight * ((DoubleVal) value).getDouble(),
+							Double::sum);
+				}
+				else {
+					counts.computeIfAbsent(var, v -> new HashMap<Value, Double>())
+							.merge(value, weight, Double::sum);
+				}
+			}
+			totalWeight += weight;
+			totalSquaredWeight += weight * weight;
+			samples.add(s);
+		}
+		if (oldTotal == 0.0 || totalWeight == 0.0) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double change = 0.0;
+		for (String var : counts.keySet()) {
+			Map<Value, Double> old =
+					oldCounts.getOrDefault(var, new HashMap<Value, Double>());
+			for (Value value : counts.get(var).keySet()) {
+				double oldProb = old.getOrDefault(value, 0.0) / oldTotal;
+				double newProb = counts.get(var).get(value) / totalWeight;
+				change = Math.max(change, Math.abs(newProb - oldProb));
+			}
+		}
+		for (String var : sums.keySet()) {
+			double oldMean = oldSums.getOrDefault(var, 0.0) / oldTotal;
+			double newMean = sums.get(var) / totalWeight;
+			change = Math.max(change,
+					Math.abs(newMean - oldMean) / Math.max(1.0, Math.abs(newMean)));
+		}
+		for (Assignment a : utilities.keySet()) {
+			if (!oldUtils.containsKey(a)) {
+				return Double.POSITIVE_INFINITY;
+			}
+			double newUtil = getExpectedUtility(a);
+			change = Math.max(change, Math.abs(newUtil - oldUtils.get(a))
+					/ Math.max(1.0, Math.abs(newUtil)));
+		}
+		return change;
+	}
+
+	/**
+	 * Returns the (weighted) expected utility of the assignment of the query
+	 * variables, given the samples collected so far.
+	 * 
+	 * @param a the assignment of the query variables
+	 * @return the expected utility
+	 */
+	private double getExpectedUtility(Assignment a) {
+		double[] util = utilities.get(a);
+		return (util[1] > 0.0) ? util[0] / util[1] : 0.0;
+	}
+
 	/**
 	 * Samples the given chance node and add it to the sample. If the variable is
 	 * part of the evidence, updates the weight.
@@ -211,26 +411,10 @@ public class LikelihoodWeighting {
 
 	/**
 	 * Redraw the samples according to their weight. The number of redrawn samples is
-	 * the same as the one given as argument.
-	 * 
-	 * @param samples the initial samples (with their weight)
-	 * @return the redrawn samples given their weight redrawn.
+	 * the same as the number of collected samples.
 	 */
 	private void redrawSamples() {
-		try {
-			Intervals<Sample> intervals =
-					new Intervals<Sample>(samples, s -> s.getWeight());
-			Stack<Sample> newSamples = new Stack<Sample>();
-			int sampleSize = samples.size();
-			for (int j = 0; j < sampleSize; j++) {
-				newSamples.add(intervals.sample());
-			}
-			samples = newSamples;
-		}
-		catch (RuntimeException e) {
-			log.warning("could not redraw samples: " + e);
-			e.printStackTrace();
-		}
+		samples = samples.resample();
 	}
 
 }
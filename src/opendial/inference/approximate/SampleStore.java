@@ -0,0 +1,683 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.approximate;
+
+import java.util.logging.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
+import opendial.datastructs.Assignment;
+
+/**
+ * Columnar storage for a collection of (weighted) samples. Instead of storing each
+ * sample as a separate assignment, the store associates each variable with an
+ * array of value indices (one per sample), the values themselves being stored
+ * once in a dictionary for the variable. The logarithmic weights and utilities of
+ * the samples are stored in two flat arrays.
+ * 
+ * <p>
+ * The samples can be accessed by row index, and converted back into assignments
+ * when necessary.
+ * 
+ * <p>
+ * When the samples are redrawn, the rows that are copies of the same sample are
+ * linked to one another, and share their weight: a weight added to one copy is
+ * added to all of them (as for a collection containing several references to the
+ * same sample).
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class SampleStore {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// the variables in the store, mapped to their column
+	final Map<String, Column> columns;
+
+	// the logarithmic weights of the samples
+	double[] logWeights;
+
+	// the utilities of the samples
+	double[] utilities;
+
+	// the number of samples
+	int size;
+
+	// for each row, the next row that is a copy of the same sample (forming a
+	// cycle over the copies), or null if no rows are linked
+	int[] copies;
+
+	// ===================================
+	// CONSTRUCTION METHODS
+	// ===================================
+
+	/**
+	 * Creates a new, empty sample store
+	 */
+	public SampleStore() {
+		columns = new LinkedHashMap<String, Column>();
+		logWeights = new double[16];
+		utilities = new double[16];
+	}
+
+	/**
+	 * Creates a sample store with the given samples
+	 * 
+	 * @param samples the samples
+	 */
+	public SampleStore(Collection<? extends Assignment> samples) {
+		this();
+		for (Assignment sample : samples) {
+			add(sample);
+		}
+	}
+
+	/**
+	 * Creates a copy of the sample store
+	 * 
+	 * @param store the store to copy
+	 */
+	public SampleStore(SampleStore store) {
+		columns = new LinkedHashMap<String, Column>();
+		for (String var : store.columns.keySet()) {
+			columns.put(var, new Column(store.columns.get(var)));
+		}
+		logWeights = Arrays.copyOf(store.logWeights, store.logWeights.length);
+		utilities = Arrays.copyOf(store.utilities, store.utilities.length);
+		size = store.size;
+		if (store.copies != null) {
+			copies = Arrays.copyOf(store.copies, store.copies.length);
+		}
+	}
+
+	/**
+	 * Adds a new sample to the store. If the assignment is a weighted sample, its
+	 * weight and utility are also stored.
+	 * 
+	 * @param sample the sample to add
+	 */
+	public void add(Assignment sample) {
+		ensureCapacity(size + 1);
+		for (Column column : columns.values()) {
+			column.indices[size] = -1;
+		}
+		for (String var : sample.getVariables()) {
+			if (!columns.containsKey(var)) {
+				columns.put(var, new Column(logWeights.length));
+			}
+			columns.get(var).set(size, sample.getValue(var));
+		}
+		if (sample instanceof Sample) {
+			logWeights[size] = ((Sample) sample).logWeight;
+			utilities[size] = ((Sample) sample).utility;
+		}
+		else {
+			logWeights[size] = 0.0;
+			utilities[size] = 0.0;
+		}
+		if (copies != null) {
+			copies[size] = size;
+		}
+		size++;
+	}
+
+	/**
+	 * Adds all samples of the other store to the current store (with their weight
+	 * and utility)
+	 * 
+	 * @param store the store whose samples must be added
+	 */
+	public void addAll(SampleStore store) {
+		ensureCapacity(size + store.size);
+		for (String var : store.columns.keySet()) {
+			if (!columns.containsKey(var)) {
+				Column column = new Column(logWeights.length);
+				column.values.addAll(store.columns.get(var).values);
+				column.valueIndices.putAll(store.columns.get(var).valueIndices);
+				columns.put(var, column);
+			}
+		}
+		for (String var : columns.keySet()) {
+			Column column = columns.get(var);
+			Column other = store.columns.get(var);
+			if (other == null) {
+				Arrays.fill(column.indices, size, size + store.size, -1);
+				continue;
+			}
+			// mapping between the value indices of the two stores
+			int[] mapping = new int[other.values.size()];
+			for (int i = 0; i < mapping.length; i++) {
+				mapping[i] = column.getIndex(other.values.get(i));
+			}
+			for (int row = 0; row < store.size; row++) {
+				int index = other.indices[row];
+				column.indices[size + row] = (index >= 0) ? mapping[index] : -1;
+			}
+		}
+		System.arraycopy(store.logWeights, 0, logWeights, size, store.size);
+		System.arraycopy(store.utilities, 0, utilities, size, store.size);
+		if (copies != null || store.copies != null) {
+			if (copies == null) {
+				copies = new int[logWeights.length];
+				for (int row = 0; row < size; row++) {
+					copies[row] = row;
+				}
+			}
+			for (int row = 0; row < store.size; row++) {
+				copies[size + row] =
+						size + ((store.copies != null) ? store.copies[row] : row);
+			}
+		}
+		size += store.size;
+	}
+
+	/**
+	 * Adds the logarithmic weight to the sample at the given row. If the row is a
+	 * copy of a redrawn sample, the weight is added to all copies of the sample.
+	 * 
+	 * @param row the row index
+	 * @param logWeight the logarithmic weight to add
+	 */
+	public void addLogWeight(int row, double logWeight) {
+		if (copies == null) {
+			logWeights[row] += logWeight;
+			return;
+		}
+		int copy = row;
+		do {
+			logWeights[copy] += logWeight;
+			copy = copies[copy];
+		}
+		while (copy != row);
+	}
+
+	/**
+	 * Removes the variable from the samples
+	 * 
+	 * @param var the variable to remove
+	 */
+	public void removeVariable(String var) {
+		columns.remove(var);
+	}
+
+	/**
+	 * Replaces the variable label by a new one
+	 * 
+	 * @param oldVar the old variable label
+	 * @param newVar the new variable label
+	 */
+	public void renameVariable(String oldVar, String newVar) {
+		Column column = columns.remove(oldVar);
+		if (column != null) {
+			columns.put(newVar, column);
+		}
+	}
+
+	/**
+	 * Retains only the samples whose row index satisfies the predicate. The links
+	 * between the copies of redrawn samples are removed.
+	 * 
+	 * @param predicate the predicate on the row indices
+	 * @return true if samples were removed, false otherwise
+	 */
+	public boolean retainRows(IntPredicate predicate) {
+		int newSize = 0;
+		for (int row = 0; row < size; row++) {
+			if (predicate.test(row)) {
+				for (Column column : columns.values()) {
+					column.indices[newSize] = column.indices[row];
+				}
+				logWeights[newSize] = logWeights[row];
+				utilities[newSize] = utilities[row];
+				newSize++;
+			}
+		}
+		boolean changed = (newSize < size);
+		size = newSize;
+		copies = null;
+		return changed;
+	}
+
+	// ===================================
+	// GETTERS
+	// ===================================
+
+	/**
+	 * Returns the number of samples
+	 * 
+	 * @return the number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the store contains no sample, and false otherwise
+	 * 
+	 * @return true if the store is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the variables in the store
+	 * 
+	 * @return the variables
+	 */
+	public Set<String> getVariables() {
+		return columns.keySet();
+	}
+
+	/**
+	 * Returns the value of the variable in the sample at the given row (or a none
+	 * value if the variable is not defined in the sample)
+	 * 
+	 * @param row the row index
+	 * @param var the variable
+	 * @return the corresponding value
+	 */
+	public Value getValue(int row, String var) {
+		Column column = columns.get(var);
+		if (column == null || column.indices[row] < 0) {
+			return ValueFactory.none();
+		}
+		return column.values.get(column.indices[row]);
+	}
+
+	/**
+	 * Returns the distinct values of the variable in the samples
+	 * 
+	 * @param var the variable
+	 * @return the distinct values for the variable
+	 */
+	public List<Value> getValues(String var) {
+		Column column = columns.get(var);
+		return (column != null) ? column.values : new ArrayList<Value>();
+	}
+
+	/**
+	 * Returns the (exponentiated) weight of the sample at the given row
+	 * 
+	 * @param row the row index
+	 * @return the sample weight
+	 */
+	public double getWeight(int row) {
+		return Math.exp(logWeights[row]);
+	}
+
+	/**
+	 * Returns the utility of the sample at the given row
+	 * 
+	 * @param row the row index
+	 * @return the sample utility
+	 */
+	public double getUtility(int row) {
+		return utilities[row];
+	}
+
+	/**
+	 * Returns the sample at the given row, as a new assignment
+	 * 
+	 * @param row the row index
+	 * @return the corresponding assignment
+	 */
+	public Assignment getAssignment(int row) {
+		return getTrimmed(row, columns.keySet());
+	}
+
+	/**
+	 * Returns the sample at the given row, trimmed to the given variables
+	 * 
+	 * @param row the row index
+	 * @param vars the variables to retain
+	 * @return the corresponding assignment
+	 */
+	public Assignment getTrimmed(int row, Collection<String> vars) {
+		Assignment a = new Assignment();
+		for (String var : vars) {
+			Column column = columns.get(var);
+			if (column != null && column.indices[row] >= 0) {
+				a.addPair(var, column.values.get(column.indices[row]));
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Returns the sample at the given row, as a new weighted sample
+	 * 
+	 * @param row the row index
+	 * @return the corresponding sample
+	 */
+	public Sample getSample(int row) {
+		return new Sample(getAssignment(row), logWeights[row], utilities[row]);
+	}
+
+	/**
+	 * Returns the samples as a list of assignments
+	 * 
+	 * @return the list of assignments
+	 */
+	public List<Assignment> getAssignments() {
+		List<Assignment> assignments = new ArrayList<Assignment>(size);
+		for (int row = 0; row < size; row++) {
+			assignments.add(getAssignment(row));
+		}
+		return assignments;
+	}
+
+	/**
+	 * Returns the number of occurrences of each value of the variable in the
+	 * samples (excluding the samples where the variable is undefined)
+	 * 
+	 * @param var the variable
+	 * @return the counts for each value
+	 */
+	public Map<Value, Integer> getCounts(String var) {
+		Map<Value, Integer> counts = new LinkedHashMap<Value, Integer>();
+		Column column = columns.get(var);
+		if (column != null) {
+			int[] nbOccurrences = new int[column.values.size()];
+			for (int row = 0; row < size; row++) {
+				if (column.indices[row] >= 0) {
+					nbOccurrences[column.indices[row]]++;
+				}
+			}
+			for (int i = 0; i < nbOccurrences.length; i++) {
+				if (nbOccurrences[i] > 0) {
+					counts.put(column.values.get(i), nbOccurrences[i]);
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of occurrences of each combination of values for the
+	 * given variables in the samples
+	 * 
+	 * @param vars the variables
+	 * @return the counts for each assignment of values
+	 */
+	public Map<Assignment, Integer> getCounts(Collection<String> vars) {
+		List<String> varList = new ArrayList<String>(vars);
+		varList.retainAll(columns.keySet());
+		Column[] cols = new Column[varList.size()];
+		for (int i = 0; i < cols.length; i++) {
+			cols[i] = columns.get(varList.get(i));
+		}
+
+		// counts the combinations of value indices
+		Map<IndexKey, Integer> keyCounts = new LinkedHashMap<IndexKey, Integer>();
+		for (int row = 0; row < size; row++) {
+			int[] key = new int[cols.length];
+			for (int i = 0; i < cols.length; i++) {
+				key[i] = cols[i].indices[row];
+			}
+			keyCounts.merge(new IndexKey(key), 1, Integer::sum);
+		}
+
+		// and converts them into assignments
+		Map<Assignment, Integer> counts = new LinkedHashMap<Assignment, Integer>();
+		for (IndexKey key : keyCounts.keySet()) {
+			Assignment a = new Assignment();
+			for (int i = 0; i < cols.length; i++) {
+				if (key.indices[i] >= 0) {
+					a.addPair(varList.get(i), cols[i].values.get(key.indices[i]));
+				}
+			}
+			counts.merge(a, keyCounts.get(key), Integer::sum);
+		}
+		return counts;
+	}
+
+	// ===================================
+	// RESAMPLING
+	// ===================================
+
+	/**
+	 * Redraws the samples according to their weights, and returns the resulting
+	 * store, which has the same number of samples as the current one. The redrawn
+	 * samples keep their original weights and utilities, and the copies of the
+	 * same sample are linked to one another (see addLogWeight). The value indices
+	 * are copied from one store to the other, without creating any intermediary
+	 * assignment.
+	 * 
+	 * @return the redrawn samples
+	 */
+	public SampleStore resample() {
+		SampleStore result = new SampleStore();
+		if (size == 0) {
+			return result;
+		}
+		double[] weights = new double[size];
+		for (int row = 0; row < size; row++) {
+			weights[row] = Math.exp(logWeights[row]);
+		}
+		double[] probs = new double[size];
+		int[] aliases = new int[size];
+		AliasIntervals.fillTable(weights, probs, aliases);
+
+		result.ensureCapacity(size);
+		for (String var : columns.keySet()) {
+			Column column = columns.get(var);
+			result.columns.put(var,
+					new Column(new ArrayList<Value>(column.values),
+							new HashMap<Value, Integer>(column.valueIndices),
+							new int[result.logWeights.length]));
+		}
+		result.copies = new int[result.logWeights.length];
+		int[] firstCopies = new int[size];
+		Arrays.fill(firstCopies, -1);
+		for (int i = 0; i < size; i++) {
+			int row = AliasIntervals.sampleIndex(probs, aliases);
+			for (String var : columns.keySet()) {
+				result.columns.get(var).indices[i] = columns.get(var).indices[row];
+			}
+			result.utilities[i] = utilities[row];
+			result.logWeights[i] = logWeights[row];
+
+			// inserts the row in the cycle of copies of the sample
+			int first = firstCopies[row];
+			if (first < 0) {
+				firstCopies[row] = i;
+				result.copies[i] = i;
+			}
+			else {
+				result.copies[i] = result.copies[first];
+				result.copies[first] = i;
+			}
+		}
+		result.size = size;
+		return result;
+	}
+
+	/**
+	 * Returns a string representation of the store
+	 */
+	@Override
+	public String toString() {
+		return "sample store with " + size + " samples on " + columns.keySet();
+	}
+
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
+	/**
+	 * Ensures that the arrays of the store can contain the given number of samples
+	 * 
+	 * @param capacity the number of samples
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > logWeights.length) {
+			int newCapacity = Math.max(capacity, logWeights.length * 2);
+			logWeights = Arrays.copyOf(logWeights, newCapacity);
+			utilities = Arrays.copyOf(utilities, newCapacity);
+			if (copies != null) {
+				copies = Arrays.copyOf(copies, newCapacity);
+			}
+			for (Column column : columns.values()) {
+				column.grow(newCapacity);
+			}
+		}
+	}
+
+	/**
+	 * Column of value indices for a variable, together with the dictionary of
+	 * distinct values.
+	 */
+	static final class Column {
+
+		// the distinct values for the variable
+		final List<Value> values;
+
+		// the index of each value in the dictionary
+		final Map<Value, Integer> valueIndices;
+
+		// the value index for each sample (-1 if the variable is undefined)
+		int[] indices;
+
+		/**
+		 * Creates a new, empty column
+		 * 
+		 * @param capacity the initial capacity
+		 */
+		Column(int capacity) {
+			values = new ArrayList<Value>();
+			valueIndices = new HashMap<Value, Integer>();
+			indices = new int[capacity];
+			Arrays.fill(indices, -1);
+		}
+
+		/**
+		 * Creates a column with the given dictionary and value indices
+		 * 
+		 * @param values the distinct values
+		 * @param valueIndices the index of each value
+		 * @param indices the value indices for each sample
+		 */
+		Column(List<Value> values, Map<Value, Integer> valueIndices,
+				int[] indices) {
+			this.values = values;
+			this.valueIndices = valueIndices;
+			this.indices = indices;
+		}
+
+		/**
+		 * Creates a copy of the column
+		 * 
+		 * @param column the column to copy
+		 */
+		Column(Column column) {
+			values = new ArrayList<Value>(column.values);
+			valueIndices = new HashMap<Value, Integer>(column.valueIndices);
+			indices = Arrays.copyOf(column.indices, column.indices.length);
+		}
+
+		/**
+		 * Sets the value for the sample at the given row
+		 * 
+		 * @param row the row index
+		 * @param value the value
+		 */
+		void set(int row, Value value) {
+			indices[row] = getIndex(value);
+		}
+
+		/**
+		 * Returns the index of the value in the dictionary (adding it if necessary)
+		 * 
+		 * @param value the value
+		 * @return the value index
+		 */
+		int getIndex(Value value) {
+			Integer index = valueIndices.get(value);
+			if (index == null) {
+				index = values.size();
+				values.add(value);
+				valueIndices.put(value, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Extends the array of value indices to the new capacity
+		 * 
+		 * @param capacity the new capacity
+		 */
+		void grow(int capacity) {
+			int oldCapacity = indices.length;
+			indices = Arrays.copyOf(indices, capacity);
+			Arrays.fill(indices, oldCapacity, capacity, -1);
+		}
+	}
+
+	/**
+	 * Combination of value indices (used as key to count the occurrences of value
+	 * assignments)
+	 */
+	static final class IndexKey {
+
+		// the value indices
+		final int[] indices;
+
+		// the hashcode for the key
+		final int hashcode;
+
+		/**
+		 * Creates a new key
+		 * 
+		 * @param indices the value indices
+		 */
+		IndexKey(int[] indices) {
+			this.indices = indices;
+			hashcode = Arrays.hashCode(indices);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof IndexKey)
+					&& Arrays.equals(indices, ((IndexKey) o).indices);
+		}
+	}
+
+}
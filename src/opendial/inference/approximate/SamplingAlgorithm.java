@@ -27,10 +27,10 @@ import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import opendial.Settings;
 import opendial.bn.BNetwork;
@@ -60,6 +60,8 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 
 	long maxSamplingTime = Settings.maxSamplingTime;
 
+	double tolerance = Settings.samplingTolerance;
+
 	// ===================================
 	// CONSTRUCTORS
 	// ===================================
@@ -76,6 +78,22 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 		this.maxSamplingTime = maxSamplingTime;
 	}
 
+	/**
+	 * Creates a new likelihood weighting algorithm with the specified number of
+	 * samples, sampling time and convergence tolerance
+	 * 
+	 * @param nbSamples the maximum number of samples to collect
+	 * @param maxSamplingTime the maximum sampling time
+	 * @param tolerance the tolerance on the change of the query marginals (and
+	 *            expected utilities, for utility queries), or 0 to always
+	 *            collect nbSamples samples
+	 */
+	public SamplingAlgorithm(int nbSamples, long maxSamplingTime,
+			double tolerance) {
+		this(nbSamples, maxSamplingTime);
+		this.tolerance = tolerance;
+	}
+
 	/**
 	 * Creates a new likelihood weighting algorithm with the specified number of
 	 * samples and sampling time
@@ -84,6 +102,15 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 	public SamplingAlgorithm() {
 	}
 
+	/**
+	 * Returns the maximum sampling time (in milliseconds)
+	 * 
+	 * @return the maximum sampling time
+	 */
+	public long getMaxSamplingTime() {
+		return maxSamplingTime;
+	}
+
 	// ===================================
 	// PUBLIC METHODS
 	// ===================================
@@ -99,13 +126,15 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 	public EmpiricalDistribution queryProb(Query.ProbQuery query) {
 
 		// creates a new query thread
-		LikelihoodWeighting isquery =
-				new LikelihoodWeighting(query, nbSamples, maxSamplingTime);
+		LikelihoodWeighting isquery = new LikelihoodWeighting(query, nbSamples,
+				maxSamplingTime, tolerance);
 
 		// extract and redraw the samples according to their weight.
-		List<Sample> samples = isquery.getSamples();
+		SampleStore samples = isquery.getSamples();
 		// creates an empirical distribution from the samples
-		return new EmpiricalDistribution(samples);
+		EmpiricalDistribution distrib = new EmpiricalDistribution(samples);
+		distrib.setStatistics(isquery.getStatistics());
+		return distrib;
 	}
 
 	/**
@@ -123,12 +152,12 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 				new LikelihoodWeighting(query, 1, Settings.maxSamplingTime);
 
 		// extract and redraw the samples according to their weight.
-		List<Sample> samples = isquery.getSamples();
+		SampleStore samples = isquery.getSamples();
 		if (samples.isEmpty()) {
 			throw new RuntimeException("could not extract sample");
 		}
 		else {
-			return samples.get(0).getTrimmed(query.getQueryVars());
+			return samples.getTrimmed(0, query.getQueryVars());
 		}
 	}
 
@@ -144,16 +173,18 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 
 		try {
 			// creates a new query thread
-			LikelihoodWeighting isquery =
-					new LikelihoodWeighting(query, nbSamples, maxSamplingTime);
+			LikelihoodWeighting isquery = new LikelihoodWeighting(query, nbSamples,
+					maxSamplingTime, tolerance);
 
 			// extract and redraw the samples
-			List<Sample> samples = isquery.getSamples();
+			SampleStore samples = isquery.getSamples();
 
 			// creates the utility table from the samples
 			UtilityTable utilityTable = new UtilityTable();
-			samples.stream()
-					.forEach(s -> utilityTable.incrementUtil(s, s.getUtility()));
+			for (int i = 0; i < samples.size(); i++) {
+				utilityTable.incrementUtil(samples.getAssignment(i),
+						samples.getUtility(i));
+			}
 
 			return utilityTable;
 		}
@@ -179,10 +210,10 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 				new LikelihoodWeighting(query, nbSamples, maxSamplingTime);
 
 		// extract and redraw the samples
-		List<Sample> samples = isquery.getSamples();
+		SampleStore samples = isquery.getSamples();
 
-		double total =
-				samples.stream().parallel().mapToDouble(s -> s.getUtility()).sum();
+		double total = IntStream.range(0, samples.size())
+				.mapToDouble(i -> samples.getUtility(i)).sum();
 		return total / samples.size();
 	}
 
@@ -207,7 +238,7 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 				new LikelihoodWeighting(query, nbSamples, maxSamplingTime);
 
 		// extract and redraw the samples
-		List<Sample> samples = isquery.getSamples();
+		SampleStore samples = isquery.getSamples();
 
 		EmpiricalDistribution fullDistrib = new EmpiricalDistribution(samples);
 
@@ -251,7 +282,7 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 	 *         reweigthing
 	 */
 	public EmpiricalDistribution getWeightedSamples(Query query,
-			Consumer<Collection<Sample>> weightScheme) {
+			Consumer<SampleStore> weightScheme) {
 		return getWeightedSamples(Collections.singletonMap(query,weightScheme));
 	} 
 	
@@ -264,24 +295,19 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 	 * @return the resulting empirical distribution for the query variables, after
 	 *         reweigthing
 	 */
-	public EmpiricalDistribution getWeightedSamples(Map<Query,Consumer<Collection<Sample>>> weightedQueries) {
+	public EmpiricalDistribution getWeightedSamples(Map<Query,Consumer<SampleStore>> weightedQueries) {
 
-		EmpiricalDistribution distrib = new EmpiricalDistribution();
+		SampleStore allSamples = new SampleStore();
 		
 		for (Query query : weightedQueries.keySet()) {
-			Consumer<Collection<Sample>> weightScheme = weightedQueries.get(query);
+			Consumer<SampleStore> weightScheme = weightedQueries.get(query);
 			LikelihoodWeighting isquery =
 					new LikelihoodWeighting(query, nbSamples, maxSamplingTime);
-			List<Sample> samples = isquery.getSamples();
+			SampleStore samples = isquery.getSamples();
 			weightScheme.accept(samples);
-			Intervals<Sample> intervals =
-					new Intervals<Sample>(samples, s -> s.getWeight());
-			int sampleSize = samples.size();
-			for (int j = 0; j < sampleSize; j++) {
-				distrib.addSample(intervals.sample());
-			}
+			allSamples.addAll(samples.resample());
 		}
-		return distrib;
+		return new EmpiricalDistribution(allSamples);
 
 	} 
 
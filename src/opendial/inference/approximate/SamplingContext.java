@@ -0,0 +1,213 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.approximate;
+
+import java.util.SplittableRandom;
+import java.util.logging.*;
+
+/**
+ * Sampling context providing the random number generator used by the sampling
+ * methods (distributions, density functions, intervals, etc.). Each thread is
+ * associated with its own SplittableRandom, such that the worker threads of a
+ * parallel sampling process do not contend on a shared generator.
+ * 
+ * <p>
+ * The generators of the threads are derived from a master generator. If a fixed
+ * master seed is provided, the sampling operations performed from the thread that
+ * set the seed (including the parallel sampling of likelihood weighting, whose
+ * samples are each seeded from this thread) are reproducible.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class SamplingContext {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// master generator from which the thread generators are split
+	static SplittableRandom master = new SplittableRandom();
+
+	// version of the master generator (incremented when a seed is set)
+	static volatile int version = 0;
+
+	// generator for the current thread (with the master version it derives from)
+	static final ThreadLocal<SamplingContext> current =
+			ThreadLocal.withInitial(() -> new SamplingContext(split(), version));
+
+	// the random number generator
+	SplittableRandom random;
+
+	// the version of the master generator
+	final int masterVersion;
+
+	/**
+	 * Creates a new sampling context with the given generator
+	 * 
+	 * @param random the random number generator
+	 * @param masterVersion the version of the master generator
+	 */
+	private SamplingContext(SplittableRandom random, int masterVersion) {
+		this.random = random;
+		this.masterVersion = masterVersion;
+	}
+
+	// ===================================
+	// SEEDING
+	// ===================================
+
+	/**
+	 * Sets a fixed master seed for the sampling operations. The generator of the
+	 * current thread is directly reset with the seed, while the generators of the
+	 * other threads are derived anew from the master generator at their next use.
+	 * 
+	 * @param seed the master seed
+	 */
+	public static synchronized void setMasterSeed(long seed) {
+		master = new SplittableRandom(seed);
+		version++;
+		current.set(new SamplingContext(master.split(), version));
+	}
+
+	/**
+	 * Removes the fixed master seed (the generators are then derived from a
+	 * randomly seeded master generator).
+	 */
+	public static synchronized void clearMasterSeed() {
+		master = new SplittableRandom();
+		version++;
+		current.remove();
+	}
+
+	/**
+	 * Replaces the generator of the current thread by a generator created from the
+	 * given seed, and returns the previous generator.
+	 * 
+	 * @param seed the seed for the new generator
+	 * @return the previous generator of the thread
+	 */
+	public static SplittableRandom reseed(long seed) {
+		SamplingContext context = get();
+		SplittableRandom previous = context.random;
+		context.random = new SplittableRandom(seed);
+		return previous;
+	}
+
+	/**
+	 * Restores a generator previously returned by reseed(seed).
+	 * 
+	 * @param random the generator to restore for the current thread
+	 */
+	public static void restore(SplittableRandom random) {
+		get().random = random;
+	}
+
+	// ===================================
+	// RANDOM NUMBER GENERATION
+	// ===================================
+
+	/**
+	 * Returns the random number generator for the current thread
+	 * 
+	 * @return the generator
+	 */
+	public static SplittableRandom getRandom() {
+		return get().random;
+	}
+
+	/**
+	 * Returns a random double between 0 (inclusive) and 1 (exclusive)
+	 * 
+	 * @return the random double
+	 */
+	public static double nextDouble() {
+		return get().random.nextDouble();
+	}
+
+	/**
+	 * Returns a random integer between 0 (inclusive) and the bound (exclusive)
+	 * 
+	 * @param bound the upper bound
+	 * @return the random integer
+	 */
+	public static int nextInt(int bound) {
+		return get().random.nextInt(bound);
+	}
+
+	/**
+	 * Returns a random long (e.g. to seed another generator)
+	 * 
+	 * @return the random long
+	 */
+	public static long nextLong() {
+		return get().random.nextLong();
+	}
+
+	/**
+	 * Returns a random value drawn from a standard normal distribution (using the
+	 * polar method of Marsaglia).
+	 * 
+	 * @return the random value
+	 */
+	public static double nextGaussian() {
+		SplittableRandom random = get().random;
+		double v1, v2, s;
+		do {
+			v1 = 2 * random.nextDouble() - 1;
+			v2 = 2 * random.nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		}
+		while (s >= 1 || s == 0);
+		return v1 * Math.sqrt(-2 * Math.log(s) / s);
+	}
+
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
+	/**
+	 * Returns the sampling context of the current thread, deriving a new generator
+	 * if the master generator has been reseeded in the meantime.
+	 * 
+	 * @return the sampling context
+	 */
+	private static SamplingContext get() {
+		SamplingContext context = current.get();
+		if (context.masterVersion != version) {
+			context = new SamplingContext(split(), version);
+			current.set(context);
+		}
+		return context;
+	}
+
+	/**
+	 * Splits a new generator from the master generator
+	 * 
+	 * @return the new generator
+	 */
+	private static synchronized SplittableRandom split() {
+		return master.split();
+	}
+
+}
@@ -0,0 +1,161 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.approximate;
+
+import java.util.logging.*;
+
+/**
+ * Statistics on the convergence of a sampling process: number of collected
+ * samples and batches, effective sample size of the weighted samples, and change
+ * in the marginals of the query variables over the last batch.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class SamplingStatistics {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// number of samples drawn (including the discarded ones)
+	final int nbDrawn;
+
+	// number of samples that were collected
+	final int nbCollected;
+
+	// number of batches
+	final int nbBatches;
+
+	// effective sample size (given the sample weights)
+	final double effectiveSampleSize;
+
+	// maximum change in the marginals of the query variables in the last batch
+	final double marginalChange;
+
+	// whether the sampling stopped because the tolerance was met
+	final boolean converged;
+
+	// sampling time (in milliseconds)
+	final long samplingTime;
+
+	/**
+	 * Creates new sampling statistics
+	 * 
+	 * @param nbDrawn the number of drawn samples
+	 * @param nbCollected the number of collected samples
+	 * @param nbBatches the number of batches
+	 * @param effectiveSampleSize the effective sample size
+	 * @param marginalChange the change in the marginals in the last batch
+	 * @param converged whether the tolerance was met
+	 * @param samplingTime the sampling time (in milliseconds)
+	 */
+	public SamplingStatistics(int nbDrawn, int nbCollected, int nbBatches,
+			double effectiveSampleSize, double marginalChange, boolean converged,
+			long samplingTime) {
+		this.nbDrawn = nbDrawn;
+		this.nbCollected = nbCollected;
+		this.nbBatches = nbBatches;
+		this.effectiveSampleSize = effectiveSampleSize;
+		this.marginalChange = marginalChange;
+		this.converged = converged;
+		this.samplingTime = samplingTime;
+	}
+
+	/**
+	 * Returns the number of samples drawn (including the discarded ones)
+	 * 
+	 * @return the number of drawn samples
+	 */
+	public int getNbDrawn() {
+		return nbDrawn;
+	}
+
+	/**
+	 * Returns the number of collected samples
+	 * 
+	 * @return the number of collected samples
+	 */
+	public int getNbCollected() {
+		return nbCollected;
+	}
+
+	/**
+	 * Returns the number of batches
+	 * 
+	 * @return the number of batches
+	 */
+	public int getNbBatches() {
+		return nbBatches;
+	}
+
+	/**
+	 * Returns the effective sample size, defined as (sum of weights)^2 / (sum of
+	 * squared weights)
+	 * 
+	 * @return the effective sample size
+	 */
+	public double getEffectiveSampleSize() {
+		return effectiveSampleSize;
+	}
+
+	/**
+	 * Returns the maximum change in the marginals of the query variables over the
+	 * last batch (infinite if the sampling was not adaptive)
+	 * 
+	 * @return the marginal change
+	 */
+	public double getMarginalChange() {
+		return marginalChange;
+	}
+
+	/**
+	 * Returns true if the sampling stopped because the convergence tolerance was
+	 * met, and false otherwise
+	 * 
+	 * @return whether the sampling converged
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Returns the sampling time (in milliseconds)
+	 * 
+	 * @return the sampling time
+	 */
+	public long getSamplingTime() {
+		return samplingTime;
+	}
+
+	/**
+	 * Returns a string representation of the statistics
+	 */
+	@Override
+	public String toString() {
+		return nbCollected + "/" + nbDrawn + " samples in " + nbBatches
+				+ " batch(es), ESS=" + Math.round(effectiveSampleSize) + ", change="
+				+ marginalChange + ", converged=" + converged + " (" + samplingTime
+				+ " ms)";
+	}
+}
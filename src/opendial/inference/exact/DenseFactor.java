@@ -0,0 +1,390 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.exact;
+
+import java.util.logging.*;
+import java.util.Arrays;
+import java.util.Collection;
+
+import opendial.bn.values.Value;
+import opendial.datastructs.Assignment;
+
+/**
+ * Dense representation of a double factor (combining probability and utility
+ * values) over a set of discrete variables. Each variable is associated with an
+ * array of possible values, and the rows of the factor are indexed with
+ * mixed-radix strides over the value indices of each variable. The probability
+ * and utility values are stored in two flat arrays.
+ * 
+ * <p>
+ * Since the factors derived from the network nodes are not necessarily complete
+ * (some combinations of values may be absent), the factor also records which rows
+ * are actually defined. A row that is undefined in one of the factors of a
+ * product remains undefined in the result, in the same way as for the
+ * assignment-based DoubleFactor.
+ * 
+ * <p>
+ * The factors that are combined with one another must share the same value
+ * arrays for their common variables.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class DenseFactor {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// maximum number of rows for a dense factor
+	public static int MAX_SIZE = 1000000;
+
+	// the variables in the factor
+	final String[] variables;
+
+	// the possible values for each variable
+	final Value[][] domains;
+
+	// the stride for each variable (the first variable has stride 1)
+	final int[] strides;
+
+	// the probability values for each row
+	final double[] probs;
+
+	// the utility values for each row
+	final double[] utils;
+
+	// whether each row is defined
+	final boolean[] defined;
+
+	// ===================================
+	// CONSTRUCTION METHODS
+	// ===================================
+
+	/**
+	 * Creates a new dense factor for the given variables and their possible values.
+	 * All rows are initially undefined.
+	 * 
+	 * @param variables the variables in the factor
+	 * @param domains the possible values for each variable
+	 */
+	public DenseFactor(String[] variables, Value[][] domains) {
+		this.variables = variables;
+		this.domains = domains;
+		strides = new int[variables.length];
+		int size = 1;
+		for (int i = 0; i < variables.length; i++) {
+			strides[i] = size;
+			size *= domains[i].length;
+		}
+		probs = new double[size];
+		utils = new double[size];
+		defined = new boolean[size];
+	}
+
+	/**
+	 * Sets the probability and utility values for the row at the given index
+	 * 
+	 * @param index the row index
+	 * @param prob the probability value
+	 * @param util the utility value
+	 */
+	public void setEntry(int index, double prob, double util) {
+		probs[index] = prob;
+		utils[index] = util;
+		defined[index] = true;
+	}
+
+	// ===================================
+	// FACTOR OPERATIONS
+	// ===================================
+
+	/**
+	 * Computes the pointwise product of the current factor with another factor. The
+	 * variables of the resulting factor are the union of the variables of the two
+	 * factors. The probabilities are multiplied, and the utilities added.
+	 * 
+	 * @param other the other factor
+	 * @return the product of the two factors
+	 */
+	public DenseFactor product(DenseFactor other) {
+
+		// the variables of the product are the current ones + the new ones
+		int nbVars = variables.length;
+		for (String var : other.variables) {
+			if (indexOf(var) < 0) {
+				nbVars++;
+			}
+		}
+		String[] newVars = Arrays.copyOf(variables, nbVars);
+		Value[][] newDomains = Arrays.copyOf(domains, nbVars);
+		int k = variables.length;
+		for (int i = 0; i < other.variables.length; i++) {
+			if (indexOf(other.variables[i]) < 0) {
+				newVars[k] = other.variables[i];
+				newDomains[k++] = other.domains[i];
+			}
+		}
+		DenseFactor result = new DenseFactor(newVars, newDomains);
+
+		// strides of the two factors for each variable of the product
+		int[] cards = new int[nbVars];
+		int[] strides1 = new int[nbVars];
+		int[] strides2 = new int[nbVars];
+		for (int i = 0; i < nbVars; i++) {
+			cards[i] = newDomains[i].length;
+			strides1[i] = (i < variables.length) ? strides[i] : 0;
+			int j = other.indexOf(newVars[i]);
+			strides2[i] = (j >= 0) ? other.strides[j] : 0;
+		}
+
+		// we loop on the rows of the product, and update the row indices of
+		// the two factors as we go
+		int[] counters = new int[nbVars];
+		int index1 = 0;
+		int index2 = 0;
+		for (int i = 0; i < result.probs.length; i++) {
+			if (defined[index1] && other.defined[index2]) {
+				result.setEntry(i, probs[index1] * other.probs[index2],
+						utils[index1] + other.utils[index2]);
+			}
+			for (int v = 0; v < nbVars; v++) {
+				counters[v]++;
+				if (counters[v] < cards[v]) {
+					index1 += strides1[v];
+					index2 += strides2[v];
+					break;
+				}
+				counters[v] = 0;
+				index1 -= (cards[v] - 1) * strides1[v];
+				index2 -= (cards[v] - 1) * strides2[v];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sums out the variable from the factor, and returns the result. The utilities
+	 * of the resulting factor are weighted by the probabilities of the summed
+	 * rows.
+	 * 
+	 * @param variable the variable to sum out
+	 * @return the factor without the variable
+	 */
+	public DenseFactor sumOut(String variable) {
+		int pos = indexOf(variable);
+		if (pos < 0) {
+			return this;
+		}
+		String[] newVars = new String[variables.length - 1];
+		Value[][] newDomains = new Value[variables.length - 1][];
+		for (int i = 0, k = 0; i < variables.length; i++) {
+			if (i != pos) {
+				newVars[k] = variables[i];
+				newDomains[k++] = domains[i];
+			}
+		}
+		DenseFactor result = new DenseFactor(newVars, newDomains);
+
+		int stride = strides[pos];
+		int card = domains[pos].length;
+		int block = stride * card;
+		int nbBlocks = probs.length / Math.max(block, 1);
+		for (int b = 0; b < nbBlocks; b++) {
+			for (int low = 0; low < stride; low++) {
+				int outIndex = b * stride + low;
+				double prob = 0.0;
+				double util = 0.0;
+				boolean isDefined = false;
+				int inIndex = b * block + low;
+				for (int j = 0; j < card; j++) {
+					if (defined[inIndex]) {
+						prob += probs[inIndex];
+						util += probs[inIndex] * utils[inIndex];
+						isDefined = true;
+					}
+					inIndex += stride;
+				}
+				if (isDefined) {
+					if (prob > 0.0 && util != 0 && prob != 1) {
+						util = util / prob;
+					}
+					result.setEntry(outIndex, prob, util);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sums out all variables of the factor except the ones provided as argument.
+	 * 
+	 * @param retainedVars the variables to retain
+	 * @return the marginalised factor
+	 */
+	public DenseFactor marginalise(Collection<String> retainedVars) {
+		DenseFactor result = this;
+		for (String var : variables) {
+			if (!retainedVars.contains(var)) {
+				result = result.sumOut(var);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a copy of the factor where the rows that are inconsistent with the
+	 * value of the given variable are undefined. If the variable is not included in
+	 * the factor, returns the factor itself.
+	 * 
+	 * @param variable the variable
+	 * @param value the value for the variable
+	 * @return the restricted factor
+	 */
+	public DenseFactor getRestricted(String variable, Value value) {
+		int pos = indexOf(variable);
+		if (pos < 0) {
+			return this;
+		}
+		int valueIndex = Arrays.asList(domains[pos]).indexOf(value);
+		DenseFactor result = new DenseFactor(variables, domains);
+		for (int i = 0; i < probs.length; i++) {
+			if (defined[i] && (i / strides[pos]) % domains[pos].length == valueIndex) {
+				result.setEntry(i, probs[i], utils[i]);
+			}
+		}
+		return result;
+	}
+
+	// ===================================
+	// GETTERS
+	// ===================================
+
+	/**
+	 * Returns true if the factor has no variables or no defined rows, and false
+	 * otherwise
+	 * 
+	 * @return true if the factor is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		if (variables.length == 0) {
+			return true;
+		}
+		for (int i = 0; i < defined.length; i++) {
+			if (defined[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the factor contains the variable, and false otherwise
+	 * 
+	 * @param variable the variable
+	 * @return true if the variable is in the factor, false otherwise
+	 */
+	public boolean hasVariable(String variable) {
+		return indexOf(variable) >= 0;
+	}
+
+	/**
+	 * Returns the variables in the factor
+	 * 
+	 * @return the variables
+	 */
+	public String[] getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Returns the possible values for the variable, or null if the variable is not
+	 * included in the factor
+	 * 
+	 * @param variable the variable
+	 * @return the possible values for the variable
+	 */
+	public Value[] getValues(String variable) {
+		int pos = indexOf(variable);
+		return (pos >= 0) ? domains[pos] : null;
+	}
+
+	/**
+	 * Returns the number of rows in the factor (including the undefined ones)
+	 * 
+	 * @return the factor size
+	 */
+	public int size() {
+		return probs.length;
+	}
+
+	// ===================================
+	// UTILITIES
+	// ===================================
+
+	/**
+	 * Converts the dense factor into an assignment-based double factor containing
+	 * the defined rows.
+	 * 
+	 * @return the corresponding double factor
+	 */
+	public DoubleFactor toDoubleFactor() {
+		DoubleFactor factor = new DoubleFactor();
+		for (int i = 0; i < probs.length; i++) {
+			if (defined[i]) {
+				Assignment a = new Assignment();
+				for (int v = 0; v < variables.length; v++) {
+					a.addPair(variables[v],
+							domains[v][(i / strides[v]) % domains[v].length]);
+				}
+				factor.addEntry(a, probs[i], utils[i]);
+			}
+		}
+		return factor;
+	}
+
+	/**
+	 * Returns a string representation of the factor
+	 */
+	@Override
+	public String toString() {
+		return toDoubleFactor().toString();
+	}
+
+	/**
+	 * Returns the position of the variable in the factor, or -1 if the variable is
+	 * not included.
+	 * 
+	 * @param variable the variable
+	 * @return its position in the factor
+	 */
+	private int indexOf(String variable) {
+		for (int i = 0; i < variables.length; i++) {
+			if (variables[i].equals(variable)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,308 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.exact;
+
+import java.util.logging.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import opendial.bn.nodes.ActionNode;
+import opendial.bn.nodes.BNode;
+import opendial.bn.nodes.ChanceNode;
+import opendial.bn.nodes.UtilityNode;
+import opendial.datastructs.Assignment;
+import opendial.inference.Query;
+
+/**
+ * Elimination order for the hidden variables of a query, computed on the moral
+ * graph of the query (where two variables are connected whenever they appear in
+ * the same factor). The order is selected greedily according to one of the
+ * following heuristics:
+ * <ul>
+ * <li>TOPOLOGICAL: the order of the nodes in BNetwork.getSortedNodes()
+ * <li>MIN_DEGREE: the variable with the smallest number of neighbours
+ * <li>MIN_FILL: the variable whose elimination adds the smallest number of edges
+ * <li>WEIGHTED_MIN_FILL: the variable whose elimination adds the edges with the
+ * smallest total weight, where the weight of an edge is the product of the number
+ * of values of its two variables
+ * </ul>
+ * 
+ * <p>
+ * The class also estimates the size of the largest factor that will be created
+ * during the elimination (including the final product over the query variables),
+ * as well as the total size of the factors created along the way.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class EliminationOrder {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// possible heuristics for the elimination order
+	public static enum Heuristic {
+		TOPOLOGICAL, MIN_DEGREE, MIN_FILL, WEIGHTED_MIN_FILL
+	}
+
+	// the ordered list of variables to eliminate
+	final List<String> order;
+
+	// the clusters of variables created by each elimination step (the last
+	// cluster contains the remaining variables)
+	final List<Set<String>> cliques;
+
+	// the estimated size of the largest factor
+	long peakFactorSize;
+
+	// the estimated total size of the factors created during the elimination
+	long totalFactorSize;
+
+	// ===================================
+	// CONSTRUCTION METHODS
+	// ===================================
+
+	/**
+	 * Computes the elimination order for the hidden variables of the query, using
+	 * the given heuristic.
+	 * 
+	 * @param query the query
+	 * @param heuristic the heuristic to use
+	 */
+	public EliminationOrder(Query query, Heuristic heuristic) {
+		this(query.getFilteredSortedNodes(), query.getQueryVars(),
+				query.getEvidence(), heuristic);
+	}
+
+	/**
+	 * Computes the elimination order for all variables of the given nodes except the
+	 * retained variables and the evidence, using the given heuristic. The nodes must
+	 * be sorted in topological order (as in BNetwork.getSortedNodes()).
+	 * 
+	 * @param nodes the nodes to consider
+	 * @param retainedVars the variables to retain
+	 * @param evidence the evidence
+	 * @param heuristic the heuristic to use
+	 */
+	public EliminationOrder(List<BNode> nodes, Collection<String> retainedVars,
+			Assignment evidence, Heuristic heuristic) {
+
+		// creates the moral graph and the number of values for each variable
+		Map<String, Set<String>> graph = new HashMap<String, Set<String>>();
+		Map<String, Long> nbValues = new HashMap<String, Long>();
+		for (BNode n : nodes) {
+			if (evidence.containsVar(n.getId())) {
+				continue;
+			}
+			if (n instanceof ChanceNode) {
+				nbValues.put(n.getId(), (long) ((ChanceNode) n).getNbValues());
+			}
+			else if (n instanceof ActionNode) {
+				nbValues.put(n.getId(), (long) n.getValues().size());
+			}
+		}
+		for (BNode n : nodes) {
+			Set<String> scope = new HashSet<String>(n.getInputNodeIds());
+			if (!(n instanceof UtilityNode)) {
+				scope.add(n.getId());
+			}
+			scope.retainAll(nbValues.keySet());
+			for (String var : scope) {
+				graph.computeIfAbsent(var, v -> new HashSet<String>()).addAll(scope);
+				graph.get(var).remove(var);
+			}
+		}
+
+		// the variables to eliminate
+		List<String> hiddenVars = new ArrayList<String>();
+		for (BNode n : nodes) {
+			if (graph.containsKey(n.getId()) && !retainedVars.contains(n.getId())) {
+				hiddenVars.add(n.getId());
+			}
+		}
+
+		order = new ArrayList<String>();
+		cliques = new ArrayList<Set<String>>();
+		peakFactorSize = 1;
+		totalFactorSize = 0;
+		while (!hiddenVars.isEmpty()) {
+			String selected = (heuristic == Heuristic.TOPOLOGICAL)
+					? hiddenVars.get(0) : selectNext(hiddenVars, graph, nbValues,
+							heuristic);
+			hiddenVars.remove(selected);
+			order.add(selected);
+
+			// eliminates the variable from the graph
+			Set<String> neighbours = graph.remove(selected);
+			Set<String> clique = new HashSet<String>(neighbours);
+			clique.add(selected);
+			cliques.add(clique);
+			long size = getSize(neighbours, nbValues) * nbValues.get(selected);
+			peakFactorSize = Math.max(peakFactorSize, size);
+			totalFactorSize += size;
+			for (String neighbour : neighbours) {
+				Set<String> edges = graph.get(neighbour);
+				edges.remove(selected);
+				edges.addAll(neighbours);
+				edges.remove(neighbour);
+			}
+		}
+
+		// the remaining factors are multiplied together
+		if (!graph.isEmpty()) {
+			cliques.add(new HashSet<String>(graph.keySet()));
+		}
+		long size = getSize(graph.keySet(), nbValues);
+		peakFactorSize = Math.max(peakFactorSize, size);
+		totalFactorSize += size;
+	}
+
+	// ===================================
+	// GETTERS
+	// ===================================
+
+	/**
+	 * Returns the ordered list of variables to eliminate
+	 * 
+	 * @return the elimination order
+	 */
+	public List<String> getOrder() {
+		return Collections.unmodifiableList(order);
+	}
+
+	/**
+	 * Returns the clusters of variables created at each step of the elimination,
+	 * followed by the cluster of remaining variables (if any). The clusters
+	 * correspond to the cliques of the triangulated moral graph.
+	 * 
+	 * @return the clusters of variables
+	 */
+	public List<Set<String>> getCliques() {
+		return Collections.unmodifiableList(cliques);
+	}
+
+	/**
+	 * Returns the estimated number of rows of the largest factor created during the
+	 * elimination.
+	 * 
+	 * @return the estimated peak factor size
+	 */
+	public long getPeakFactorSize() {
+		return peakFactorSize;
+	}
+
+	/**
+	 * Returns the estimated total number of rows of the factors created during the
+	 * elimination (including the final product). This total is a rough measure of
+	 * the computational cost of the elimination.
+	 * 
+	 * @return the estimated total factor size
+	 */
+	public long getTotalFactorSize() {
+		return totalFactorSize;
+	}
+
+	/**
+	 * Returns a string representation of the elimination order
+	 */
+	@Override
+	public String toString() {
+		return order + " (peak factor size: " + peakFactorSize + ")";
+	}
+
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
+	/**
+	 * Selects the next variable to eliminate according to the heuristic. Ties are
+	 * broken by the size of the factor created by the elimination, and then by the
+	 * variable identifiers.
+	 * 
+	 * @param hiddenVars the remaining variables to eliminate
+	 * @param graph the current graph
+	 * @param nbValues the number of values for each variable
+	 * @param heuristic the heuristic
+	 * @return the selected variable
+	 */
+	private static String selectNext(List<String> hiddenVars,
+			Map<String, Set<String>> graph, Map<String, Long> nbValues,
+			Heuristic heuristic) {
+		String best = null;
+		long bestScore = Long.MAX_VALUE;
+		long bestSize = Long.MAX_VALUE;
+		for (String var : hiddenVars) {
+			Set<String> neighbours = graph.get(var);
+			long score = 0;
+			if (heuristic == Heuristic.MIN_DEGREE) {
+				score = neighbours.size();
+			}
+			else {
+				List<String> list = new ArrayList<String>(neighbours);
+				for (int i = 0; i < list.size(); i++) {
+					Set<String> edges = graph.get(list.get(i));
+					for (int j = i + 1; j < list.size(); j++) {
+						if (!edges.contains(list.get(j))) {
+							score += (heuristic == Heuristic.MIN_FILL) ? 1
+									: nbValues.get(list.get(i))
+											* nbValues.get(list.get(j));
+						}
+					}
+				}
+			}
+			long size = getSize(neighbours, nbValues) * nbValues.get(var);
+			if (score < bestScore || (score == bestScore && (size < bestSize
+					|| (size == bestSize && var.compareTo(best) < 0)))) {
+				best = var;
+				bestScore = score;
+				bestSize = size;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the number of rows in a factor containing the given variables. The
+	 * result is capped at Integer.MAX_VALUE.
+	 * 
+	 * @param variables the variables
+	 * @param nbValues the number of values for each variable
+	 * @return the number of rows
+	 */
+	private static long getSize(Collection<String> variables,
+			Map<String, Long> nbValues) {
+		long size = 1;
+		for (String var : variables) {
+			size = Math.min(size * nbValues.get(var), Integer.MAX_VALUE);
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,550 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference.exact;
+
+import java.util.logging.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import opendial.bn.BNetwork;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.MultivariateDistribution;
+import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.nodes.BNode;
+import opendial.bn.nodes.ChanceNode;
+import opendial.bn.nodes.UtilityNode;
+import opendial.bn.values.Value;
+import opendial.datastructs.Assignment;
+import opendial.inference.InferenceAlgorithm;
+import opendial.inference.Query;
+
+/**
+ * Inference algorithm based on a junction tree (also called clique tree). The tree
+ * is compiled from the discrete part of the Bayesian network (i.e. the chance and
+ * action nodes that have a discrete distribution and whose ancestors are all
+ * discrete), and the messages between the cliques are computed on demand and
+ * cached. As long as the network is not modified, the probability queries are
+ * therefore answered from the calibrated clique potentials, without rerunning the
+ * inference.
+ * 
+ * <p>
+ * When the evidence changes between two queries, only the potentials of the
+ * cliques containing the modified evidence variables are updated, and only the
+ * messages that flow away from these cliques are recomputed.
+ * 
+ * <p>
+ * To avoid compiling a tree for networks that are only queried once, the tree is
+ * compiled on the second query for a given version of the network. Utility queries,
+ * reduction queries and probability queries that cannot be answered from a single
+ * clique are delegated to variable elimination.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class JunctionTree implements InferenceAlgorithm {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// algorithm for the queries that cannot be answered with the tree
+	final VariableElimination ve;
+
+	// the network (and its version stamp) for the tree
+	BNetwork network;
+	long version;
+
+	// whether the tree is compiled for the current version of the network
+	boolean isCompiled;
+
+	// the cliques in the tree
+	List<Clique> cliques;
+
+	// the (smallest) clique containing each variable
+	Map<String, Clique> varCliques;
+
+	// the evidence currently integrated in the clique potentials
+	Assignment evidence;
+
+	// ===================================
+	// CONSTRUCTION
+	// ===================================
+
+	/**
+	 * Creates a new junction tree algorithm (the tree itself is compiled once the
+	 * network is queried).
+	 */
+	public JunctionTree() {
+		ve = new VariableElimination();
+		cliques = new ArrayList<Clique>();
+		varCliques = new HashMap<String, Clique>();
+		evidence = new Assignment();
+	}
+
+	// ===================================
+	// QUERY METHODS
+	// ===================================
+
+	/**
+	 * Computes the probability distribution for the query variables given the
+	 * evidence. If the query variables are all included in one clique of the tree,
+	 * the distribution is computed from the calibrated potential of the clique.
+	 * Else, the query is answered with variable elimination.
+	 * 
+	 * @param query the probability query
+	 * @return the resulting distribution
+	 */
+	@Override
+	public synchronized MultivariateDistribution queryProb(Query.ProbQuery query) {
+
+		if (!update(query.getNetwork())) {
+			return ve.queryProb(query);
+		}
+
+		Clique clique = getClique(query);
+		if (clique == null) {
+			return ve.queryProb(query);
+		}
+
+		DoubleFactor factor =
+				clique.getBelief().marginalise(query.getQueryVars()).toDoubleFactor();
+		factor.normalise();
+		MultivariateTable.Builder builder = new MultivariateTable.Builder();
+		builder.addRows(factor.getProbTable());
+		return builder.build();
+	}
+
+	/**
+	 * Computes the utility table for the query variables, using variable
+	 * elimination.
+	 * 
+	 * @param query the utility query
+	 * @return the resulting utility table
+	 */
+	@Override
+	public UtilityTable queryUtil(Query.UtilQuery query) {
+		return ve.queryUtil(query);
+	}
+
+	/**
+	 * Reduces the Bayesian network to the query variables, using variable
+	 * elimination.
+	 * 
+	 * @param query the reduction query
+	 * @return the reduced network
+	 */
+	@Override
+	public BNetwork reduce(Query.ReduceQuery query) {
+		return ve.reduce(query);
+	}
+
+	/**
+	 * Returns the number of cliques in the tree (0 if the tree is not compiled)
+	 * 
+	 * @return the number of cliques
+	 */
+	public synchronized int getNbCliques() {
+		return cliques.size();
+	}
+
+	/**
+	 * Returns a string representation of the tree
+	 */
+	@Override
+	public String toString() {
+		return cliques.toString();
+	}
+
+	// ===================================
+	// TREE COMPILATION
+	// ===================================
+
+	/**
+	 * Checks whether the tree is compiled for the current version of the network,
+	 * and compiles it if the same version of the network was already queried
+	 * before.
+	 * 
+	 * @param newNetwork the network to query
+	 * @return true if the tree is compiled for the network, false otherwise
+	 */
+	private boolean update(BNetwork newNetwork) {
+		long newVersion = newNetwork.getVersion();
+		if (newNetwork == network && newVersion == version) {
+			if (!isCompiled) {
+				compile();
+			}
+			return !cliques.isEmpty();
+		}
+		network = newNetwork;
+		version = newVersion;
+		isCompiled = false;
+		cliques = new ArrayList<Clique>();
+		varCliques = new HashMap<String, Clique>();
+		evidence = new Assignment();
+		return false;
+	}
+
+	/**
+	 * Compiles the junction tree for the discrete part of the network. If the tree
+	 * would contain cliques that are larger than DenseFactor.MAX_SIZE, the tree is
+	 * left empty. The tree is also left empty if some nodes do not refer back to
+	 * the network, as their modifications would not be reflected in its version
+	 * stamp.
+	 */
+	private void compile() {
+		isCompiled = true;
+		for (BNode n : network.getNodes()) {
+			if (n.getNetwork() != network) {
+				return;
+			}
+		}
+
+		// selects the discrete nodes
+		Map<String, Boolean> discrete = new HashMap<String, Boolean>();
+		List<BNode> nodes = new ArrayList<BNode>();
+		for (BNode n : network.getSortedNodes()) {
+			if (isDiscrete(n, discrete)) {
+				nodes.add(n);
+			}
+		}
+		EliminationOrder order = new EliminationOrder(nodes,
+				Collections.emptySet(), new Assignment(),
+				EliminationOrder.Heuristic.WEIGHTED_MIN_FILL);
+		if (nodes.isEmpty() || order.getPeakFactorSize() > DenseFactor.MAX_SIZE) {
+			return;
+		}
+
+		// collects the possible values for each variable
+		Map<BNode, Map<Assignment, Double>> flatTables =
+				new LinkedHashMap<BNode, Map<Assignment, Double>>();
+		Map<String, Map<Value, Integer>> indices =
+				new HashMap<String, Map<Value, Integer>>();
+		for (BNode n : nodes) {
+			Map<Assignment, Double> flatTable = n.getFactor();
+			flatTables.put(n, flatTable);
+			for (Assignment a : flatTable.keySet()) {
+				for (String var : a.getVariables()) {
+					Map<Value, Integer> index = indices.computeIfAbsent(var,
+							v -> new LinkedHashMap<Value, Integer>());
+					index.putIfAbsent(a.getValue(var), index.size());
+				}
+			}
+		}
+		Map<String, Value[]> domains = new HashMap<String, Value[]>();
+		for (String var : indices.keySet()) {
+			domains.put(var, indices.get(var).keySet().toArray(new Value[0]));
+		}
+
+		// creates the maximal cliques
+		for (Set<String> vars : order.getCliques()) {
+			if (cliques.stream().noneMatch(c -> c.variables.containsAll(vars))) {
+				cliques.add(new Clique(vars, domains));
+			}
+		}
+
+		// connects the cliques with a maximum spanning tree (on the size of the
+		// separators)
+		List<Clique[]> edges = new ArrayList<Clique[]>();
+		for (int i = 0; i < cliques.size(); i++) {
+			for (int j = i + 1; j < cliques.size(); j++) {
+				edges.add(new Clique[] { cliques.get(i), cliques.get(j) });
+			}
+		}
+		Collections.sort(edges, (e1, e2) -> e2[0].getSeparator(e2[1]).size()
+				- e1[0].getSeparator(e1[1]).size());
+		Map<Clique, Clique> roots = new HashMap<Clique, Clique>();
+		for (Clique[] edge : edges) {
+			Clique root1 = getRoot(edge[0], roots);
+			Clique root2 = getRoot(edge[1], roots);
+			if (root1 != root2) {
+				roots.put(root1, root2);
+				edge[0].neighbours.add(edge[1]);
+				edge[1].neighbours.add(edge[0]);
+			}
+		}
+
+		// records the smallest clique for each variable
+		for (Clique clique : cliques) {
+			for (String var : clique.variables) {
+				Clique current = varCliques.get(var);
+				if (current == null || current.prior.size() > clique.prior.size()) {
+					varCliques.put(var, clique);
+				}
+			}
+		}
+
+		// assigns each node factor to the smallest clique containing its family
+		for (BNode n : nodes) {
+			Set<String> family = new HashSet<String>(n.getInputNodeIds());
+			family.add(n.getId());
+			Clique clique = getSmallestClique(family);
+			DenseFactor factor = VariableElimination.makeDenseFactor(n,
+					flatTables.get(n), new Assignment(), indices, domains);
+			clique.prior = clique.prior.product(factor);
+		}
+		for (Clique clique : cliques) {
+			clique.potential = clique.prior;
+		}
+		log.fine("compiled junction tree with " + cliques.size() + " cliques");
+	}
+
+	/**
+	 * Returns true if the node is a chance or action node with a discrete
+	 * distribution, and whose input nodes are also discrete.
+	 * 
+	 * @param node the node
+	 * @param discrete the nodes already checked
+	 * @return true if the node (and its ancestors) are discrete
+	 */
+	private static boolean isDiscrete(BNode node, Map<String, Boolean> discrete) {
+		if (!discrete.containsKey(node.getId())) {
+			boolean result = !(node instanceof UtilityNode)
+					&& !(node instanceof ChanceNode && ((ChanceNode) node)
+							.getDistrib() instanceof ContinuousDistribution);
+			for (BNode inputNode : node.getInputNodes()) {
+				result = result && isDiscrete(inputNode, discrete);
+			}
+			discrete.put(node.getId(), result);
+		}
+		return discrete.get(node.getId());
+	}
+
+	/**
+	 * Returns the root of the clique in the union-find structure used to build the
+	 * spanning tree.
+	 * 
+	 * @param clique the clique
+	 * @param roots the union-find structure
+	 * @return the root
+	 */
+	private static Clique getRoot(Clique clique, Map<Clique, Clique> roots) {
+		while (roots.containsKey(clique)) {
+			clique = roots.get(clique);
+		}
+		return clique;
+	}
+
+	// ===================================
+	// QUERY PROCESSING
+	// ===================================
+
+	/**
+	 * Updates the evidence in the tree, and returns the smallest clique containing
+	 * all query variables. If the query variables or evidence variables are not all
+	 * covered by the tree, returns null.
+	 * 
+	 * @param query the query
+	 * @return the clique to use to answer the query (or null)
+	 */
+	private Clique getClique(Query query) {
+
+		// checks that the tree covers the query
+		Assignment newEvidence = new Assignment();
+		for (String var : query.getEvidence().getVariables()) {
+			Value value = query.getEvidence().getValue(var);
+			if (varCliques.containsKey(var) && Arrays
+					.asList(varCliques.get(var).prior.getValues(var)).contains(value)) {
+				newEvidence.addPair(var, value);
+			}
+			else if (network.hasNode(var)) {
+				return null;
+			}
+		}
+		Clique clique = getSmallestClique(query.getQueryVars());
+		if (clique == null) {
+			return null;
+		}
+
+		// updates the cliques whose evidence has changed
+		Set<Clique> modified = new HashSet<Clique>();
+		Set<String> changedVars = new HashSet<String>(evidence.getVariables());
+		changedVars.addAll(newEvidence.getVariables());
+		for (String var : changedVars) {
+			if (!evidence.getValue(var).equals(newEvidence.getValue(var))) {
+				modified.add(varCliques.get(var));
+			}
+		}
+		evidence = newEvidence;
+		for (Clique c : modified) {
+			c.potential = c.prior;
+			for (String var : evidence.getVariables()) {
+				if (varCliques.get(var) == c) {
+					c.potential =
+							c.potential.getRestricted(var, evidence.getValue(var));
+				}
+			}
+			c.invalidate(null);
+		}
+		return clique;
+	}
+
+	/**
+	 * Returns the smallest clique containing all the given variables, or null if no
+	 * such clique exists.
+	 * 
+	 * @param variables the variables
+	 * @return the smallest clique containing them
+	 */
+	private Clique getSmallestClique(Collection<String> variables) {
+		if (variables.size() == 1) {
+			return varCliques.get(variables.iterator().next());
+		}
+		Clique smallest = null;
+		for (Clique c : cliques) {
+			if (c.variables.containsAll(variables)
+					&& (smallest == null || c.prior.size() < smallest.prior.size())) {
+				smallest = c;
+			}
+		}
+		return smallest;
+	}
+
+}
+
+/**
+ * Representation of a clique in the junction tree, with its potential, its
+ * neighbours and the messages it received from them.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+final class Clique {
+
+	// the variables in the clique
+	final Set<String> variables;
+
+	// the potential without evidence
+	DenseFactor prior;
+
+	// the potential including the evidence
+	DenseFactor potential;
+
+	// the neighbours of the clique in the tree
+	final List<Clique> neighbours;
+
+	// the (valid) messages received from the neighbours
+	final Map<Clique, DenseFactor> messages;
+
+	/**
+	 * Creates a new clique with a uniform potential
+	 * 
+	 * @param variables the variables in the clique
+	 * @param domains the possible values for each variable
+	 */
+	public Clique(Set<String> variables, Map<String, Value[]> domains) {
+		this.variables = variables;
+		String[] vars = variables.toArray(new String[variables.size()]);
+		Value[][] varDomains = new Value[vars.length][];
+		for (int i = 0; i < vars.length; i++) {
+			varDomains[i] = domains.get(vars[i]);
+		}
+		prior = new DenseFactor(vars, varDomains);
+		for (int i = 0; i < prior.size(); i++) {
+			prior.setEntry(i, 1.0, 0.0);
+		}
+		potential = prior;
+		neighbours = new ArrayList<Clique>();
+		messages = new HashMap<Clique, DenseFactor>();
+	}
+
+	/**
+	 * Returns the variables shared by the two cliques
+	 * 
+	 * @param other the other clique
+	 * @return the separator
+	 */
+	public Set<String> getSeparator(Clique other) {
+		Set<String> separator = new HashSet<String>(variables);
+		separator.retainAll(other.variables);
+		return separator;
+	}
+
+	/**
+	 * Returns the belief of the clique, i.e. its potential multiplied by the
+	 * messages from all its neighbours.
+	 * 
+	 * @return the clique belief
+	 */
+	public DenseFactor getBelief() {
+		DenseFactor belief = potential;
+		for (Clique neighbour : neighbours) {
+			belief = belief.product(getMessage(neighbour));
+		}
+		return belief;
+	}
+
+	/**
+	 * Returns the message sent by the neighbour to the clique (computing it if
+	 * necessary).
+	 * 
+	 * @param neighbour the neighbour
+	 * @return the message
+	 */
+	public DenseFactor getMessage(Clique neighbour) {
+		DenseFactor message = messages.get(neighbour);
+		if (message == null) {
+			message = neighbour.potential;
+			for (Clique other : neighbour.neighbours) {
+				if (other != this) {
+					message = message.product(neighbour.getMessage(other));
+				}
+			}
+			message = message.marginalise(getSeparator(neighbour));
+			messages.put(neighbour, message);
+		}
+		return message;
+	}
+
+	/**
+	 * Invalidates the messages that flow away from the clique (i.e. the messages
+	 * that depend on the potential of the clique).
+	 * 
+	 * @param origin the clique from which the invalidation comes (null for the
+	 *            starting clique)
+	 */
+	public void invalidate(Clique origin) {
+		for (Clique neighbour : neighbours) {
+			if (neighbour != origin) {
+				neighbour.messages.remove(this);
+				neighbour.invalidate(this);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of the clique
+	 */
+	@Override
+	public String toString() {
+		return variables.toString();
+	}
+}
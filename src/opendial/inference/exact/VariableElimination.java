@@ -28,7 +28,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +39,7 @@ import java.util.Set;
 import opendial.bn.BNetwork;
 import opendial.bn.distribs.CategoricalTable;
 import opendial.bn.distribs.ConditionalTable;
+import opendial.bn.distribs.ContinuousDistribution;
 import opendial.bn.distribs.MultivariateTable;
 import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.distribs.UtilityTable;
@@ -45,6 +48,7 @@ import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
+import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
 import opendial.inference.InferenceAlgorithm;
 import opendial.inference.Query;
@@ -59,6 +63,27 @@ public class VariableElimination implements InferenceAlgorithm {
 
 	final static Logger log = Logger.getLogger("OpenDial");
 
+	// heuristic for the elimination order of the hidden variables
+	EliminationOrder.Heuristic heuristic;
+
+	/**
+	 * Creates a new variable elimination algorithm, using the weighted min-fill
+	 * heuristic for the elimination order.
+	 */
+	public VariableElimination() {
+		this(EliminationOrder.Heuristic.WEIGHTED_MIN_FILL);
+	}
+
+	/**
+	 * Creates a new variable elimination algorithm, using the given heuristic for
+	 * the elimination order.
+	 * 
+	 * @param heuristic the elimination order heuristic
+	 */
+	public VariableElimination(EliminationOrder.Heuristic heuristic) {
+		this.heuristic = heuristic;
+	}
+
 	// ===================================
 	// MAIN QUERY METHODS
 	// ===================================
@@ -97,9 +122,23 @@ public class VariableElimination implements InferenceAlgorithm {
 	// INFERENCE OPERATION METHODS
 	// ===================================
 
+	/**
+	 * Returns the elimination order (and the estimated peak factor size) that the
+	 * algorithm would use to answer the query. The order is stored in the query, so
+	 * that it is only computed once per query.
+	 * 
+	 * @param query the query
+	 * @return the corresponding elimination order
+	 */
+	public EliminationOrder getEliminationOrder(Query query) {
+		return query.getEliminationOrder(heuristic);
+	}
+
 	/**
 	 * Generates the full double factor associated with the query variables, using
-	 * the variable-elimination algorithm.
+	 * the variable-elimination algorithm. If all relevant nodes have a discrete
+	 * distribution and the estimated peak factor size does not exceed
+	 * DenseFactor.MAX_SIZE, the elimination is performed on dense factors.
 	 * 
 	 * @param query the query
 	 * @return the full double factor containing all query variables occurred during
@@ -107,26 +146,168 @@ public class VariableElimination implements InferenceAlgorithm {
 	 */
 	private DoubleFactor createQueryFactor(Query query) {
 
+		EliminationOrder order = getEliminationOrder(query);
+
+		// create the flat tables for every node
+		Map<BNode, Map<Assignment, Double>> flatTables =
+				new LinkedHashMap<BNode, Map<Assignment, Double>>();
+		boolean isDiscrete = true;
+		for (BNode n : query.getFilteredSortedNodes()) {
+			flatTables.put(n, n.getFactor());
+			if (n instanceof ChanceNode && ((ChanceNode) n)
+					.getDistrib() instanceof ContinuousDistribution) {
+				isDiscrete = false;
+			}
+		}
+
+		DoubleFactor finalProduct;
+		if (isDiscrete && order.getPeakFactorSize() <= DenseFactor.MAX_SIZE) {
+			finalProduct =
+					createDenseQueryFactor(query, flatTables, order.getOrder());
+		}
+		else {
+			finalProduct =
+					createSparseQueryFactor(query, flatTables, order.getOrder());
+		}
+		finalProduct = addEvidencePairs(finalProduct, query);
+		finalProduct.trim(query.getQueryVars());
+		return finalProduct;
+	}
+
+	/**
+	 * Performs the variable elimination on assignment-based double factors.
+	 * 
+	 * @param query the query
+	 * @param flatTables the flat tables for each relevant node
+	 * @param order the elimination order for the hidden variables
+	 * @return the product of the remaining factors after elimination
+	 */
+	private DoubleFactor createSparseQueryFactor(Query query,
+			Map<BNode, Map<Assignment, Double>> flatTables, List<String> order) {
+
 		List<DoubleFactor> factors = new LinkedList<DoubleFactor>();
-		Collection<String> queryVars = query.getQueryVars();
 		Assignment evidence = query.getEvidence();
 
-		for (BNode n : query.getFilteredSortedNodes()) {
-			// create the basic factor for every variable
-			DoubleFactor basicFactor = makeFactor(n, evidence);
+		// create the basic factor for every variable
+		for (BNode n : flatTables.keySet()) {
+			DoubleFactor basicFactor = makeFactor(n, flatTables.get(n), evidence);
 			if (!basicFactor.isEmpty()) {
 				factors.add(basicFactor);
-				// if the variable is hidden, we sum it out
-				if (!queryVars.contains(n.getId())) {
-					factors = sumOut(n.getId(), factors);
+			}
+		}
+
+		// sum out the hidden variables
+		for (String hiddenVar : order) {
+			checkInterrupted();
+			factors = sumOut(hiddenVar, factors);
+		}
+
+		// compute the final product
+		return pointwiseProduct(factors);
+	}
+
+	/**
+	 * Performs the variable elimination on dense factors. The method first collects
+	 * the possible values for each variable (excluding the evidence), and then
+	 * creates the dense factors and performs the elimination.
+	 * 
+	 * @param query the query
+	 * @param flatTables the flat tables for each relevant node
+	 * @param order the elimination order for the hidden variables
+	 * @return the product of the remaining factors after elimination
+	 */
+	private DoubleFactor createDenseQueryFactor(Query query,
+			Map<BNode, Map<Assignment, Double>> flatTables, List<String> order) {
+
+		Assignment evidence = query.getEvidence();
+
+		// collects the possible values for each (non-evidence) variable
+		Map<String, Map<Value, Integer>> indices =
+				new HashMap<String, Map<Value, Integer>>();
+		for (Map<Assignment, Double> flatTable : flatTables.values()) {
+			for (Assignment a : flatTable.keySet()) {
+				if (a.consistentWith(evidence)) {
+					for (String var : a.getVariables()) {
+						if (!evidence.containsVar(var)) {
+							Map<Value, Integer> index = indices.computeIfAbsent(var,
+									v -> new LinkedHashMap<Value, Integer>());
+							index.putIfAbsent(a.getValue(var), index.size());
+						}
+					}
 				}
 			}
 		}
-		// compute the final product, and normalise
-		DoubleFactor finalProduct = pointwiseProduct(factors);
-		finalProduct = addEvidencePairs(finalProduct, query);
-		finalProduct.trim(queryVars);
-		return finalProduct;
+		Map<String, Value[]> domains = new HashMap<String, Value[]>();
+		for (String var : indices.keySet()) {
+			domains.put(var, indices.get(var).keySet().toArray(new Value[0]));
+		}
+
+		// if a variable has no value consistent with the evidence, we revert to
+		// the assignment-based factors
+		for (Map<Assignment, Double> flatTable : flatTables.values()) {
+			if (!flatTable.isEmpty()) {
+				for (String var : flatTable.keySet().iterator().next()
+						.getVariables()) {
+					if (!evidence.containsVar(var) && !domains.containsKey(var)) {
+						return createSparseQueryFactor(query, flatTables, order);
+					}
+				}
+			}
+		}
+
+		// create the basic factor for every variable
+		List<DenseFactor> factors = new ArrayList<DenseFactor>();
+		for (BNode n : flatTables.keySet()) {
+			DenseFactor basicFactor = makeDenseFactor(n, flatTables.get(n),
+					evidence, indices, domains);
+			if (!basicFactor.isEmpty()) {
+				factors.add(basicFactor);
+			}
+		}
+
+		// sum out the hidden variables
+		for (String hiddenVar : order) {
+			checkInterrupted();
+			List<DenseFactor> remaining = new ArrayList<DenseFactor>();
+			DenseFactor product = null;
+			for (DenseFactor f : factors) {
+				if (!f.hasVariable(hiddenVar)) {
+					remaining.add(f);
+				}
+				else {
+					product = (product == null) ? f : product.product(f);
+				}
+			}
+			if (product != null) {
+				DenseFactor summed = product.sumOut(hiddenVar);
+				if (!summed.isEmpty()) {
+					remaining.add(summed);
+				}
+			}
+			factors = remaining;
+		}
+
+		// compute the final product
+		if (factors.isEmpty()) {
+			DoubleFactor factor = new DoubleFactor();
+			factor.addEntry(new Assignment(), 1.0, 0.0);
+			return factor;
+		}
+		DenseFactor product = factors.get(0);
+		for (int i = 1; i < factors.size(); i++) {
+			product = product.product(factors.get(i));
+		}
+		return product.toDoubleFactor();
+	}
+
+	/**
+	 * Aborts the elimination if the current thread has been interrupted (for
+	 * instance, when the inference is cancelled by the switching algorithm).
+	 */
+	private static void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new RuntimeException("variable elimination interrupted");
+		}
 	}
 
 	/**
@@ -246,15 +427,16 @@ public class VariableElimination implements InferenceAlgorithm {
 	 * Bayesian node, and the evidence (which needs to be matched)
 	 * 
 	 * @param node the Bayesian node
+	 * @param flatTable the flat table for the node
 	 * @param evidence the evidence
 	 * @return the factor for the node
 	 */
-	private DoubleFactor makeFactor(BNode node, Assignment evidence) {
+	private DoubleFactor makeFactor(BNode node,
+			Map<Assignment, Double> flatTable, Assignment evidence) {
 
 		DoubleFactor factor = new DoubleFactor();
 
 		// generates all possible assignments for the node content
-		Map<Assignment, Double> flatTable = node.getFactor();
 		for (Assignment a : flatTable.keySet()) {
 
 			// verify that the assignment is consistent with the evidence
@@ -275,6 +457,55 @@ public class VariableElimination implements InferenceAlgorithm {
 		return factor;
 	}
 
+	/**
+	 * Creates a new dense factor given the probability distribution defined in the
+	 * Bayesian node, and the evidence (which needs to be matched)
+	 * 
+	 * @param node the Bayesian node
+	 * @param flatTable the flat table for the node
+	 * @param evidence the evidence
+	 * @param indices the value indices for each variable
+	 * @param domains the possible values for each variable
+	 * @return the dense factor for the node
+	 */
+	static DenseFactor makeDenseFactor(BNode node,
+			Map<Assignment, Double> flatTable, Assignment evidence,
+			Map<String, Map<Value, Integer>> indices,
+			Map<String, Value[]> domains) {
+
+		if (flatTable.isEmpty()) {
+			return new DenseFactor(new String[0], new Value[0][]);
+		}
+		String[] vars = flatTable.keySet().iterator().next().getVariables()
+				.stream().filter(v -> !evidence.containsVar(v))
+				.toArray(String[]::new);
+		Value[][] varDomains = new Value[vars.length][];
+		for (int i = 0; i < vars.length; i++) {
+			varDomains[i] = domains.get(vars[i]);
+		}
+		DenseFactor factor = new DenseFactor(vars, varDomains);
+
+		for (Assignment a : flatTable.keySet()) {
+
+			// verify that the assignment is consistent with the evidence
+			if (a.consistentWith(evidence)) {
+				int index = 0;
+				for (int i = 0; i < vars.length; i++) {
+					index += factor.strides[i]
+							* indices.get(vars[i]).get(a.getValue(vars[i]));
+				}
+				if (node instanceof ChanceNode || node instanceof ActionNode) {
+					factor.setEntry(index, flatTable.get(a), 0.0f);
+				}
+				else if (node instanceof UtilityNode) {
+					factor.setEntry(index, 1.0f, flatTable.get(a));
+				}
+			}
+		}
+
+		return factor;
+	}
+
 	/**
 	 * In case of overlap between the query variables and the evidence (this happens
 	 * when a variable specified in the evidence also appears in the query), extends
@@ -38,7 +38,7 @@ import opendial.bn.distribs.UtilityTable;
 import opendial.bn.nodes.ChanceNode;
 import opendial.datastructs.Assignment;
 import opendial.inference.Query;
-import opendial.inference.approximate.Sample;
+import opendial.inference.approximate.SampleStore;
 import opendial.inference.approximate.SamplingAlgorithm;
 
 /**
@@ -143,29 +143,29 @@ public class WizardLearner implements Module {
 		return relevantParams;
 	}
 
-	private static void reweightSamples(Collection<Sample> samples,
+	private static void reweightSamples(SampleStore samples,
 			Assignment wizardAction) {
 		Set<String> actionVars = wizardAction.getVariables();
 
 		UtilityTable averages = new UtilityTable();
-		for (Sample sample : samples) {
-			Assignment action = sample.getTrimmed(actionVars);
-			averages.incrementUtil(action, sample.getUtility());
+		for (int i = 0; i < samples.size(); i++) {
+			Assignment action = samples.getTrimmed(i, actionVars);
+			averages.incrementUtil(action, samples.getUtility(i));
 		}
 		if (averages.getTable().size() == 1) {
 			return;
 		}
-		for (Sample sample : samples) {
+		for (int i = 0; i < samples.size(); i++) {
 
 			UtilityTable copy = averages.copy();
-			Assignment sampleAssign = sample.getTrimmed(actionVars);
-			copy.setUtil(sampleAssign, sample.getUtility());
+			Assignment sampleAssign = samples.getTrimmed(i, actionVars);
+			copy.setUtil(sampleAssign, samples.getUtility(i));
 			int ranking = copy.getRanking(wizardAction, 0.1);
 			if (ranking != -1) {
 				double logweight = Math.log(
 						(GEOMETRIC_FACTOR * Math.pow(1 - GEOMETRIC_FACTOR, ranking))
 								+ 0.00001);
-				sample.addLogWeight(logweight);
+				samples.addLogWeight(i, logweight);
 			}
 		}
 	}
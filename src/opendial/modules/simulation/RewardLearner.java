@@ -40,7 +40,7 @@ import opendial.bn.nodes.ChanceNode;
 import opendial.bn.values.DoubleVal;
 import opendial.datastructs.Assignment;
 import opendial.inference.Query;
-import opendial.inference.approximate.Sample;
+import opendial.inference.approximate.SampleStore;
 import opendial.inference.approximate.SamplingAlgorithm;
 import opendial.modules.Module;
 
@@ -181,12 +181,13 @@ public class RewardLearner implements Module {
 
 	}
 
-	private static void reweightSamples(Collection<Sample> samples,
+	private static void reweightSamples(SampleStore samples,
 			double actualUtility) {
-		samples.stream().forEach(s -> {
-			double weight = 1.0 / (Math.abs(s.getUtility() - actualUtility) + 1);
-			s.addLogWeight(Math.log(weight));
-		});
+		for (int i = 0; i < samples.size(); i++) {
+			double weight =
+					1.0 / (Math.abs(samples.getUtility(i) - actualUtility) + 1);
+			samples.addLogWeight(i, Math.log(weight));
+		}
 	}
 
 }
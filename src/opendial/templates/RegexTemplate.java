@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,6 +47,12 @@ import opendial.utils.StringUtils;
  * character, i.e. (option1|option2)
  * </ul>
  * .
+ * 
+ * <p>
+ * The template is immutable and can be shared across threads. The results of the
+ * most recent full matches are memoised. The variants of the pattern and the memo
+ * are only created when first needed, since most templates are only used a few
+ * times.
  *
  */
 class RegexTemplate implements Template {
@@ -53,8 +60,19 @@ class RegexTemplate implements Template {
 	// raw string for the regular expression
 	final String rawString;
 
+	// maximum number of input strings whose match result is memoised
+	public static int MAX_MEMO_SIZE = 200;
+
 	// the regular expression pattern corresponding to the template
-	Pattern pattern;
+	final Pattern pattern;
+
+	// the variants of the pattern: the first one is the pattern itself, and the
+	// next ones are its successive permutations (see permutatePattern). The
+	// variants are compiled when first needed.
+	volatile Pattern[] variants;
+
+	// memoised results of full matches (created when first needed)
+	volatile Map<String, MatchResult> memo;
 
 	// underspecified slots, mapped to their group index in the regex
 	final Map<String, Integer> slots;
@@ -127,17 +145,39 @@ class RegexTemplate implements Template {
 	 */
 	@Override
 	public MatchResult match(String str) {
-		String input = str.trim();
+		Map<String, MatchResult> memo = getMemo();
+		MatchResult result = memo.get(str);
+		if (result == null) {
+			result = match(str.trim(), 0);
+			if (memo.size() >= MAX_MEMO_SIZE) {
+				memo.clear();
+			}
+			memo.put(str, result);
+		}
+		return result.copy();
+	}
+
+	/**
+	 * Tries to match the given pattern variant against the provided string. If the
+	 * match leads to slot values with unbalanced parentheses or brackets, the next
+	 * variant is tried.
+	 * 
+	 * @param input the (trimmed) input string
+	 * @param variant the index of the pattern variant
+	 * @return the matching result
+	 */
+	private MatchResult match(String input, int variant) {
 
-		Matcher matcher = pattern.matcher(input);
+		Matcher matcher = getVariant(variant).matcher(input);
 
 		if ((matcher.matches())) {
 
 			MatchResult result = new MatchResult(matcher.start(), matcher.end());
 			for (String slot : slots.keySet()) {
 				String filledValue = matcher.group(slots.get(slot));
-				if (!StringUtils.checkForm(filledValue) && permutatePattern()) {
-					return match(str);
+				if (!StringUtils.checkForm(filledValue)
+						&& variant < getVariants().length - 1) {
+					return match(input, variant + 1);
 				}
 				result.addPair(slot, filledValue);
 			}
@@ -161,8 +201,21 @@ class RegexTemplate implements Template {
 	 */
 	@Override
 	public List<MatchResult> find(String str, int maxResults) {
-		str = str.trim();
-		Matcher matcher = pattern.matcher(str);
+		return find(str.trim(), maxResults, 0);
+	}
+
+	/**
+	 * Tries to find all occurrences of the given pattern variant in the provided
+	 * string. If an occurrence leads to slot values with unbalanced parentheses or
+	 * brackets, the search is restarted with the next variant.
+	 * 
+	 * @param str the (trimmed) string
+	 * @param maxResults the maximum number of results
+	 * @param variant the index of the pattern variant
+	 * @return the occurrences found in the string
+	 */
+	private List<MatchResult> find(String str, int maxResults, int variant) {
+		Matcher matcher = getVariant(variant).matcher(str);
 		List<MatchResult> results = new ArrayList<MatchResult>();
 
 		while ((matcher.find())) {
@@ -180,8 +233,9 @@ class RegexTemplate implements Template {
 
 				// quick-fix to handle some rare cases where the occurrence found
 				// by the regex leads to unbalanced parentheses or brackets.
-				if (!StringUtils.checkForm(filledValue) && permutatePattern()) {
-					return find(str, maxResults);
+				if (!StringUtils.checkForm(filledValue)
+						&& variant < getVariants().length - 1) {
+					return find(str, maxResults, variant + 1);
 				}
 				result.addPair(slot, filledValue);
 			}
@@ -194,6 +248,58 @@ class RegexTemplate implements Template {
 		return results;
 	}
 
+	/**
+	 * Returns the pattern variant with the given index (the first variant being
+	 * the pattern itself).
+	 * 
+	 * @param variant the index of the pattern variant
+	 * @return the corresponding pattern
+	 */
+	private Pattern getVariant(int variant) {
+		return (variant == 0) ? pattern : getVariants()[variant];
+	}
+
+	/**
+	 * Returns the variants of the pattern, compiling them if necessary. Several
+	 * threads may compile the variants concurrently, but they all produce the same
+	 * (immutable) patterns.
+	 * 
+	 * @return the variants of the pattern
+	 */
+	private Pattern[] getVariants() {
+		Pattern[] result = variants;
+		if (result == null) {
+			List<Pattern> list = new ArrayList<Pattern>();
+			list.add(pattern);
+			for (String variant = permutatePattern(pattern.pattern());
+					variant != null; variant = permutatePattern(variant)) {
+				list.add(Pattern.compile(variant,
+						Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+			}
+			result = list.toArray(new Pattern[list.size()]);
+			variants = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the memo of full match results, creating it if necessary.
+	 * 
+	 * @return the memo
+	 */
+	private Map<String, MatchResult> getMemo() {
+		Map<String, MatchResult> result = memo;
+		if (result == null) {
+			synchronized (this) {
+				if (memo == null) {
+					memo = new ConcurrentHashMap<String, MatchResult>();
+				}
+				result = memo;
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Returns true if all slots are filled by the assignment. Else, returns false.
 	 */
@@ -262,19 +368,18 @@ class RegexTemplate implements Template {
 	 * instance, when the template pred({X},{Y}) is matched against a string
 	 * pred(foo,bar(1,2)), the resulting match is X="foo,bar(1" and Y="2)". We can
 	 * get the desired result X="foo", Y="bar(1,2)" by changing the patterns,
-	 * replacing greedy quantifiers by reluctant or possessive ones.
+	 * replacing greedy quantifiers by reluctant or possessive ones. The
+	 * permutations are computed once, when the template is constructed.
 	 * 
-	 * @return true if the permutation resulted in a change in the pattern. else,
-	 *         false.
+	 * @param regex the regular expression
+	 * @return the permutated expression, or null if no permutation is possible
 	 */
-	private boolean permutatePattern() {
-		String newPattern = pattern.pattern().replaceFirst("\\(\\.\\+\\)", "(.+?)");
-		if (newPattern.equals(pattern.pattern())) {
-			newPattern = pattern.pattern().replaceFirst("\\(\\.\\?\\)", "(.++)");
+	private static String permutatePattern(String regex) {
+		String newPattern = regex.replaceFirst("\\(\\.\\+\\)", "(.+?)");
+		if (newPattern.equals(regex)) {
+			newPattern = regex.replaceFirst("\\(\\.\\?\\)", "(.++)");
 		}
-		boolean change = !(newPattern.equals(pattern.pattern()));
-		pattern = Pattern.compile(newPattern);
-		return change;
+		return (newPattern.equals(regex)) ? null : newPattern;
 	}
 
 	/**
@@ -0,0 +1,285 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.templates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import opendial.utils.StringUtils;
+
+/**
+ * Matcher searching for a collection of string templates in a single pass over
+ * the input string. The templates are compiled into an Aho-Corasick automaton,
+ * and the result of each scan (the set of templates occurring in the string) is
+ * memoised, such that all the templates can be checked against the same input
+ * with only one scan.
+ * 
+ * <p>
+ * The occurrences are determined in the same way as in
+ * {@link StringTemplate#find(String, int)}: the input is trimmed, occurrences are
+ * searched from left to right without overlaps, and templates that represent
+ * whole words must be delimited by punctuation or whitespaces.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public class StringMatcher {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// maximum number of input strings whose scan is memoised
+	public static int MAX_MEMO_SIZE = 1000;
+
+	// the string templates to search for
+	final List<StringTemplate> templates;
+
+	// the index of each template string
+	final Map<String, Integer> templateIds;
+
+	// the compiled automaton (null if not yet compiled)
+	volatile Automaton automaton;
+
+	// memoised scans, mapping input strings to the indices of the templates
+	// occurring in them
+	final Map<String, BitSet> scans;
+
+	/**
+	 * Creates a new, empty matcher
+	 */
+	public StringMatcher() {
+		templates = new ArrayList<StringTemplate>();
+		templateIds = new HashMap<String, Integer>();
+		scans = new ConcurrentHashMap<String, BitSet>();
+	}
+
+	/**
+	 * Adds a template to the matcher, and returns its index. If the template is
+	 * not a (non-empty) string template, the method returns -1.
+	 * 
+	 * @param template the template to add
+	 * @return the index of the template, or -1 if it cannot be added
+	 */
+	public synchronized int addTemplate(Template template) {
+		if (!(template instanceof StringTemplate) || template.toString().isEmpty()) {
+			return -1;
+		}
+		String str = template.toString();
+		if (!templateIds.containsKey(str)) {
+			templateIds.put(str, templates.size());
+			templates.add((StringTemplate) template);
+			automaton = null;
+			scans.clear();
+		}
+		return templateIds.get(str);
+	}
+
+	/**
+	 * Returns true if the template with the given index occurs in the string, and
+	 * false otherwise.
+	 * 
+	 * @param str the string to search
+	 * @param templateId the template index
+	 * @return true if the template occurs in the string, false otherwise
+	 */
+	public boolean contains(String str, int templateId) {
+		BitSet found = scans.get(str);
+		if (found == null) {
+			found = getAutomaton().scan(str.trim());
+			if (scans.size() >= MAX_MEMO_SIZE) {
+				scans.clear();
+			}
+			scans.put(str, found);
+		}
+		return found.get(templateId);
+	}
+
+	/**
+	 * Returns the number of templates in the matcher
+	 * 
+	 * @return the number of templates
+	 */
+	public int size() {
+		return templates.size();
+	}
+
+	/**
+	 * Returns the compiled automaton for the templates (compiling it if necessary)
+	 * 
+	 * @return the automaton
+	 */
+	private Automaton getAutomaton() {
+		Automaton a = automaton;
+		if (a == null) {
+			synchronized (this) {
+				if (automaton == null) {
+					automaton = new Automaton(templates);
+				}
+				a = automaton;
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Aho-Corasick automaton over the template strings.
+	 */
+	static final class Automaton {
+
+		// the template strings and whether they must be delimited
+		final String[] strings;
+		final boolean[] whole;
+
+		// transitions, mapping (state,character) pairs to the next state
+		final Map<Long, Integer> transitions;
+
+		// failure transition for each state
+		final int[] failures;
+
+		// templates ending at each state (including via failure transitions)
+		final int[][] outputs;
+
+		/**
+		 * Compiles the automaton for the templates
+		 * 
+		 * @param templates the templates
+		 */
+		Automaton(List<StringTemplate> templates) {
+			strings = new String[templates.size()];
+			whole = new boolean[templates.size()];
+			transitions = new HashMap<Long, Integer>();
+			List<List<Integer>> stateOutputs = new ArrayList<List<Integer>>();
+			stateOutputs.add(new ArrayList<Integer>());
+
+			// building the trie
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = templates.get(i).string;
+				whole[i] = templates.get(i).whole;
+				int state = 0;
+				for (int k = 0; k < strings[i].length(); k++) {
+					long key = getKey(state, strings[i].charAt(k));
+					Integer next = transitions.get(key);
+					if (next == null) {
+						next = stateOutputs.size();
+						stateOutputs.add(new ArrayList<Integer>());
+						transitions.put(key, next);
+					}
+					state = next;
+				}
+				stateOutputs.get(state).add(i);
+			}
+
+			// computing the failure transitions (breadth-first)
+			failures = new int[stateOutputs.size()];
+			List<List<long[]>> children = new ArrayList<List<long[]>>();
+			for (int s = 0; s < failures.length; s++) {
+				children.add(new ArrayList<long[]>());
+			}
+			for (Map.Entry<Long, Integer> t : transitions.entrySet()) {
+				int parent = (int) (t.getKey() >>> 16);
+				children.get(parent).add(new long[] { t.getKey() & 0xFFFF,
+						t.getValue() });
+			}
+			Deque<Integer> queue = new ArrayDeque<Integer>();
+			queue.add(0);
+			while (!queue.isEmpty()) {
+				int state = queue.poll();
+				for (long[] child : children.get(state)) {
+					char c = (char) child[0];
+					int next = (int) child[1];
+					int failure = 0;
+					if (state != 0) {
+						int f = failures[state];
+						while (f != 0 && !transitions.containsKey(getKey(f, c))) {
+							f = failures[f];
+						}
+						Integer target = transitions.get(getKey(f, c));
+						failure = (target != null) ? target : 0;
+					}
+					failures[next] = failure;
+					stateOutputs.get(next).addAll(stateOutputs.get(failure));
+					queue.add(next);
+				}
+			}
+			outputs = new int[stateOutputs.size()][];
+			for (int s = 0; s < outputs.length; s++) {
+				outputs[s] = stateOutputs.get(s).stream().mapToInt(i -> i).toArray();
+			}
+		}
+
+		/**
+		 * Scans the string and returns the indices of the templates occurring in
+		 * it.
+		 * 
+		 * @param str the (trimmed) string
+		 * @return the indices of the templates found in the string
+		 */
+		BitSet scan(String str) {
+			BitSet found = new BitSet(strings.length);
+			int[] lastEnds = new int[strings.length];
+			int state = 0;
+			for (int k = 0; k < str.length(); k++) {
+				char c = str.charAt(k);
+				Integer next = transitions.get(getKey(state, c));
+				while (next == null && state != 0) {
+					state = failures[state];
+					next = transitions.get(getKey(state, c));
+				}
+				state = (next != null) ? next : 0;
+				for (int i : outputs[state]) {
+					int end = k + 1;
+					int start = end - strings[i].length();
+
+					// occurrences overlapping with a previous one are skipped
+					if (start < lastEnds[i]) {
+						continue;
+					}
+					lastEnds[i] = end;
+					if (!whole[i] || StringUtils.isDelimited(str, start, end)) {
+						found.set(i);
+					}
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * Returns the key for the transition from the state with the character
+		 * 
+		 * @param state the state
+		 * @param c the character
+		 * @return the corresponding key
+		 */
+		private static long getKey(int state, char c) {
+			return (((long) state) << 16) | c;
+		}
+	}
+}
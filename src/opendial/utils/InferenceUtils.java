@@ -37,6 +37,7 @@ import java.util.stream.Collectors;
 
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.Combinations;
 
 /**
  * Utility functions for inference operations.
@@ -119,20 +120,7 @@ public class InferenceUtils {
 			Map<String, Set<Value>> valuesMatrix) {
 
 		try {
-			// start with a single, empty assignment
-			Set<Assignment> assignments = new HashSet<Assignment>();
-			assignments.add(new Assignment());
-
-			// at each iterator, we expand each assignment with a new
-			// combination
-			for (String label : valuesMatrix.keySet()) {
-				Set<Value> values = valuesMatrix.get(label);
-				assignments = assignments.stream()
-						.flatMap(a -> values.stream()
-								.map(v -> new Assignment(a, label, v)).sequential())
-						.collect(Collectors.toSet());
-			}
-			return assignments;
+			return Combinations.stream(valuesMatrix).collect(Collectors.toSet());
 		}
 		catch (OutOfMemoryError e) {
 			log.fine("out of memory error, initial matrix: " + valuesMatrix);
@@ -23,12 +23,25 @@
 
 package opendial.bn;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.CompactAssignment;
+import opendial.datastructs.SymbolTable;
+import opendial.datastructs.ValueRange;
 
 import org.junit.Test;
 
@@ -62,4 +75,78 @@ public class AssignmentTest {
 		assertFalse(a1bis.equals(a2));
 		assertFalse(a1bis.hashCode() == a2.hashCode());
 	}
+
+	@Test
+	public void testCompactAssignment() {
+		Assignment a = Assignment.createFromString("A=1 ^ B=foo ^ !C");
+		CompactAssignment c = a.toCompact();
+		assertEquals(a.hashCode(), c.hashCode());
+		assertEquals(a, c.toAssignment());
+		assertEquals(c, new Assignment(a).toCompact());
+		assertEquals(ValueFactory.create("foo"), c.getValue("B"));
+		assertEquals(ValueFactory.none(), c.getValue("unknownVariable"));
+
+		CompactAssignment c2 = c.with("D", ValueFactory.create(2));
+		assertEquals(4, c2.size());
+		assertEquals(new Assignment(a, "D", 2).hashCode(), c2.hashCode());
+		assertTrue(c2.contains(c));
+		assertFalse(c.contains(c2));
+		assertTrue(c2.contains(a));
+		assertEquals(c, c2.getTrimmed(Arrays.asList("A", "B", "C")));
+
+		CompactAssignment c3 = c.with("B", ValueFactory.create("bar"));
+		assertEquals(new Assignment(a, "B", "bar"), c3.toAssignment());
+		assertFalse(c3.consistentWith(c2));
+		assertTrue(c3.consistentWith(new Assignment("D", 3)));
+		assertTrue(c2.consistentWith(new CompactAssignment(
+				Assignment.createFromString("A=1 ^ E=3"))));
+		assertFalse(c2.consistentWith(new Assignment("C", true)));
+	}
+
+	@Test
+	public void testSymbolTable() {
+		List<String> vars = IntStream.range(0, 200).parallel()
+				.mapToObj(i -> "symbolVar" + i).collect(Collectors.toList());
+		List<Integer> ids = vars.parallelStream().map(v -> SymbolTable.getId(v))
+				.collect(Collectors.toList());
+		assertEquals(200, new HashSet<Integer>(ids).size());
+		for (int i = 0; i < vars.size(); i++) {
+			assertEquals(vars.get(i), SymbolTable.getVariable(ids.get(i)));
+			assertEquals((int) ids.get(i), SymbolTable.getId(vars.get(i)));
+		}
+		assertTrue(SymbolTable.size() >= 200);
+		assertEquals(-1, SymbolTable.lookup("unknownSymbolVar"));
+	}
+
+	@Test
+	public void testCombinations() {
+		ValueRange range = new ValueRange();
+		range.addValues("A", Arrays.asList(ValueFactory.create(1),
+				ValueFactory.create(2), ValueFactory.create(3)));
+		range.addValues("B", Arrays.asList(ValueFactory.create(true),
+				ValueFactory.create(false)));
+		range.addValues("C", Arrays.asList(ValueFactory.create("x"),
+				ValueFactory.create("y"), ValueFactory.create("z"),
+				ValueFactory.create("w")));
+		Set<Assignment> expected = new HashSet<Assignment>();
+		for (Value a : range.getValues("A")) {
+			for (Value b : range.getValues("B")) {
+				for (Value c : range.getValues("C")) {
+					expected.add(new Assignment(new Assignment("A", a),
+							new Assignment(new Assignment("B", b),
+									new Assignment("C", c))));
+				}
+			}
+		}
+		List<Assignment> sequential =
+				range.getCombinations().collect(Collectors.toList());
+		assertEquals(24, sequential.size());
+		assertEquals(expected, new HashSet<Assignment>(sequential));
+		assertEquals(expected,
+				range.getCombinations().parallel().collect(Collectors.toSet()));
+		assertEquals(expected, range.linearise());
+		assertEquals(1, new ValueRange().getCombinations().count());
+		assertEquals(0, new ValueRange(Collections.singletonMap("D",
+				new HashSet<Value>())).getCombinations().count());
+	}
 }
@@ -27,7 +27,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 import opendial.bn.distribs.CategoricalTable;
@@ -304,4 +307,34 @@ public class BNetworkStructureTest {
 		assertEquals(1, bn.getCliques().get(1).size());
 		assertEquals(1, bn.getCliques().get(0).size());
 	}
+
+	@Test
+	public void testStructuralIndex() {
+		BNetwork bn = NetworkExamples.constructBasicNetwork2();
+		List<BNode> sorted = new ArrayList<BNode>(bn.getNodes());
+		Collections.sort(sorted);
+		assertEquals(sorted, bn.getSortedNodes());
+		assertTrue(bn.isIndexed(bn.getNode("Alarm")));
+		assertEquals(3, bn.getNode("MaryCalls").getAncestorIds().size());
+		assertEquals("Alarm", bn.getNode("MaryCalls").getAncestorIds().get(0));
+		assertTrue(bn.getNode("Burglary")
+				.hasDescendant(Collections.singleton("MaryCalls")));
+
+		bn.getNode("MaryCalls").removeInputNode("Alarm");
+		assertFalse(bn.getNode("Burglary")
+				.hasDescendant(Collections.singleton("MaryCalls")));
+		assertEquals(1, bn.getNode("MaryCalls").getClique().size());
+		sorted = new ArrayList<BNode>(bn.getNodes());
+		Collections.sort(sorted);
+		assertEquals(sorted, bn.getSortedNodes());
+
+		bn.getNode("Burglary").addInputNode(bn.getNode("MaryCalls"));
+		assertTrue(bn.getNode("MaryCalls")
+				.hasDescendant(Collections.singleton("JohnCalls")));
+		assertEquals(4, bn.getNode("JohnCalls").getAncestorIds().size());
+
+		new BNetwork().addNode(bn.getNode("Alarm"));
+		assertFalse(bn.isIndexed(bn.getNode("Burglary")));
+		assertEquals(4, bn.getNode("JohnCalls").getAncestorIds().size());
+	}
 }
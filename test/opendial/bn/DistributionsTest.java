@@ -26,14 +26,20 @@ package opendial.bn;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import opendial.Settings;
 import opendial.bn.distribs.CategoricalTable;
 import opendial.bn.distribs.ConditionalTable;
 import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.EmpiricalDistribution;
 import opendial.bn.distribs.IndependentDistribution;
 import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.SingleValueDistribution;
 import opendial.bn.distribs.densityfunctions.DirichletDensityFunction;
 import opendial.bn.distribs.densityfunctions.GaussianDensityFunction;
 import opendial.bn.distribs.densityfunctions.KernelDensityFunction;
@@ -45,6 +51,10 @@ import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.PointIndex;
+import opendial.inference.approximate.AliasIntervals;
+import opendial.inference.approximate.Sample;
+import opendial.inference.approximate.SampleStore;
 import opendial.inference.approximate.SamplingAlgorithm;
 import opendial.inference.exact.VariableElimination;
 import opendial.utils.MathUtils;
@@ -85,6 +95,121 @@ public class DistributionsTest {
 				0.1, 0.001);
 	}
 
+	@Test
+	public void testAliasSampling() {
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("var1");
+		builder.addRow("val1", 0.6);
+		builder.addRow("val2", 0.3);
+		builder.addRow("val3", 0.1);
+		builder.addRow("val4", 0.0);
+		IndependentDistribution table = builder.build();
+
+		Map<Value, Integer> counts = new HashMap<Value, Integer>();
+		for (int i = 0; i < 20000; i++) {
+			counts.merge(table.sample(), 1, Integer::sum);
+		}
+		assertEquals(0.6, counts.get(ValueFactory.create("val1")) / 20000.0, 0.02);
+		assertEquals(0.3, counts.get(ValueFactory.create("val2")) / 20000.0, 0.02);
+		assertEquals(0.1, counts.get(ValueFactory.create("val3")) / 20000.0, 0.02);
+		assertFalse(counts.containsKey(ValueFactory.create("val4")));
+
+		AliasIntervals<String> intervals = new AliasIntervals<String>(
+				Arrays.asList("a", "b"), s -> (s.equals("a")) ? 3.0 : 1.0);
+		int nbA = 0;
+		for (int i = 0; i < 20000; i++) {
+			nbA += (intervals.sample().equals("a")) ? 1 : 0;
+		}
+		assertEquals(0.75, nbA / 20000.0, 0.02);
+	}
+
+	@Test
+	public void testSortedTable() {
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("var1");
+		for (int i = 0; i < 20; i++) {
+			builder.addRow("val" + i, 0.01 * (i + 1));
+		}
+		builder.incrementRow(ValueFactory.create("val0"), 0.25);
+		builder.removeRow(ValueFactory.create("val19"));
+		builder.normalise();
+		CategoricalTable table = builder.build().toDiscrete();
+		assertEquals(19, table.size());
+		assertEquals(ValueFactory.create("val0"), table.getBest());
+		assertTrue(table.getNBest(2).hasProb(ValueFactory.create("val18")));
+		assertFalse(table.getNBest(2).hasProb(ValueFactory.create("val17")));
+		assertEquals(0.26 / 2.15, table.getProb("val0"), 0.0001);
+		assertEquals(0.0, table.getProb("val19"), 0.0001);
+		assertTrue(table.getValues().contains(ValueFactory.create("val5")));
+		assertEquals(table.getTable().hashCode(), table.hashCode());
+
+		assertTrue(table.pruneValues(0.05));
+		assertEquals(ValueFactory.create("val0"), table.getBest());
+		assertFalse(table.hasProb(ValueFactory.create("val1")));
+		assertEquals(1.0, table.getTable().values().stream()
+				.mapToDouble(d -> d).sum(), 0.0001);
+		assertEquals(table, table.copy());
+	}
+
+	@Test
+	public void testSampleStore() {
+		SampleStore store = new SampleStore();
+		for (int i = 0; i < 1000; i++) {
+			Sample sample = new Sample(new Assignment(
+					new Assignment("A", (i % 4 == 0) ? "a1" : "a2"), "B", i % 2 == 0));
+			sample.setWeight((i % 4 == 0) ? 3.0 : 1.0);
+			store.add(sample);
+		}
+		store.add(new Assignment("A", "a3"));
+		assertEquals(1001, store.size());
+		assertEquals(250,
+				store.getCounts("A").get(ValueFactory.create("a1")).intValue());
+		assertEquals(ValueFactory.none(), store.getValue(1000, "B"));
+		assertEquals(new Assignment(new Assignment("A", "a2"), "B", false),
+				store.getAssignment(1));
+
+		SampleStore redrawn = store.resample();
+		assertEquals(1001, redrawn.size());
+		assertEquals(0.5, redrawn.getCounts("A").get(ValueFactory.create("a1"))
+				/ 1001.0, 0.05);
+		for (int i = 0; i < redrawn.size(); i++) {
+			double expected = redrawn.getValue(i, "A")
+					.equals(ValueFactory.create("a1")) ? 3.0 : 1.0;
+			assertEquals(expected, redrawn.getWeight(i), 0.0001);
+		}
+
+		SampleStore store2 = new SampleStore();
+		Sample sample1 = new Sample(new Assignment("A", "a1"));
+		Sample sample2 = new Sample(new Assignment("A", "a2"));
+		sample2.setWeight(0.0);
+		store2.add(sample1);
+		store2.add(sample2);
+		SampleStore redrawn2 = store2.resample();
+		redrawn2.addLogWeight(0, Math.log(2.0));
+		assertEquals(2.0, redrawn2.getWeight(0), 0.0001);
+		assertEquals(2.0, redrawn2.getWeight(1), 0.0001);
+		redrawn2.add(new Assignment("A", "a3"));
+		redrawn2.addLogWeight(2, Math.log(2.0));
+		assertEquals(2.0, redrawn2.getWeight(1), 0.0001);
+		assertEquals(2.0, redrawn2.getWeight(2), 0.0001);
+
+		EmpiricalDistribution distrib = new EmpiricalDistribution(redrawn);
+		assertEquals(0.5, distrib.getMarginal("A").getProb("a1"), 0.05);
+		assertEquals(0.5, distrib.getProb(
+				new Assignment(new Assignment("A", "a1"), "B", true)), 0.05);
+		assertEquals(0.0, distrib.getProb(
+				new Assignment(new Assignment("A", "a1"), "B", false)), 0.001);
+		EmpiricalDistribution copy = distrib.copy();
+		copy.modifyVariableId("A", "A2");
+		assertEquals(0.5, copy.getMarginal("A2").getProb("a1"), 0.05);
+		assertEquals(0.5, distrib.getMarginal("A").getProb("a1"), 0.05);
+
+		store.retainRows(
+				i -> !store.getValue(i, "A").equals(ValueFactory.create("a1")));
+		assertEquals(751, store.size());
+		redrawn.addAll(store);
+		assertEquals(1752, redrawn.size());
+		assertEquals(ValueFactory.create("a3"), redrawn.getValue(1751, "A"));
+	}
+
 	@Test
 	public void testMaths() {
 		assertEquals(4.0, MathUtils.getVolume(2, 1), 0.001);
@@ -201,6 +326,45 @@ public class DistributionsTest {
 		assertEquals(distrib.getFunction().getVariance()[0], 0.47, 0.01);
 	}
 
+	@Test
+	public void testNearestLookup() {
+		Random rand = new Random(12);
+		double[][] points = new double[200][];
+		int[] ids = new int[200];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new double[] { rand.nextDouble(), rand.nextDouble(),
+					rand.nextDouble() };
+			ids[i] = i;
+		}
+		PointIndex index = new PointIndex(points, ids);
+		for (int k = 0; k < 100; k++) {
+			double[] query = { rand.nextDouble(), rand.nextDouble(),
+					rand.nextDouble() };
+			int closest = 0;
+			for (int i = 1; i < points.length; i++) {
+				if (MathUtils.getDistance(points[i], query) < MathUtils
+						.getDistance(points[closest], query)) {
+					closest = i;
+				}
+			}
+			assertEquals(closest, index.getNearest(query));
+		}
+
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("A");
+		for (int i = 0; i < 50; i++) {
+			builder.addRow(i * 0.2, (i + 1) / 1275.0);
+		}
+		CategoricalTable table = builder.build().toDiscrete();
+		assertEquals(36 / 1275.0, table.getProb(7.08), 0.0001);
+		assertEquals(1 / 1275.0, table.getProb(-3.0), 0.0001);
+		assertEquals(50 / 1275.0, table.getProb(15.0), 0.0001);
+		table.pruneValues(40 / 1275.0);
+		assertEquals(table.getProb(7.8), table.getProb(-3.0), 0.0001);
+		table.pruneValues(0.1);
+		assertEquals(1.0, table.getProb(9.8), 0.0001);
+		assertEquals(0.0, table.getProb(-3.0), 0.0001);
+	}
+
 	@Test
 	public void testUniformDistrib() {
 		ContinuousDistribution continuous2 = new ContinuousDistribution("var2",
@@ -279,6 +443,48 @@ public class DistributionsTest {
 		assertEquals(continuous2.getFunction().getVariance()[0], 1.07, 0.01);
 	}
 
+	@Test
+	public void testApproximateKernel() {
+		Random rand = new Random(5);
+		for (int dim = 1; dim <= 3; dim++) {
+			double[][] points = new double[2000][dim];
+			for (double[] point : points) {
+				for (int d = 0; d < dim; d++) {
+					point[d] = rand.nextGaussian() * (d + 1);
+				}
+			}
+			KernelDensityFunction kde = new KernelDensityFunction(points);
+			for (int k = 0; k < 21; k++) {
+				double[] x = new double[dim];
+				for (int d = 0; d < dim; d++) {
+					x[d] = rand.nextGaussian() * 2;
+				}
+				// the last point is far from all data points
+				if (k == 20) {
+					for (double[] point : points) {
+						x[0] = Math.max(x[0], point[0] + 8 * kde.getBandwidth()[0]);
+					}
+				}
+				double approx = kde.getDensity(x);
+				double error = KernelDensityFunction.MAX_DENSITY_ERROR;
+				double exact;
+				KernelDensityFunction.MAX_DENSITY_ERROR = 0.0;
+				try {
+					exact = kde.getDensity(x);
+				}
+				finally {
+					KernelDensityFunction.MAX_DENSITY_ERROR = error;
+				}
+				assertTrue(exact > 0.0);
+				assertTrue(approx > 0.0);
+				assertTrue(exact >= approx);
+				assertEquals(exact, approx, error * exact);
+			}
+			assertEquals(0.0, kde.getMean()[dim - 1], 0.2 * dim);
+			assertEquals(dim * dim, kde.copy().getVariance()[dim - 1], 0.2 * dim);
+		}
+	}
+
 	@Test
 	public void testEmpiricalDistrib() {
 
@@ -316,6 +522,77 @@ public class DistributionsTest {
 
 	}
 
+	@Test
+	public void testEmpiricalCaches() {
+		EmpiricalDistribution distrib = new EmpiricalDistribution();
+		for (int i = 0; i < 100; i++) {
+			distrib.addSample(new Assignment(
+					new Assignment("A", (i % 4 == 0) ? "a1" : "a2"), "B", i % 2 == 0));
+		}
+		Assignment a1 = new Assignment(new Assignment("A", "a1"), "B", true);
+		assertEquals(0.25, distrib.getProb(a1), 0.0001);
+		assertEquals(3, distrib.getValues().size());
+		assertEquals(new Assignment(new Assignment("A", "a2"), "B", false),
+				distrib.getBest());
+		assertEquals(0.25, distrib.getMarginal("A").getProb("a1"), 0.0001);
+
+		for (int i = 0; i < 100; i++) {
+			distrib.addSample(a1);
+		}
+		assertEquals(0.625, distrib.getProb(a1), 0.0001);
+		assertEquals(0.625, distrib.toDiscrete().getProb(a1), 0.0001);
+		assertEquals(a1, distrib.getBest());
+		IndependentDistribution marginal = distrib.getMarginal("A");
+		assertEquals(0.625, marginal.getProb("a1"), 0.0001);
+		marginal.pruneValues(0.5);
+		assertEquals(0.375, distrib.getMarginal("A").getProb("a2"), 0.0001);
+		assertEquals(1.0, distrib.getMarginal("A", Collections.singleton("B"))
+				.getProb(new Assignment("B", true), ValueFactory.create("a1")),
+				0.2);
+
+		distrib.modifyVariableId("A", "A2");
+		assertEquals(0.625, distrib.getMarginal("A2").getProb("a1"), 0.0001);
+		assertEquals(0.625, distrib.getProb(new Assignment(
+				new Assignment("A2", "a1"), "B", true)), 0.0001);
+	}
+
+	@Test
+	public void testCompiledTable() {
+		ConditionalTable.Builder builder = new ConditionalTable.Builder("var3");
+		for (int i = 0; i < 3; i++) {
+			for (boolean b : new boolean[] { true, false }) {
+				Assignment cond =
+						new Assignment(new Assignment("var1", "val" + i), "var2", b);
+				builder.addRow(cond, "a", (b) ? 0.2 * i : 0.1);
+				builder.addRow(cond, "b", (b) ? 0.3 : 0.5);
+			}
+		}
+		ConditionalTable table = builder.build();
+		assertTrue(table.compile());
+
+		Assignment cond = new Assignment(new Assignment(
+				new Assignment("var1", "val2"), "var2", true), "var4", "other");
+		assertEquals(0.4, table.getProb(cond, ValueFactory.create("a")), 0.0001);
+		assertEquals(0.3, table.getProb(cond, ValueFactory.create("None")), 0.0001);
+		assertEquals(0.0, table.getProb(cond, ValueFactory.create("c")), 0.0001);
+		assertEquals(0.0, table.getProb(new Assignment("var1", "val2"),
+				ValueFactory.create("a")), 0.0001);
+		assertEquals(0.5, table.getProb(new Assignment(new Assignment("var1",
+				"val1"), "var2", false), ValueFactory.create("b")), 0.0001);
+		assertTrue(table.getValues().contains(table.sample(cond)));
+
+		table.addDistrib(new Assignment(new Assignment("var1", "val3"), "var2",
+				false), new SingleValueDistribution("var3", "b"));
+		assertEquals(1.0, table.getProb(new Assignment(new Assignment("var1",
+				"val3"), "var2", false), ValueFactory.create("b")), 0.0001);
+		assertEquals(0.4, table.getProb(cond, ValueFactory.create("a")), 0.0001);
+
+		table.addDistrib(new Assignment("var1", "val4"),
+				new SingleValueDistribution("var3", "b"));
+		assertFalse(table.compile());
+		assertEquals(0.4, table.getProb(cond, ValueFactory.create("a")), 0.0001);
+	}
+
 	@Test
 	public void empiricalDistribContinuous() {
 		ContinuousDistribution continuous = new ContinuousDistribution("var1",
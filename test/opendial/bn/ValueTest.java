@@ -27,6 +27,8 @@ import java.util.logging.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -125,4 +127,25 @@ public class ValueTest {
 		assertEquals(table.getProb(new double[] { 0.5, 0.4 }), 0.4, 0.01);
 
 	}
+
+	@Test
+	public void testInterning() {
+		String str = "Confirm(" + "Destination)";
+		Value v1 = ValueFactory.create(str);
+		Value v2 = ValueFactory.create("Confirm(Destination)");
+		assertTrue(v1 instanceof StringVal);
+		assertSame(v1, v2);
+		assertEquals(v1, ValueFactory.create("confirm(destination)"));
+		assertNotSame(v1, ValueFactory.create("confirm(destination)"));
+		assertSame(ValueFactory.create("2.5"), ValueFactory.create("2.5"));
+		assertSame(ValueFactory.create(new String("2.5")),
+				ValueFactory.create("2.50"));
+		assertTrue(ValueFactory.create("-2.5") instanceof DoubleVal);
+		assertTrue(ValueFactory.create("TRUE") instanceof BooleanVal);
+		assertSame(ValueFactory.create(true), ValueFactory.create("true"));
+		assertEquals(ValueFactory.none(), ValueFactory.create("none"));
+		assertTrue(ValueFactory.create("[1.0, 2.0]") instanceof ArrayVal);
+		assertTrue(ValueFactory.create("[a, b]") instanceof SetVal);
+		assertTrue(ValueFactory.create("") instanceof StringVal);
+	}
 }
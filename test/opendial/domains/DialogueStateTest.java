@@ -23,11 +23,18 @@
 
 package opendial.domains;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
 import java.util.logging.*;
 
 import opendial.DialogueState;
 import opendial.DialogueSystem;
+import opendial.bn.distribs.IndependentDistribution;
 import opendial.common.InferenceChecks;
+import opendial.common.NetworkExamples;
+import opendial.datastructs.Assignment;
 import opendial.domains.rules.effects.Effect;
 import opendial.modules.ForwardPlanner;
 import opendial.modules.StatePruner;
@@ -103,4 +110,33 @@ public class DialogueStateTest {
 
 	}
 
+	@Test
+	public void testQueryCache() {
+		DialogueState state =
+				new DialogueState(NetworkExamples.constructBasicNetwork2());
+		state.addEvidence(new Assignment("JohnCalls"));
+		long version = state.getVersion();
+
+		IndependentDistribution distrib1 = state.queryProb("Burglary");
+		IndependentDistribution distrib2 = state.queryProb("Burglary");
+		assertNotSame(distrib1, distrib2);
+		assertEquals(distrib1.getProb(true), distrib2.getProb(true), 0.0001);
+		assertEquals(1, state.getQueryCacheMisses());
+		assertEquals(1, state.getQueryCacheHits());
+		assertEquals(version, state.getVersion());
+
+		state.addEvidence(new Assignment("MaryCalls"));
+		assertTrue(state.getVersion() > version);
+		IndependentDistribution distrib3 = state.queryProb("Burglary");
+		assertEquals(2, state.getQueryCacheMisses());
+		assertTrue(distrib3.getProb(true) > distrib1.getProb(true));
+
+		version = state.getVersion();
+		state.getNode("Alarm").removeInputNode("Earthquake");
+		assertTrue(state.getVersion() > version);
+		state.queryProb("Burglary");
+		assertEquals(3, state.getQueryCacheMisses());
+		assertEquals(1, state.getQueryCacheHits());
+	}
+
 }
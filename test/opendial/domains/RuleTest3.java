@@ -27,18 +27,29 @@ import java.util.logging.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import opendial.DialogueState;
 import opendial.DialogueSystem;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
+import opendial.datastructs.Assignment;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.conditions.BasicCondition;
+import opendial.domains.rules.conditions.BasicCondition.Relation;
+import opendial.domains.rules.distribs.AnchoredRule;
+import opendial.domains.rules.distribs.AnchoringCache;
 import opendial.domains.rules.effects.BasicEffect;
 import opendial.domains.rules.effects.Effect;
 import opendial.modules.ForwardPlanner;
 import opendial.modules.StatePruner;
 import opendial.readers.XMLDomainReader;
+import opendial.templates.Template;
 
 import org.junit.Test;
 
@@ -148,4 +159,110 @@ public class RuleTest3 {
 				0.01);
 	}
 
+	@Test
+	public void testConditionForms() {
+		BasicCondition ground = new BasicCondition("a_u", "hello", Relation.EQUAL);
+		assertTrue(ground.isSatisfiedBy(new Assignment("a_u", "hello")));
+		assertFalse(ground.isSatisfiedBy(new Assignment("a_u", "bye")));
+		assertFalse(ground.isSatisfiedBy(new Assignment()));
+		assertTrue(ground.getGroundings(new Assignment("a_u", "hello"))
+				.getAlternatives().contains(new Assignment()));
+		assertTrue(ground.getGroundings(new Assignment("a_u", "bye")).isFailed());
+
+		BasicCondition slotVar =
+				new BasicCondition("a_{X}", "2", Relation.GREATER_THAN);
+		assertTrue(slotVar.isSatisfiedBy(new Assignment(new Assignment("X", "u"),
+				new Assignment("a_u", 3.0))));
+		assertFalse(slotVar.isSatisfiedBy(new Assignment(new Assignment("X", "u"),
+				new Assignment("a_u", 1.0))));
+		assertFalse(slotVar.isSatisfiedBy(new Assignment("a_u", 3.0)));
+
+		BasicCondition slotValue =
+				new BasicCondition("a_u", "hello {Y}", Relation.EQUAL);
+		assertTrue(slotValue.isSatisfiedBy(new Assignment(
+				new Assignment("a_u", "hello world"), new Assignment("Y", "world"))));
+		assertEquals("world", slotValue.getGroundings(new Assignment("a_u",
+				"hello world")).getAlternatives().iterator().next().getValue("Y")
+				.toString());
+	}
+
+	@Test
+	public void testTriggerIndex() {
+		for (String file : Arrays.asList(test1domainFile, test2domainFile,
+				predictDomainFile, domainFile)) {
+			Domain domain = XMLDomainReader.extractDomain(file);
+			for (Model model : domain.getModels()) {
+				for (Template trigger : model.getTriggers()) {
+					List<String> vars = Arrays.asList(trigger.toString(), "u_u",
+							"a_m", "A_U", "bla");
+					List<Model> expected = domain.getModels().stream()
+							.filter(m -> m.isTriggered(vars))
+							.collect(Collectors.toList());
+					assertEquals(expected, domain.getTriggeredModels(vars));
+				}
+			}
+			Model removed = domain.getModels().remove(0);
+			List<String> vars = removed.getTriggers().stream()
+					.map(t -> t.toString()).collect(Collectors.toList());
+			assertFalse(domain.getTriggeredModels(vars).contains(removed));
+		}
+	}
+
+	@Test
+	public void testAnchoringCache() {
+		Domain domain = XMLDomainReader.extractDomain(test1domainFile);
+		Rule rule = domain.getModels().get(0).getRules().get(1);
+		DialogueState state = domain.getInitialState().copy();
+		AnchoringCache cache = new AnchoringCache();
+		new AnchoredRule(rule, state, new Assignment(), cache);
+		assertEquals(1, cache.size());
+		AnchoredRule cached = new AnchoredRule(rule, state, new Assignment(), cache);
+		assertEquals(1, cache.size());
+		AnchoredRule uncached = new AnchoredRule(rule, state, new Assignment());
+		assertTrue(cached.isRelevant());
+		assertEquals(uncached.getEffects(), cached.getEffects());
+		assertEquals(uncached.getOutputRange(), cached.getOutputRange());
+		assertEquals(uncached.getParameters(), cached.getParameters());
+		Assignment input = new Assignment("blabla", "pred(C)");
+		assertEquals(uncached.getProbDistrib(input).getValues(),
+				cached.getProbDistrib(input).getValues());
+
+		state.addToState(new Assignment("blabla", "pred(E)"));
+		state.reduce();
+		AnchoredRule updated = new AnchoredRule(rule, state, new Assignment(), cache);
+		assertEquals(2, cache.size());
+		assertTrue(updated.getOutputRange().getValues("found2'")
+				.contains(ValueFactory.create("E")));
+	}
+
+	@Test
+	public void testParallelAnchoring() {
+		for (String file : Arrays.asList(test1domainFile, test2domainFile,
+				inconditionFile)) {
+			Domain domain = XMLDomainReader.extractDomain(file);
+			List<DialogueState> states = new ArrayList<DialogueState>();
+			boolean oldParallel = Model.PARALLEL_ANCHORING;
+			try {
+				for (boolean parallel : Arrays.asList(false, true)) {
+					Model.PARALLEL_ANCHORING = parallel;
+					DialogueState state = domain.getInitialState().copy();
+					for (Model model : domain.getModels()) {
+						model.trigger(state);
+					}
+					states.add(state);
+				}
+			}
+			finally {
+				Model.PARALLEL_ANCHORING = oldParallel;
+			}
+			assertEquals(states.get(0).getNodeIds(), states.get(1).getNodeIds());
+			for (String nodeId : states.get(0).getChanceNodeIds()) {
+				assertEquals(states.get(0).getChanceNode(nodeId).getInputNodeIds(),
+						states.get(1).getChanceNode(nodeId).getInputNodeIds());
+				assertEquals(states.get(0).getChanceNode(nodeId).getValues(),
+						states.get(1).getChanceNode(nodeId).getValues());
+			}
+		}
+	}
+
 }
@@ -23,7 +23,10 @@
 
 package opendial.domains;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.function.Function;
 import java.util.logging.*;
 
@@ -38,7 +41,9 @@ import opendial.datastructs.Assignment;
 import opendial.datastructs.MathExpression;
 import opendial.readers.XMLDomainReader;
 import opendial.templates.FunctionalTemplate;
+import opendial.templates.StringMatcher;
 import opendial.templates.Template;
+import opendial.templates.Template.MatchResult;
 
 import org.junit.Test;
 
@@ -223,6 +228,67 @@ public class TemplateStringTest {
 		assertEquals(t.fillSlots(new Assignment("X", "3")).toString(), "5");
 	}
 
+	@Test
+	public void testCompiledMath() {
+		MathExpression exp = new MathExpression("2*a.b - (c^2)/4 + pi*0");
+		assertEquals(exp.evaluate(new Assignment(new Assignment("a.b", 1.5),
+				new Assignment("c", 2.0))), 2.0, 0.001);
+		assertEquals(exp.evaluate(new Assignment(new Assignment("a.b", -1.0),
+				new Assignment("c", 4.0))), -6.0, 0.001);
+		MathExpression exp2 = new MathExpression("x0 + 2*x1 - -x0");
+		assertEquals(exp2.evaluate(
+				new Assignment("x", ValueFactory.create(new double[] { 1.0, 3.0 }))),
+				8.0, 0.001);
+		assertEquals(new MathExpression("sin(pi/2)+e").evaluate(new Assignment()),
+				1 + Math.E,
+				0.001);
+	}
+
+	@Test
+	public void testRegexPermutations() {
+		Template t = Template.create("pred({X},{Y})");
+		for (int i = 0; i < 3; i++) {
+			MatchResult m = t.match("pred(foo,bar(1,2))");
+			assertEquals("foo", m.getValue("X").toString());
+			assertEquals("bar(1,2)", m.getValue("Y").toString());
+			m.addPair("X", "modified");
+			List<MatchResult> found = t.find("this is pred(foo,bar(1,2))", 10);
+			assertEquals(1, found.size());
+			assertEquals("bar(1,2)", found.get(0).getValue("Y").toString());
+			assertEquals("b", t.match("PRED(a,b)").getValue("Y").toString());
+		}
+		Template t2 = Template.create("hi {X}");
+		List<String> results = IntStream.range(0, 1000)
+				.parallel().mapToObj(i -> t2.match("hi " + (i % 50))
+						.getValue("X").toString())
+				.collect(Collectors.toList());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("" + (i % 50), results.get(i));
+		}
+	}
+
+	@Test
+	public void testStringMatcher() {
+		List<String> strings = Arrays.asList("bla", "bla bla", "la", "hello",
+				"hello world", "!", "a", "ab", "abab", "world");
+		List<String> inputs = Arrays.asList("bla bla bla", "hello, world!",
+				"blabla", "  ababab ab ", "la la land", "a b", "abab!", "hello");
+		StringMatcher matcher = new StringMatcher();
+		for (String str : strings) {
+			matcher.addTemplate(Template.create(str));
+		}
+		assertEquals(strings.size(), matcher.size());
+		for (String input : inputs) {
+			for (int i = 0; i < strings.size(); i++) {
+				Template t = Template.create(strings.get(i));
+				assertEquals(t.partialmatch(input).isMatching(),
+						matcher.contains(input, i));
+			}
+		}
+		assertEquals(-1, matcher.addTemplate(Template.create("hello {X}")));
+		assertEquals(3, matcher.addTemplate(Template.create("hello")));
+	}
+
 	@Test
 	public void ComplexRegex() {
 		Template t = Template.create("a (pizza)? margherita");
@@ -26,6 +26,7 @@ package opendial.inference;
 import java.util.logging.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -33,10 +34,12 @@ import java.util.Map;
 
 import opendial.bn.BNetwork;
 import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ConditionalTable;
 import opendial.bn.distribs.ContinuousDistribution;
 import opendial.bn.distribs.EmpiricalDistribution;
 import opendial.bn.distribs.MultivariateDistribution;
 import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.UtilityTable;
 import opendial.bn.distribs.densityfunctions.GaussianDensityFunction;
 import opendial.bn.distribs.densityfunctions.UniformDensityFunction;
 import opendial.bn.nodes.ChanceNode;
@@ -44,6 +47,11 @@ import opendial.bn.values.ValueFactory;
 import opendial.common.NetworkExamples;
 import opendial.datastructs.Assignment;
 import opendial.inference.approximate.SamplingAlgorithm;
+import opendial.inference.approximate.SamplingContext;
+import opendial.inference.approximate.SamplingStatistics;
+import opendial.inference.exact.DenseFactor;
+import opendial.inference.exact.EliminationOrder;
+import opendial.inference.exact.JunctionTree;
 import opendial.inference.exact.NaiveInference;
 import opendial.inference.exact.VariableElimination;
 
@@ -284,6 +292,220 @@ public class InferenceTest {
 
 	}
 
+	@Test
+	public void testDenseFactors() {
+		BNetwork network = NetworkExamples.constructBasicNetwork2();
+		VariableElimination ve = new VariableElimination();
+		Assignment evidence = new Assignment(Arrays.asList("JohnCalls", "MaryCalls"));
+
+		MultivariateDistribution dense =
+				ve.queryProb(network, Arrays.asList("Alarm", "Burglary"), evidence);
+		UtilityTable denseUtil =
+				ve.queryUtil(network, Arrays.asList("Action"), evidence);
+
+		int oldSize = DenseFactor.MAX_SIZE;
+		MultivariateDistribution sparse;
+		UtilityTable sparseUtil;
+		try {
+			DenseFactor.MAX_SIZE = 0;
+			sparse = ve.queryProb(network, Arrays.asList("Alarm", "Burglary"),
+					evidence);
+			sparseUtil = ve.queryUtil(network, Arrays.asList("Action"), evidence);
+		}
+		finally {
+			DenseFactor.MAX_SIZE = oldSize;
+		}
+
+		assertEquals(sparse.getValues(), dense.getValues());
+		for (Assignment a : sparse.getValues()) {
+			assertEquals(sparse.getProb(a), dense.getProb(a), 0.0001);
+		}
+		assertEquals(sparseUtil.getRows(), denseUtil.getRows());
+		for (Assignment a : sparseUtil.getRows()) {
+			assertEquals(sparseUtil.getUtil(a), denseUtil.getUtil(a), 0.0001);
+		}
+	}
+
+	@Test
+	public void testZeroProbEvidence() {
+		BNetwork network = new BNetwork();
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("E");
+		builder.addRow("a", 0.6);
+		builder.addRow("b", 0.4);
+		ChanceNode e = new ChanceNode("E", builder.build());
+		network.addNode(e);
+		ConditionalTable.Builder builder2 = new ConditionalTable.Builder("X");
+		builder2.addRow(new Assignment("E", "a"), "x1", 0.7);
+		builder2.addRow(new Assignment("E", "a"), "x2", 0.3);
+		builder2.addRow(new Assignment("E", "b"), "x1", 0.2);
+		builder2.addRow(new Assignment("E", "b"), "x2", 0.8);
+		ChanceNode x = new ChanceNode("X", builder2.build());
+		x.addInputNode(e);
+		network.addNode(x);
+
+		VariableElimination ve = new VariableElimination();
+		Assignment evidence = new Assignment("E", "c");
+		assertEquals(1.0, ve.queryProb(network, "X", evidence).getProb("None"),
+				0.0001);
+		int oldSize = DenseFactor.MAX_SIZE;
+		try {
+			DenseFactor.MAX_SIZE = 0;
+			assertEquals(1.0,
+					ve.queryProb(network, "X", evidence).getProb("None"), 0.0001);
+		}
+		finally {
+			DenseFactor.MAX_SIZE = oldSize;
+		}
+	}
+
+	@Test
+	public void testEliminationOrders() {
+		BNetwork network = NetworkExamples.constructBasicNetwork2();
+		Assignment evidence = new Assignment(Arrays.asList("JohnCalls", "MaryCalls"));
+		Query.ProbQuery query = new Query.ProbQuery(network,
+				Arrays.asList("Burglary"), evidence);
+
+		for (EliminationOrder.Heuristic h : EliminationOrder.Heuristic.values()) {
+			VariableElimination ve = new VariableElimination(h);
+			EliminationOrder order = ve.getEliminationOrder(query);
+			assertEquals(2, order.getOrder().size());
+			assertTrue(order.getOrder().contains("Alarm"));
+			assertTrue(order.getOrder().contains("Earthquake"));
+			assertTrue(order.getPeakFactorSize() <= 8);
+			MultivariateDistribution distrib = ve.queryProb(query);
+			assertEquals(0.360657, distrib.getProb(new Assignment("Burglary", false)),
+					0.0001f);
+			assertEquals(-0.680,
+					ve.queryUtil(network, Arrays.asList("Action"), evidence)
+							.getUtil(new Assignment("Action", "CallPolice")),
+					0.001);
+		}
+	}
+
+	@Test
+	public void testJunctionTree() {
+		BNetwork network = NetworkExamples.constructBasicNetwork2();
+		VariableElimination ve = new VariableElimination();
+		JunctionTree jtree = new JunctionTree();
+		Assignment evidence1 = new Assignment(Arrays.asList("JohnCalls", "MaryCalls"));
+		Assignment evidence2 = new Assignment(new Assignment("JohnCalls", false),
+				new Assignment("Earthquake"));
+
+		for (Assignment evidence : Arrays.asList(evidence1, evidence2, evidence1,
+				new Assignment())) {
+			for (String var : Arrays.asList("Burglary", "Alarm", "MaryCalls")) {
+				MultivariateDistribution expected =
+						ve.queryProb(network, Arrays.asList(var), evidence);
+				MultivariateDistribution distrib =
+						jtree.queryProb(network, Arrays.asList(var), evidence);
+				for (Assignment a : expected.getValues()) {
+					assertEquals(expected.getProb(a), distrib.getProb(a), 0.0001);
+				}
+			}
+		}
+		assertTrue(jtree.getNbCliques() > 0);
+		assertEquals(0.360657, jtree.queryProb(network, "Burglary", evidence1)
+				.getProb(ValueFactory.create(false)), 0.0001);
+
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("Burglary");
+		builder.addRow(ValueFactory.create(true), 0.1);
+		builder.addRow(ValueFactory.create(false), 0.9);
+		network.getChanceNode("Burglary").setDistrib(builder.build());
+		for (int i = 0; i < 2; i++) {
+			assertEquals(
+					ve.queryProb(network, "Burglary", evidence1)
+							.getProb(ValueFactory.create(false)),
+					jtree.queryProb(network, "Burglary", evidence1)
+							.getProb(ValueFactory.create(false)),
+					0.0001);
+		}
+	}
+
+	@Test
+	public void testSamplingSeed() {
+		BNetwork network = NetworkExamples.constructBasicNetwork2();
+		SamplingAlgorithm lw = new SamplingAlgorithm(2000, 2000);
+		Assignment evidence = new Assignment(Arrays.asList("JohnCalls", "MaryCalls"));
+
+		SamplingContext.setMasterSeed(42);
+		MultivariateDistribution distrib1 =
+				lw.queryProb(network, Arrays.asList("Burglary", "Alarm"), evidence);
+		SamplingContext.setMasterSeed(42);
+		MultivariateDistribution distrib2 =
+				lw.queryProb(network, Arrays.asList("Burglary", "Alarm"), evidence);
+		SamplingContext.clearMasterSeed();
+
+		assertEquals(distrib1.getValues(), distrib2.getValues());
+		for (Assignment a : distrib1.getValues()) {
+			assertEquals(distrib1.getProb(a), distrib2.getProb(a), 0.0);
+		}
+		assertEquals(0.36, distrib1.getProb(new Assignment(
+				new Assignment("Burglary", false), new Assignment("Alarm", true))),
+				0.1);
+	}
+
+	@Test
+	public void testAdaptiveSampling() {
+		BNetwork network = NetworkExamples.constructBasicNetwork2();
+		SamplingAlgorithm lw = new SamplingAlgorithm(20000, 5000, 0.01);
+
+		SamplingContext.setMasterSeed(42);
+		EmpiricalDistribution distrib = lw.queryProb(new Query.ProbQuery(network,
+				Arrays.asList("Burglary"), new Assignment()));
+		SamplingContext.clearMasterSeed();
+		SamplingStatistics stats = distrib.getStatistics();
+		assertTrue(stats.isConverged());
+		assertTrue(stats.getNbDrawn() < 20000);
+		assertTrue(stats.getNbBatches() >= 2);
+		assertTrue(stats.getEffectiveSampleSize() >= 100);
+		assertTrue(stats.getMarginalChange() < 0.01);
+		assertEquals(0.1, distrib.getProb(new Assignment("Burglary")), 0.03);
+
+		VariableElimination ve = new VariableElimination();
+		Assignment evidence = new Assignment(Arrays.asList("JohnCalls", "MaryCalls"));
+		UtilityTable expected =
+				ve.queryUtil(network, Arrays.asList("Action"), evidence);
+		SamplingContext.setMasterSeed(42);
+		UtilityTable utils = lw.queryUtil(
+				new Query.UtilQuery(network, Arrays.asList("Action"), evidence));
+		SamplingContext.clearMasterSeed();
+		for (Assignment a : expected.getRows()) {
+			assertEquals(expected.getUtil(a), utils.getUtil(a), 0.5);
+		}
+	}
+
+	@Test
+	public void testCostModel() {
+		BNetwork network = NetworkExamples.constructBasicNetwork2();
+		Query.ProbQuery query = new Query.ProbQuery(network,
+				Arrays.asList("Burglary"),
+				new Assignment(Arrays.asList("JohnCalls", "MaryCalls")));
+		double expected = new VariableElimination().queryProb(query)
+				.getProb(new Assignment("Burglary"));
+
+		SwitchingAlgorithm algo = new SwitchingAlgorithm();
+		SwitchingAlgorithm.CostEstimate estimate = algo.estimateCosts(query);
+		assertTrue(estimate.isExactCheaper());
+		assertTrue(estimate.getExactCost() > 0);
+		assertTrue(algo.selectBestAlgorithm(query) instanceof VariableElimination);
+		assertSame(new VariableElimination().getEliminationOrder(query), query
+				.getEliminationOrder(EliminationOrder.Heuristic.WEIGHTED_MIN_FILL));
+
+		double oldRatio = SwitchingAlgorithm.BORDERLINE_RATIO;
+		SwitchingAlgorithm.RACE_MODE = true;
+		SwitchingAlgorithm.BORDERLINE_RATIO = Double.MAX_VALUE;
+		try {
+			assertTrue(algo.estimateCosts(query).isBorderline());
+			MultivariateDistribution distrib = algo.queryProb(query);
+			assertEquals(expected, distrib.getProb(new Assignment("Burglary")),
+					0.1);
+		}
+		finally {
+			SwitchingAlgorithm.RACE_MODE = false;
+			SwitchingAlgorithm.BORDERLINE_RATIO = oldRatio;
+		}
+	}
+
 	@Test
 	public void testSwitching() {
 		int oldFactor = SwitchingAlgorithm.MAX_BRANCHING_FACTOR;